@@ -1,17 +1,20 @@
 package com.styra.run;
 
+import com.styra.run.exceptions.DeadlineExceededException;
 import com.styra.run.exceptions.RetryException;
+import com.styra.run.utils.Futures;
 
 import javax.net.ssl.SSLContext;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 public interface ApiClient extends AutoCloseable {
-    // TODO: package request params into ApiRequest object?
-
     /**
      * Performs a RESTful request to the Styra Run API.
      *
@@ -27,6 +30,21 @@ public interface ApiClient extends AutoCloseable {
      */
     CompletableFuture<ApiResponse> request(Method method, URI uri, Map<String, String> headers, String body);
 
+    /**
+     * Performs a RESTful request to the Styra Run API, where the request body is provided as UTF-8 encoded bytes.
+     *
+     * The default implementation decodes the body into a String and delegates to
+     * {@link #request(Method, URI, Map, String)}; implementations capable of sending and receiving raw bytes
+     * should override this method, and construct their responses with {@link ApiResponse#fromBytes(int, byte[])}.
+     *
+     * @param request the {@link ApiRequest} to execute
+     * @return a {@link CompletableFuture} resolving to an {@link ApiResponse}
+     * @see #request(Method, URI, Map, String)
+     */
+    default CompletableFuture<ApiResponse> request(ApiRequest request) {
+        return request(request.getMethod(), request.getUri(), request.getHeaders(), request.getBodyAsString());
+    }
+
     default RequestBuilder requestBuilder(Method method) {
         return new RequestBuilder(this, method);
     }
@@ -43,11 +61,17 @@ public interface ApiClient extends AutoCloseable {
     }
 
     class RequestBuilder {
+        // HTTP clients treat a zero timeout as none at all
+        private static final Duration MIN_TIMEOUT = Duration.ofMillis(1);
+
         private final ApiClient apiClient;
         private final Method method;
-        private final Map<String, String> headers = new HashMap<>();
+        // Shared, immutable, headers; copied into headers only if more are set
+        private Map<String, String> sharedHeaders = Collections.emptyMap();
+        private Map<String, String> headers;
         private URI uri;
-        private String body;
+        private byte[] body;
+        private Deadline deadline;
 
         RequestBuilder(ApiClient apiClient, Method method) {
             this.apiClient = apiClient;
@@ -60,44 +84,173 @@ public interface ApiClient extends AutoCloseable {
         }
 
         public RequestBuilder headers(Map<String, String> headers) {
-            this.headers.putAll(headers);
+            getHeaders().putAll(headers);
+            return this;
+        }
+
+        /**
+         * Sets headers that are shared by many requests, and are never modified; they're passed on to the
+         * {@link ApiRequest} without being copied, unless other headers are set as well.
+         *
+         * @param headers the immutable headers
+         * @return this builder
+         */
+        public RequestBuilder sharedHeaders(Map<String, String> headers) {
+            if (this.headers == null && sharedHeaders.isEmpty()) {
+                this.sharedHeaders = headers;
+            } else {
+                getHeaders().putAll(headers);
+            }
             return this;
         }
 
         public RequestBuilder header(String name, String value) {
-            this.headers.put(name, value);
+            getHeaders().put(name, value);
             return this;
         }
 
         public RequestBuilder jsonContentType() {
-            this.headers.put("Content-Type", "application/json");
+            getHeaders().put("Content-Type", "application/json");
             return this;
         }
 
+        private Map<String, String> getHeaders() {
+            if (headers == null) {
+                headers = new HashMap<>(sharedHeaders);
+            }
+            return headers;
+        }
+
         public RequestBuilder body(String body) {
+            this.body = body != null ? body.getBytes(StandardCharsets.UTF_8) : null;
+            return this;
+        }
+
+        public RequestBuilder body(byte[] body) {
             this.body = body;
             return this;
         }
 
+        /**
+         * Sets the {@link Deadline} of the call this request is made for; bounding the time spent on the request,
+         * including any retries. Defaults to <code>null</code>; no deadline.
+         *
+         * @param deadline the {@link Deadline}
+         * @return this builder
+         */
+        public RequestBuilder deadline(Deadline deadline) {
+            this.deadline = deadline;
+            return this;
+        }
+
+        public Deadline getDeadline() {
+            return deadline;
+        }
+
+        public ApiRequest build() {
+            return build(uri);
+        }
+
+        private ApiRequest build(URI uri) {
+            return new ApiRequest(method, uri, headers != null ? new HashMap<>(headers) : sharedHeaders, body,
+                    deadline != null ? max(deadline.getRemaining(), MIN_TIMEOUT) : null);
+        }
+
         public CompletableFuture<ApiResponse> request() {
-            return apiClient.request(method, uri, headers, body);
+            return request(uri);
+        }
+
+        private static Duration max(Duration a, Duration b) {
+            return a.compareTo(b) >= 0 ? a : b;
+        }
+
+        /**
+         * Makes the request to <code>uri</code>, without changing the URI of this builder;
+         * allowing the same request to be made concurrently to different URIs.
+         *
+         * @param uri the {@link URI} to make the request to
+         * @return a {@link CompletableFuture} carrying the {@link ApiResponse}
+         */
+        public CompletableFuture<ApiResponse> request(URI uri) {
+            if (deadline != null && deadline.isExpired()) {
+                return Futures.failedFuture(new DeadlineExceededException());
+            }
+            return apiClient.request(build(uri));
         }
     }
 
+    /**
+     * The HTTP protocol version used for requests to the Styra Run API.
+     */
+    enum HttpVersion {
+        HTTP_1_1,
+        /**
+         * HTTP/2, where supported by the gateway; falling back to HTTP/1.1 otherwise.
+         */
+        HTTP_2
+    }
+
     class Config {
         private final SSLContext sslContext;
         private final Duration connectionTimeout;
         private final Duration requestTimeout;
         private final String userAgent;
+        private final Executor executor;
+        private final HttpVersion httpVersion;
+        private final int maxConnectionsPerGateway;
+        private final Duration keepAliveTimeout;
 
         public Config(SSLContext sslContext,
                       Duration connectionTimeout,
                       Duration requestTimeout,
                       String userAgent) {
+            this(sslContext, connectionTimeout, requestTimeout, userAgent, null);
+        }
+
+        /**
+         * @param sslContext the {@link SSLContext} for HTTPS connections
+         * @param connectionTimeout the connection timeout
+         * @param requestTimeout the request timeout
+         * @param userAgent the User-Agent header value
+         * @param executor the {@link Executor} on which API clients should run requests,
+         *                 or <code>null</code> for the client's default
+         */
+        public Config(SSLContext sslContext,
+                      Duration connectionTimeout,
+                      Duration requestTimeout,
+                      String userAgent,
+                      Executor executor) {
+            this(sslContext, connectionTimeout, requestTimeout, userAgent, executor, null, 0, null);
+        }
+
+        /**
+         * @param sslContext the {@link SSLContext} for HTTPS connections
+         * @param connectionTimeout the connection timeout
+         * @param requestTimeout the request timeout
+         * @param userAgent the User-Agent header value
+         * @param executor the {@link Executor} on which API clients should run requests,
+         *                 or <code>null</code> for the client's default
+         * @param httpVersion the preferred {@link HttpVersion}, or <code>null</code> for the client's default
+         * @param maxConnectionsPerGateway the maximum number of connections to each gateway; or of concurrent
+         *                                 requests, for HTTP/2; or <code>0</code> for the client's default
+         * @param keepAliveTimeout how long idle connections are kept open, or <code>null</code> for the client's default
+         */
+        public Config(SSLContext sslContext,
+                      Duration connectionTimeout,
+                      Duration requestTimeout,
+                      String userAgent,
+                      Executor executor,
+                      HttpVersion httpVersion,
+                      int maxConnectionsPerGateway,
+                      Duration keepAliveTimeout) {
             this.sslContext = sslContext;
             this.connectionTimeout = connectionTimeout;
             this.requestTimeout = requestTimeout;
             this.userAgent = userAgent;
+            this.executor = executor;
+            this.httpVersion = httpVersion;
+            this.maxConnectionsPerGateway = maxConnectionsPerGateway;
+            this.keepAliveTimeout = keepAliveTimeout;
         }
 
         public SSLContext getSslContext() {
@@ -115,5 +268,35 @@ public interface ApiClient extends AutoCloseable {
         public String getUserAgent() {
             return userAgent;
         }
+
+        /**
+         * @return the {@link Executor} on which API clients should run requests, and handle their responses,
+         * or <code>null</code> for the client's default
+         */
+        public Executor getExecutor() {
+            return executor;
+        }
+
+        /**
+         * @return the preferred {@link HttpVersion}, or <code>null</code> for the client's default
+         */
+        public HttpVersion getHttpVersion() {
+            return httpVersion;
+        }
+
+        /**
+         * @return the maximum number of connections to each gateway, or <code>0</code> for the client's default;
+         * with {@link HttpVersion#HTTP_2}, the maximum number of concurrent requests (streams) to each gateway
+         */
+        public int getMaxConnectionsPerGateway() {
+            return maxConnectionsPerGateway;
+        }
+
+        /**
+         * @return how long idle connections are kept open, or <code>null</code> for the client's default
+         */
+        public Duration getKeepAliveTimeout() {
+            return keepAliveTimeout;
+        }
     }
 }
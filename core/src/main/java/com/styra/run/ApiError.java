@@ -38,7 +38,7 @@ public class ApiError {
     }
 
     public static ApiError fromApiResponse(ApiResponse response, Json json) {
-        return json.toOptionalMap(response.getBody())
+        return json.toOptionalMap(response.getBodyBytes())
                 .map(ApiError::fromMap)
                 .orElseGet(ApiError::empty);
     }
@@ -0,0 +1,120 @@
+package com.styra.run;
+
+import com.styra.run.ApiClient.Method;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * A request to the Styra Run API, as executed by an {@link ApiClient}.
+ * <p>
+ * The request body is kept as UTF-8 encoded bytes, so that it can be written to the wire without intermediate copies.
+ */
+public final class ApiRequest {
+    private final Method method;
+    private final URI uri;
+    private final Map<String, String> headers;
+    private final byte[] body;
+    private final Duration timeout;
+
+    public ApiRequest(Method method, URI uri, Map<String, String> headers, byte[] body) {
+        this(method, uri, headers, body, null);
+    }
+
+    /**
+     * @param method the HTTP method of the request
+     * @param uri the URI of the request
+     * @param headers the headers of the request
+     * @param body the UTF-8 encoded body of the request, or <code>null</code> if none should be sent
+     * @param timeout the time left for the request to complete, or <code>null</code> if only the timeouts of the
+     *                {@link ApiClient.Config} apply
+     */
+    public ApiRequest(Method method, URI uri, Map<String, String> headers, byte[] body, Duration timeout) {
+        this.method = method;
+        this.uri = uri;
+        this.headers = Collections.unmodifiableMap(headers);
+        this.body = body;
+        this.timeout = timeout;
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    public URI getUri() {
+        return uri;
+    }
+
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * Returns the time left for this request to complete, as derived from the {@link Deadline} of the call it's
+     * made for. {@link ApiClient} implementations should apply it if it's shorter than their configured timeouts.
+     *
+     * @return the timeout of this request, or <code>null</code> if only the timeouts of the
+     * {@link ApiClient.Config} apply
+     */
+    public Duration getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Returns the shorter of the timeout of this request, and <code>timeout</code>.
+     *
+     * @param timeout a configured timeout
+     * @return the effective timeout
+     */
+    public Duration getTimeout(Duration timeout) {
+        return this.timeout != null && (timeout == null || this.timeout.compareTo(timeout) < 0) ?
+                this.timeout :
+                timeout;
+    }
+
+    public boolean hasBody() {
+        return body != null;
+    }
+
+    /**
+     * Returns the body of this request as UTF-8 encoded bytes.
+     * The returned array must not be modified.
+     *
+     * @return the body of this request, or <code>null</code> if none should be sent
+     */
+    public byte[] getBody() {
+        return body;
+    }
+
+    public ByteBuffer getBodyAsByteBuffer() {
+        return body != null ? ByteBuffer.wrap(body).asReadOnlyBuffer() : null;
+    }
+
+    public InputStream getBodyAsStream() {
+        return body != null ? new ByteArrayInputStream(body) : null;
+    }
+
+    /**
+     * Returns the body of this request decoded into a String.
+     * Provided for {@link ApiClient} implementations that only deal with String bodies.
+     *
+     * @return the body of this request, or <code>null</code> if none should be sent
+     */
+    public String getBodyAsString() {
+        return body != null ? new String(body, StandardCharsets.UTF_8) : null;
+    }
+
+    @Override
+    public String toString() {
+        return "ApiRequest{" +
+                "method=" + method +
+                ", uri=" + uri +
+                '}';
+    }
+}
@@ -1,13 +1,123 @@
 package com.styra.run;
 
-// TODO: Add headers?
+import com.styra.run.utils.Compression;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
 public final class ApiResponse {
     private final int statusCode;
-    private final String body;
+    private final Map<String, List<String>> headers;
+    private volatile String body;
+    private volatile byte[] bodyBytes;
+    // The still compressed body, and its content-coding; if any
+    private final byte[] encodedBody;
+    private final String contentEncoding;
 
     public ApiResponse(int statusCode, String body) {
+        this(statusCode, body, Collections.emptyMap());
+    }
+
+    /**
+     * @param statusCode the HTTP status code of the response
+     * @param body the body of the response
+     * @param headers the headers of the response; header names are matched case-insensitively
+     */
+    public ApiResponse(int statusCode, String body, Map<String, List<String>> headers) {
         this.statusCode = statusCode;
+        this.headers = toHeaders(headers);
         this.body = body;
+        this.bodyBytes = null;
+        this.encodedBody = null;
+        this.contentEncoding = null;
+    }
+
+    private ApiResponse(int statusCode, byte[] body, Map<String, List<String>> headers) {
+        this.statusCode = statusCode;
+        this.headers = toHeaders(headers);
+        this.body = null;
+        this.bodyBytes = body;
+        this.encodedBody = null;
+        this.contentEncoding = null;
+    }
+
+    private ApiResponse(int statusCode, byte[] encodedBody, String contentEncoding, Map<String, List<String>> headers) {
+        this.statusCode = statusCode;
+        this.headers = toHeaders(headers);
+        this.body = null;
+        this.bodyBytes = null;
+        this.encodedBody = encodedBody;
+        this.contentEncoding = contentEncoding;
+    }
+
+    /**
+     * Creates an <code>ApiResponse</code> with a UTF-8 encoded body.
+     * The body is only decoded into a String if {@link #getBody()} is called.
+     *
+     * @param statusCode the HTTP status code of the response
+     * @param body the UTF-8 encoded body of the response; must not be modified after this call
+     * @return a new <code>ApiResponse</code>
+     */
+    public static ApiResponse fromBytes(int statusCode, byte[] body) {
+        return new ApiResponse(statusCode, body, Collections.emptyMap());
+    }
+
+    /**
+     * Like {@link #fromBytes(int, byte[])}, but with response headers.
+     *
+     * @param statusCode the HTTP status code of the response
+     * @param body the UTF-8 encoded body of the response; must not be modified after this call
+     * @param headers the headers of the response; header names are matched case-insensitively
+     * @return a new <code>ApiResponse</code>
+     */
+    public static ApiResponse fromBytes(int statusCode, byte[] body, Map<String, List<String>> headers) {
+        return new ApiResponse(statusCode, body, headers);
+    }
+
+    /**
+     * Creates an <code>ApiResponse</code> with a compressed body. The body is only decompressed when accessed;
+     * {@link #getBodyAsStream()} decompresses it as it's read.
+     *
+     * @param statusCode the HTTP status code of the response
+     * @param encodedBody the compressed body of the response; must not be modified after this call
+     * @param contentEncoding the content-coding of the body; {@link Compression#GZIP} or {@link Compression#DEFLATE}
+     * @param headers the headers of the response; header names are matched case-insensitively
+     * @return a new <code>ApiResponse</code>
+     */
+    public static ApiResponse fromEncodedBytes(int statusCode,
+                                               byte[] encodedBody,
+                                               String contentEncoding,
+                                               Map<String, List<String>> headers) {
+        String encoding = Compression.toSupportedEncoding(contentEncoding);
+        if (encoding == null) {
+            throw new IllegalArgumentException(String.format("Unsupported content-coding '%s'", contentEncoding));
+        }
+        if (encodedBody == null) {
+            return new ApiResponse(statusCode, (byte[]) null, headers);
+        }
+        return new ApiResponse(statusCode, encodedBody, encoding, headers);
+    }
+
+    private static Map<String, List<String>> toHeaders(Map<String, List<String>> headers) {
+        if (headers == null || headers.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, List<String>> copy = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        headers.forEach((name, values) -> {
+            // HttpURLConnection reports the status line as a header without a name
+            if (name != null && values != null) {
+                copy.put(name, Collections.unmodifiableList(values));
+            }
+        });
+        return Collections.unmodifiableMap(copy);
     }
 
     public boolean isSuccessful() {
@@ -23,15 +133,106 @@ public final class ApiResponse {
         return statusCode;
     }
 
+    /**
+     * Returns the headers of this response, keyed by case-insensitive header name.
+     *
+     * @return an unmodifiable map of header values
+     */
+    public Map<String, List<String>> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * Returns the first value of the header with the given case-insensitive <code>name</code>.
+     *
+     * @param name the name of the header
+     * @return the header value, or <code>null</code> if the response has no such header
+     */
+    public String getHeader(String name) {
+        List<String> values = headers.get(name);
+        return values != null && !values.isEmpty() ? values.get(0) : null;
+    }
+
     public String getBody() {
+        String body = this.body;
+        if (body == null) {
+            byte[] bytes = getBodyBytes();
+            if (bytes != null) {
+                body = new String(bytes, StandardCharsets.UTF_8);
+                this.body = body;
+            }
+        }
         return body;
     }
 
+    /**
+     * Returns the body of this response as UTF-8 encoded bytes.
+     * The returned array must not be modified.
+     *
+     * @return the body of this response, or <code>null</code> if there is none
+     */
+    public byte[] getBodyBytes() {
+        byte[] bytes = this.bodyBytes;
+        if (bytes == null) {
+            if (encodedBody != null) {
+                try {
+                    bytes = Compression.decode(encodedBody, contentEncoding);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Failed to decompress response body", e);
+                }
+            } else if (body != null) {
+                bytes = body.getBytes(StandardCharsets.UTF_8);
+            }
+            this.bodyBytes = bytes;
+        }
+        return bytes;
+    }
+
+    /**
+     * @return <code>true</code> if the body of this response is compressed, and has yet to be decompressed in full
+     */
+    public boolean isBodyEncoded() {
+        return encodedBody != null && bodyBytes == null;
+    }
+
+    public ByteBuffer getBodyAsByteBuffer() {
+        byte[] bytes = getBodyBytes();
+        return bytes != null ? ByteBuffer.wrap(bytes).asReadOnlyBuffer() : null;
+    }
+
+    /**
+     * Returns the body of this response as a stream of UTF-8 encoded bytes. A compressed body is decompressed as
+     * the stream is read; the stream should then be closed once read.
+     *
+     * @return the body of this response, or <code>null</code> if there is none
+     */
+    public InputStream getBodyAsStream() {
+        if (isBodyEncoded()) {
+            try {
+                return Compression.decodingStream(encodedBody, contentEncoding);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to decompress response body", e);
+            }
+        }
+        byte[] bytes = getBodyBytes();
+        return bytes != null ? new ByteArrayInputStream(bytes) : null;
+    }
+
+    /**
+     * Returns the length, in bytes, of the body of this response.
+     *
+     * @return the length of the body, or <code>0</code> if there is none
+     */
+    public int getBodyLength() {
+        byte[] bytes = getBodyBytes();
+        return bytes != null ? bytes.length : 0;
+    }
+
     @Override
     public String toString() {
         return "ApiResponse{" +
                 "statusCode=" + statusCode +
-                ", body='" + body + '\'' +
+                ", body='" + getBody() + '\'' +
                 '}';
     }
 }
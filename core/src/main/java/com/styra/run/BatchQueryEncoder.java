@@ -0,0 +1,117 @@
+package com.styra.run;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Serializes the chunks of a batch query into request bodies.
+ * <p>
+ * The global input is serialized once, and spliced into the body of every chunk; as is the input of items sharing
+ * the same input value. Chunks may be serialized concurrently.
+ */
+final class BatchQueryEncoder {
+    private static final byte[] ITEMS_START = bytes("{\"items\":[");
+    private static final byte[] ITEMS_END = bytes("]");
+    private static final byte[] GLOBAL_INPUT = bytes(",\"input\":");
+    private static final byte[] OBJECT_END = bytes("}");
+    private static final byte[] COMMA = bytes(",");
+    private static final byte[] ITEM_PATH = bytes("{\"path\":");
+    private static final byte[] ITEM_INPUT = bytes(",\"input\":");
+
+    private final Json json;
+    private final Input<?> globalInput;
+    private volatile byte[] encodedGlobalInput;
+    // Keyed by input value identity; equal, but distinct, values aren't worth comparing
+    private final Map<Object, byte[]> encodedInputs = Collections.synchronizedMap(new IdentityHashMap<>());
+
+    BatchQueryEncoder(Json json, Input<?> globalInput) {
+        this.json = json;
+        this.globalInput = globalInput != null && !globalInput.isEmpty() ? globalInput : null;
+    }
+
+    byte[] encode(List<BatchQuery.Item> items) throws IOException {
+        byte[][] encodedItems = new byte[items.size()][];
+        int length = ITEMS_START.length + ITEMS_END.length + OBJECT_END.length + Math.max(0, items.size() - 1);
+        for (int i = 0; i < items.size(); i++) {
+            encodedItems[i] = encodeItem(items.get(i));
+            length += encodedItems[i].length;
+        }
+
+        byte[] global = null;
+        if (globalInput != null) {
+            global = getEncodedGlobalInput();
+            length += GLOBAL_INPUT.length + global.length;
+        }
+
+        byte[] body = new byte[length];
+        int position = append(body, 0, ITEMS_START);
+        for (int i = 0; i < encodedItems.length; i++) {
+            if (i > 0) {
+                position = append(body, position, COMMA);
+            }
+            position = append(body, position, encodedItems[i]);
+        }
+        position = append(body, position, ITEMS_END);
+        if (global != null) {
+            position = append(body, position, GLOBAL_INPUT);
+            position = append(body, position, global);
+        }
+        append(body, position, OBJECT_END);
+        return body;
+    }
+
+    private byte[] getEncodedGlobalInput() throws IOException {
+        byte[] encoded = encodedGlobalInput;
+        if (encoded == null) {
+            encoded = json.toBytes(globalInput.getValue());
+            encodedGlobalInput = encoded;
+        }
+        return encoded;
+    }
+
+    private byte[] encodeItem(BatchQuery.Item item) throws IOException {
+        if (item.getClass() != BatchQuery.Item.class) {
+            // Might serialize differently
+            return json.toBytes(item.toMap());
+        }
+
+        byte[] path = json.toBytes(item.getPath());
+        Input<?> input = item.getInput();
+        if (input == null || input.isEmpty()) {
+            byte[] encoded = new byte[ITEM_PATH.length + path.length + OBJECT_END.length];
+            int position = append(encoded, 0, ITEM_PATH);
+            position = append(encoded, position, path);
+            append(encoded, position, OBJECT_END);
+            return encoded;
+        }
+
+        Object value = input.getValue();
+        byte[] encodedInput = encodedInputs.get(value);
+        if (encodedInput == null) {
+            encodedInput = json.toBytes(value);
+            encodedInputs.put(value, encodedInput);
+        }
+
+        byte[] encoded = new byte[ITEM_PATH.length + path.length + ITEM_INPUT.length + encodedInput.length +
+                OBJECT_END.length];
+        int position = append(encoded, 0, ITEM_PATH);
+        position = append(encoded, position, path);
+        position = append(encoded, position, ITEM_INPUT);
+        position = append(encoded, position, encodedInput);
+        append(encoded, position, OBJECT_END);
+        return encoded;
+    }
+
+    private static int append(byte[] target, int position, byte[] bytes) {
+        System.arraycopy(bytes, 0, target, position, bytes.length);
+        return position + bytes.length;
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
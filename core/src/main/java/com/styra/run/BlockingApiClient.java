@@ -2,84 +2,216 @@ package com.styra.run;
 
 import com.styra.run.exceptions.RetryException;
 import com.styra.run.utils.Futures;
+import com.styra.run.utils.RequestExecutors;
 
 import javax.net.ssl.HttpsURLConnection;
-import java.io.BufferedReader;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.net.ConnectException;
 import java.net.HttpURLConnection;
 import java.net.SocketTimeoutException;
 import java.net.URI;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
- * Even though this client returns a {@link CompletableFuture}, requests will block the calling thread.
+ * An {@link ApiClient} built on {@link HttpURLConnection}, requiring no dependencies beyond the JDK.
+ * <p>
+ * Unless an {@link Executor} is configured, requests will block the calling thread, even though this client returns
+ * a {@link CompletableFuture}. With an executor, such as one from
+ * {@link RequestExecutors#virtualThreadPerTask(int)}, requests are run on the executor, and the returned future is
+ * truly asynchronous.
+ * <p>
+ * Connections are kept alive, and reused, through the JDK's keep-alive cache; responses are always read to the end,
+ * so that their connection can be returned to the cache. The number of idle connections kept per gateway is set by
+ * the <code>http.maxConnections</code> system property (default <code>5</code>).
  */
 public class BlockingApiClient implements ApiClient {
     private static final String READ_TIMEOUT_MSG = "Read timed out";
+    private static final int BUFFER_SIZE = 8192;
+    private static final int MAX_POOLED_BUFFERS = 16;
+    // Larger bodies are grown as they arrive, rather than trusting the Content-Length header up-front
+    private static final int MAX_PREALLOCATED_SIZE = 1024 * 1024;
 
     private final Config config;
+    // Pooled per client, rather than per thread, as a thread per request (e.g. virtual threads) would never reuse them
+    private final BlockingQueue<byte[]> buffers = new ArrayBlockingQueue<>(MAX_POOLED_BUFFERS);
+    private final Executor executor;
+    // HTTPS connections are only reused for the same socket factory instance, and SSLContext creates a new one per call
+    private final SSLSocketFactory sslSocketFactory;
 
+    /**
+     * Creates a client that runs requests on the {@link Config#getExecutor() executor} of <code>config</code>, if any;
+     * otherwise on the calling thread.
+     *
+     * @param config the client {@link Config}
+     */
     public BlockingApiClient(Config config) {
+        this(config, config.getExecutor());
+    }
+
+    /**
+     * @param config the client {@link Config}
+     * @param executor the {@link Executor} to run requests on, or <code>null</code> to run them on the calling thread;
+     *                 not shut down when this client is closed
+     */
+    public BlockingApiClient(Config config, Executor executor) {
         this.config = config;
+        this.executor = executor;
+        this.sslSocketFactory = config.getSslContext() != null ? config.getSslContext().getSocketFactory() : null;
     }
 
     @Override
     public CompletableFuture<ApiResponse> request(Method method, URI uri, Map<String, String> headers, String body) {
-        try {
-            HttpURLConnection connection = (HttpURLConnection) uri.toURL().openConnection();
-            connection.setConnectTimeout((int) config.getConnectionTimeout().toMillis());
-            connection.setReadTimeout((int) config.getRequestTimeout().toMillis());
-            connection.setRequestMethod(method.name());
-            connection.setRequestProperty("User-Agent", config.getUserAgent());
-            headers.forEach(connection::setRequestProperty);
-
-            if (connection instanceof HttpsURLConnection) {
-                ((HttpsURLConnection) connection).setSSLSocketFactory(config.getSslContext().getSocketFactory());
+        return request(new ApiRequest(method, uri, headers,
+                body != null ? body.getBytes(StandardCharsets.UTF_8) : null));
+    }
+
+    @Override
+    public CompletableFuture<ApiResponse> request(ApiRequest request) {
+        if (executor == null) {
+            try {
+                return CompletableFuture.completedFuture(send(request));
+            } catch (Exception e) {
+                return Futures.failedFuture(toRequestException(e));
             }
+        }
+
+        CompletableFuture<ApiResponse> future = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                if (future.isDone()) {
+                    // Cancelled while waiting for the executor
+                    return;
+                }
+                try {
+                    future.complete(send(request));
+                } catch (Exception e) {
+                    future.completeExceptionally(toRequestException(e));
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private ApiResponse send(ApiRequest request) throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) request.getUri().toURL().openConnection();
+        try {
+            return exchange(connection, request);
+        } catch (Exception e) {
+            // The connection may be in an unknown state; make sure it's not returned to the keep-alive cache
+            connection.disconnect();
+            throw e;
+        }
+    }
 
-            if (body != null && method.allowsBody()) {
-                connection.setDoOutput(true);
-                OutputStream out = connection.getOutputStream();
-                out.write(body.getBytes(StandardCharsets.UTF_8));
-                out.flush();
-                out.close();
+    private ApiResponse exchange(HttpURLConnection connection, ApiRequest request) throws IOException {
+        connection.setConnectTimeout((int) request.getTimeout(config.getConnectionTimeout()).toMillis());
+        connection.setReadTimeout((int) request.getTimeout(config.getRequestTimeout()).toMillis());
+        connection.setRequestMethod(request.getMethod().name());
+        connection.setUseCaches(false);
+        connection.setRequestProperty("User-Agent", config.getUserAgent());
+        request.getHeaders().forEach(connection::setRequestProperty);
+
+        if (connection instanceof HttpsURLConnection && sslSocketFactory != null) {
+            ((HttpsURLConnection) connection).setSSLSocketFactory(sslSocketFactory);
+        }
+
+        if (request.hasBody() && request.getMethod().allowsBody()) {
+            connection.setDoOutput(true);
+            connection.setFixedLengthStreamingMode(request.getBody().length);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(request.getBody());
             }
+        }
 
-            int statusCode = connection.getResponseCode();
-            InputStream in;
-            if (statusCode >= 400) {
-                in = connection.getErrorStream();
-            } else {
-                in = connection.getInputStream();
+        int statusCode = connection.getResponseCode();
+        InputStream in;
+        if (statusCode >= 400) {
+            in = connection.getErrorStream();
+        } else {
+            in = connection.getInputStream();
+        }
+
+        byte[] responseBody = null;
+        if (in != null) {
+            // Reading to the end, and closing, the stream hands the connection back for reuse
+            try (InputStream stream = in) {
+                responseBody = readAll(stream, connection.getContentLengthLong());
             }
+        }
+
+        return ApiResponse.fromBytes(statusCode, responseBody, connection.getHeaderFields());
+    }
+
+    private static Exception toRequestException(Exception e) {
+        if (e instanceof ConnectException ||
+                (e instanceof SocketTimeoutException && READ_TIMEOUT_MSG.equals(e.getMessage()))) {
+            return new RetryException(e);
+        }
+        return e;
+    }
 
-            String responseBody = null;
-            if (in != null) {
-                BufferedReader reader = new BufferedReader(new InputStreamReader(in));
-                StringBuilder sb = new StringBuilder();
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    sb.append(line);
+    /**
+     * Reads <code>in</code> to the end. When the content length is known, bytes are read straight into the returned
+     * array; otherwise through a pooled buffer.
+     */
+    private byte[] readAll(InputStream in, long contentLength) throws IOException {
+        byte[] buffer = acquireBuffer();
+        try {
+            if (contentLength >= 0 && contentLength <= Integer.MAX_VALUE - 8) {
+                byte[] body = readFully(in, (int) contentLength);
+                // Drain anything beyond the declared length, so the connection can be reused
+                while (in.read(buffer) != -1) {
+                    // discard
                 }
-                in.close();
-                responseBody = sb.toString();
+                return body;
             }
 
-            return CompletableFuture.completedFuture(new ApiResponse(statusCode, responseBody));
-        } catch (Exception e) {
-            if (e instanceof ConnectException ||
-                    (e instanceof SocketTimeoutException && READ_TIMEOUT_MSG.equals(e.getMessage()))) {
-                return Futures.failedFuture(new RetryException(e));
+            ByteArrayOutputStream out = new ByteArrayOutputStream(BUFFER_SIZE);
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
             }
-            return Futures.failedFuture(e);
+            return out.toByteArray();
+        } finally {
+            buffers.offer(buffer);
         }
     }
 
+    private static byte[] readFully(InputStream in, int length) throws IOException {
+        byte[] body = new byte[Math.min(length, MAX_PREALLOCATED_SIZE)];
+        int offset = 0;
+        while (offset < length) {
+            if (offset == body.length) {
+                body = Arrays.copyOf(body, (int) Math.min(length, body.length * 2L));
+            }
+            int read = in.read(body, offset, body.length - offset);
+            if (read == -1) {
+                throw new EOFException(String.format("Response body ended after %d of %d bytes", offset, length));
+            }
+            offset += read;
+        }
+        return body;
+    }
+
+    private byte[] acquireBuffer() {
+        byte[] buffer = buffers.poll();
+        return buffer != null ? buffer : new byte[BUFFER_SIZE];
+    }
+
     @Override
     public void close() {
     }
@@ -0,0 +1,114 @@
+package com.styra.run;
+
+import com.styra.run.utils.Compression;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static com.styra.run.utils.Futures.failedFuture;
+import static com.styra.run.utils.Futures.propagateCancellation;
+
+/**
+ * An {@link ApiClient} compressing request bodies, and accepting compressed response bodies, on behalf of another.
+ * <p>
+ * Request bodies of at least a configured size are compressed with <code>gzip</code>. When accepting compressed
+ * responses, <code>gzip</code> and <code>deflate</code> encoded bodies are only decompressed when read; and
+ * {@link ApiResponse#getBodyAsStream()} decompresses as the body is parsed.
+ */
+public class CompressionApiClient implements ApiClient {
+    static final String ACCEPT_ENCODING_HEADER = "Accept-Encoding";
+    static final String CONTENT_ENCODING_HEADER = "Content-Encoding";
+    private static final String ACCEPTED_ENCODINGS = Compression.GZIP + ", " + Compression.DEFLATE;
+
+    private final ApiClient delegate;
+    private final boolean acceptCompressedResponses;
+    private final int requestCompressionThreshold;
+
+    /**
+     * @param delegate the {@link ApiClient} to send requests with
+     * @param acceptCompressedResponses whether to ask for compressed response bodies
+     * @param requestCompressionThreshold the minimum size, in bytes, of request bodies to compress; if not positive,
+     *                                    request bodies are never compressed
+     */
+    public CompressionApiClient(ApiClient delegate, boolean acceptCompressedResponses, int requestCompressionThreshold) {
+        this.delegate = delegate;
+        this.acceptCompressedResponses = acceptCompressedResponses;
+        this.requestCompressionThreshold = requestCompressionThreshold;
+    }
+
+    public ApiClient getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public CompletableFuture<ApiResponse> request(Method method, URI uri, Map<String, String> headers, String body) {
+        return request(new ApiRequest(method, uri, headers,
+                body != null ? body.getBytes(StandardCharsets.UTF_8) : null));
+    }
+
+    @Override
+    public CompletableFuture<ApiResponse> request(ApiRequest request) {
+        ApiRequest compressed;
+        try {
+            compressed = compress(request);
+        } catch (IOException e) {
+            return failedFuture(e);
+        }
+
+        CompletableFuture<ApiResponse> response = delegate.request(compressed);
+        if (!acceptCompressedResponses) {
+            return response;
+        }
+        return propagateCancellation(response.thenApply(CompressionApiClient::toDecodingResponse), response);
+    }
+
+    private ApiRequest compress(ApiRequest request) throws IOException {
+        boolean compressBody = requestCompressionThreshold > 0
+                && request.hasBody()
+                && request.getBody().length >= requestCompressionThreshold
+                && !hasHeader(request.getHeaders(), CONTENT_ENCODING_HEADER);
+        boolean acceptEncoding = acceptCompressedResponses
+                && !hasHeader(request.getHeaders(), ACCEPT_ENCODING_HEADER);
+        if (!compressBody && !acceptEncoding) {
+            return request;
+        }
+
+        Map<String, String> headers = new HashMap<>(request.getHeaders());
+        byte[] body = request.getBody();
+        if (acceptEncoding) {
+            headers.put(ACCEPT_ENCODING_HEADER, ACCEPTED_ENCODINGS);
+        }
+        if (compressBody) {
+            headers.put(CONTENT_ENCODING_HEADER, Compression.GZIP);
+            body = Compression.gzip(body);
+        }
+        return new ApiRequest(request.getMethod(), request.getUri(), headers, body, request.getTimeout());
+    }
+
+    private static ApiResponse toDecodingResponse(ApiResponse response) {
+        String encoding = Compression.toSupportedEncoding(response.getHeader(CONTENT_ENCODING_HEADER));
+        if (encoding == null || response.isBodyEncoded()) {
+            return response;
+        }
+        return ApiResponse.fromEncodedBytes(response.getStatusCode(), response.getBodyBytes(), encoding,
+                response.getHeaders());
+    }
+
+    private static boolean hasHeader(Map<String, String> headers, String name) {
+        for (String key : headers.keySet()) {
+            if (key.equalsIgnoreCase(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void close() throws Exception {
+        delegate.close();
+    }
+}
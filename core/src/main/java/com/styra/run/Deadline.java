@@ -0,0 +1,77 @@
+package com.styra.run;
+
+import com.styra.run.exceptions.DeadlineExceededException;
+import com.styra.run.utils.Timers;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+
+import static com.styra.run.utils.Null.orThrow;
+
+/**
+ * A point in time by which a call to the Styra Run API must complete; bounding the total time spent across retries,
+ * and failover to other gateways.
+ * <p>
+ * When the deadline passes, the call fails with a {@link DeadlineExceededException}, and any in-flight request is
+ * cancelled.
+ */
+public final class Deadline {
+    private final long deadlineNanos;
+
+    private Deadline(long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    /**
+     * Creates a deadline <code>timeout</code> from now.
+     *
+     * @param timeout the time until the deadline
+     * @return a new <code>Deadline</code>
+     */
+    public static Deadline after(Duration timeout) {
+        orThrow(timeout, "timeout must not be null");
+        return new Deadline(System.nanoTime() + timeout.toNanos());
+    }
+
+    public boolean isExpired() {
+        return getRemainingNanos() <= 0;
+    }
+
+    /**
+     * @return the time left until this deadline, in nanoseconds; zero or negative if it has passed
+     */
+    public long getRemainingNanos() {
+        return deadlineNanos - System.nanoTime();
+    }
+
+    public Duration getRemaining() {
+        return Duration.ofNanos(Math.max(0, getRemainingNanos()));
+    }
+
+    /**
+     * Completes <code>future</code> exceptionally with a {@link DeadlineExceededException}, if it hasn't completed
+     * by this deadline.
+     *
+     * @param future the future to bound
+     * @return <code>future</code>
+     */
+    public <T> CompletableFuture<T> bound(CompletableFuture<T> future) {
+        if (future.isDone()) {
+            return future;
+        }
+
+        ScheduledFuture<?> timer = Timers.schedule(
+                () -> future.completeExceptionally(new DeadlineExceededException()),
+                Math.max(0, getRemainingNanos()));
+        future.whenComplete((v, e) -> timer.cancel(false));
+        return future;
+    }
+
+    @Override
+    public String toString() {
+        return "Deadline{" +
+                "remaining=" + getRemaining() +
+                '}';
+    }
+}
@@ -0,0 +1,411 @@
+package com.styra.run;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.styra.run.utils.Null.orThrow;
+
+/**
+ * A bounded, in-process cache of policy decisions, consulted by {@link StyraRun#query(String, Input)} and
+ * {@link StyraRun#check(String, Input)} before making a request to the Styra Run API.
+ * <p>
+ * Decisions are keyed on the rule path and a canonical form of the query input, where map entries are ordered by key.
+ * Entries expire after a configurable time-to-live, which can be overridden per rule path;
+ * when the configured maximum number of entries, or bytes, is exceeded, the least recently used entries are evicted.
+ * <p>
+ * Large caches are split into independently locked segments, by key, so that concurrent lookups rarely contend; the
+ * limits are then shared evenly between segments, and entries are evicted by least recent use within their segment.
+ * <p>
+ * Only successful query results are cached. Cached results are unmodifiable, as they're shared by all callers.
+ */
+public final class DecisionCache {
+    private static final long ENTRY_OVERHEAD_BYTES = 64;
+    private static final int MAX_SEGMENTS = 16;
+    // Segments aren't made smaller than this, so that small caches evict close to true least recent use
+    private static final int MIN_SEGMENT_ENTRIES = 64;
+    private static final long MIN_SEGMENT_BYTES = 64 * 1024;
+
+    private final long ttlNanos;
+    private final Map<String, Long> pathTtlNanos;
+    private final Segment[] segments;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    private DecisionCache(int maxEntries, long maxBytes, Duration ttl, Map<String, Duration> pathTtls) {
+        this.ttlNanos = ttl.toNanos();
+        this.pathTtlNanos = new HashMap<>();
+        pathTtls.forEach((path, pathTtl) -> this.pathTtlNanos.put(path, pathTtl.toNanos()));
+
+        int segmentCount = MAX_SEGMENTS;
+        while (segmentCount > 1 &&
+                ((maxEntries > 0 && maxEntries / segmentCount < MIN_SEGMENT_ENTRIES) ||
+                        (maxBytes > 0 && maxBytes / segmentCount < MIN_SEGMENT_BYTES))) {
+            segmentCount /= 2;
+        }
+        this.segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            this.segments[i] = new Segment(ceilDiv(maxEntries, segmentCount), ceilDiv(maxBytes, segmentCount));
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Returns <code>true</code> if decisions for the policy rule at <code>path</code> should be cached;
+     * <code>false</code> otherwise.
+     *
+     * @param path the String path to the policy rule
+     * @return <code>true</code> if decisions for <code>path</code> are cached
+     */
+    boolean isEnabledFor(String path) {
+        return ttlFor(QueryKey.normalizePath(path)) > 0;
+    }
+
+    Result<?> get(QueryKey key) {
+        long now = System.nanoTime();
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            Entry entry = segment.entries.get(key);
+            if (entry != null) {
+                if (now - entry.expiresAt < 0) {
+                    hits.incrementAndGet();
+                    return entry.result;
+                }
+                segment.remove(key, entry);
+                evictions.incrementAndGet();
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    void put(QueryKey key, Result<?> result, long resultBytes) {
+        long ttl = ttlFor(key.getPath());
+        if (ttl <= 0) {
+            return;
+        }
+
+        Segment segment = segmentFor(key);
+        long entryBytes = key.weight() + resultBytes + ENTRY_OVERHEAD_BYTES;
+        if (segment.maxBytes > 0 && entryBytes > segment.maxBytes) {
+            return;
+        }
+        Entry entry = new Entry(result.toUnmodifiable(), entryBytes, System.nanoTime() + ttl);
+
+        synchronized (segment) {
+            Entry previous = segment.entries.put(key, entry);
+            if (previous != null) {
+                segment.bytes -= previous.bytes;
+            }
+            segment.bytes += entry.bytes;
+
+            Iterator<Map.Entry<QueryKey, Entry>> iterator = segment.entries.entrySet().iterator();
+            while (iterator.hasNext() && segment.isOverCapacity()) {
+                Map.Entry<QueryKey, Entry> eldest = iterator.next();
+                iterator.remove();
+                segment.bytes -= eldest.getValue().bytes;
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Removes all cached decisions.
+     */
+    public void invalidateAll() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.entries.clear();
+                segment.bytes = 0;
+            }
+        }
+    }
+
+    /**
+     * Returns a snapshot of the current state of this cache.
+     *
+     * @return the {@link Stats} of this cache
+     */
+    public Stats getStats() {
+        int size = 0;
+        long bytes = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.entries.size();
+                bytes += segment.bytes;
+            }
+        }
+        return new Stats(hits.get(), misses.get(), evictions.get(), size, bytes);
+    }
+
+    /**
+     * Estimates the size of <code>result</code> as JSON, for results not read from a response of their own; from the
+     * JSON it was read from, if known, without materializing it, or else from its value and attributes.
+     */
+    static long estimateBytes(Result<?> result) {
+        long encodedLength = result.getEncodedLength();
+        if (encodedLength >= 0) {
+            return encodedLength;
+        }
+        return estimateBytes(result.get()) + estimateBytes(result.getAttributes());
+    }
+
+    private static long estimateBytes(Object value) {
+        if (value instanceof Map) {
+            long bytes = 2;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                bytes += estimateBytes(String.valueOf(entry.getKey())) + 2 + estimateBytes(entry.getValue());
+            }
+            return bytes;
+        } else if (value instanceof Collection) {
+            long bytes = 2;
+            for (Object item : (Collection<?>) value) {
+                bytes += estimateBytes(item) + 1;
+            }
+            return bytes;
+        } else if (value instanceof CharSequence) {
+            return ((CharSequence) value).length() + 2;
+        }
+        // Numbers, booleans and null
+        return 8;
+    }
+
+    private Segment segmentFor(QueryKey key) {
+        int hash = key.hashCode();
+        // Spread the high bits, as the segment is picked by the low bits
+        hash ^= hash >>> 16;
+        return segments[hash & (segments.length - 1)];
+    }
+
+    private static int ceilDiv(int value, int divisor) {
+        return (int) ceilDiv((long) value, divisor);
+    }
+
+    private static long ceilDiv(long value, int divisor) {
+        return (value + divisor - 1) / divisor;
+    }
+
+    private long ttlFor(String normalizedPath) {
+        Long ttl = pathTtlNanos.get(normalizedPath);
+        return ttl != null ? ttl : ttlNanos;
+    }
+
+    /**
+     * Returns a canonical representation of <code>value</code>, where all maps are sorted by key,
+     * so that equal inputs always serialize to equal JSON documents.
+     */
+    static Object canonicalize(Object value) {
+        if (value instanceof SerializableAsMap) {
+            return canonicalize(((SerializableAsMap) value).toMap());
+        } else if (value instanceof Map) {
+            Map<String, Object> sorted = new TreeMap<>();
+            ((Map<?, ?>) value).forEach((k, v) -> sorted.put(String.valueOf(k), canonicalize(v)));
+            return sorted;
+        } else if (value instanceof Collection) {
+            List<Object> list = new ArrayList<>(((Collection<?>) value).size());
+            ((Collection<?>) value).forEach((v) -> list.add(canonicalize(v)));
+            return list;
+        }
+        return value;
+    }
+
+    private static final class Segment {
+        private final int maxEntries;
+        private final long maxBytes;
+        private final LinkedHashMap<QueryKey, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private long bytes = 0;
+
+        private Segment(int maxEntries, long maxBytes) {
+            this.maxEntries = maxEntries;
+            this.maxBytes = maxBytes;
+        }
+
+        private boolean isOverCapacity() {
+            return (maxEntries > 0 && entries.size() > maxEntries) ||
+                    (maxBytes > 0 && bytes > maxBytes);
+        }
+
+        private void remove(QueryKey key, Entry entry) {
+            entries.remove(key);
+            bytes -= entry.bytes;
+        }
+    }
+
+    private static final class Entry {
+        private final Result<?> result;
+        private final long bytes;
+        private final long expiresAt;
+
+        private Entry(Result<?> result, long bytes, long expiresAt) {
+            this.result = result;
+            this.bytes = bytes;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    public static final class Stats {
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final int size;
+        private final long bytes;
+
+        private Stats(long hits, long misses, long evictions, int size, long bytes) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.size = size;
+            this.bytes = bytes;
+        }
+
+        /**
+         * @return the number of lookups that were served from the cache
+         */
+        public long getHits() {
+            return hits;
+        }
+
+        /**
+         * @return the number of lookups that weren't served from the cache
+         */
+        public long getMisses() {
+            return misses;
+        }
+
+        /**
+         * @return the number of entries removed from the cache because of expiry or size constraints
+         */
+        public long getEvictions() {
+            return evictions;
+        }
+
+        /**
+         * @return the current number of entries in the cache
+         */
+        public int getSize() {
+            return size;
+        }
+
+        /**
+         * @return the estimated current size, in bytes, of the cache
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Stats stats = (Stats) o;
+            return hits == stats.hits && misses == stats.misses && evictions == stats.evictions &&
+                    size == stats.size && bytes == stats.bytes;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(hits, misses, evictions, size, bytes);
+        }
+
+        @Override
+        public String toString() {
+            return "Stats{" +
+                    "hits=" + hits +
+                    ", misses=" + misses +
+                    ", evictions=" + evictions +
+                    ", size=" + size +
+                    ", bytes=" + bytes +
+                    '}';
+        }
+    }
+
+    public static final class Builder {
+        private final Map<String, Duration> pathTtls = new HashMap<>();
+        private int maxEntries = 10_000;
+        private long maxBytes = 0;
+        private Duration ttl = Duration.ofSeconds(5);
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the maximum number of cached decisions. <code>0</code> means no limit.
+         * Defaults to <code>10000</code>.
+         *
+         * @param max the maximum number of entries
+         * @return this builder
+         */
+        public Builder maxEntries(int max) {
+            if (max < 0) {
+                throw new IllegalArgumentException("max must not be negative");
+            }
+            this.maxEntries = max;
+            return this;
+        }
+
+        /**
+         * Sets the maximum estimated size, in bytes, of all cached decisions. <code>0</code> means no limit.
+         * Defaults to <code>0</code>.
+         *
+         * @param max the maximum number of bytes
+         * @return this builder
+         */
+        public Builder maxBytes(long max) {
+            if (max < 0) {
+                throw new IllegalArgumentException("max must not be negative");
+            }
+            this.maxBytes = max;
+            return this;
+        }
+
+        /**
+         * Sets the time-to-live of cached decisions. Defaults to 5 seconds.
+         *
+         * @param ttl the time-to-live
+         * @return this builder
+         */
+        public Builder ttl(Duration ttl) {
+            this.ttl = requireNotNegative(ttl);
+            return this;
+        }
+
+        /**
+         * Sets the time-to-live of cached decisions for the policy rule at <code>path</code>,
+         * overriding the default time-to-live. A zero <code>ttl</code> disables caching for <code>path</code>.
+         *
+         * @param path the String path to the policy rule
+         * @param ttl the time-to-live
+         * @return this builder
+         */
+        public Builder ttl(String path, Duration ttl) {
+            orThrow(path, "path must not be null");
+            pathTtls.put(QueryKey.normalizePath(path), requireNotNegative(ttl));
+            return this;
+        }
+
+        public DecisionCache build() {
+            return new DecisionCache(maxEntries, maxBytes, ttl, pathTtls);
+        }
+
+        private static Duration requireNotNegative(Duration ttl) {
+            orThrow(ttl, "ttl must not be null");
+            if (ttl.isNegative()) {
+                throw new IllegalArgumentException("ttl must not be negative");
+            }
+            return ttl;
+        }
+    }
+}
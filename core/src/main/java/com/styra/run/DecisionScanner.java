@@ -0,0 +1,263 @@
+package com.styra.run;
+
+/**
+ * Reads the boolean decision of a Styra Run API query response straight from its bytes, without allocating.
+ * <p>
+ * The response is validated as it's scanned, so that a decision is only ever read from well-formed JSON; responses
+ * that can't be scanned are left to be parsed as a whole, by returning {@link #UNKNOWN}.
+ */
+final class DecisionScanner {
+    static final int DENIED = 0;
+    static final int ALLOWED = 1;
+    static final int UNKNOWN = -1;
+
+    private static final byte[] RESULT = {'r', 'e', 's', 'u', 'l', 't'};
+    private static final byte[] TRUE = {'t', 'r', 'u', 'e'};
+    private static final byte[] FALSE = {'f', 'a', 'l', 's', 'e'};
+    private static final byte[] NULL = {'n', 'u', 'l', 'l'};
+    private static final int MAX_DEPTH = 256;
+    private static final int INVALID = -1;
+
+    private DecisionScanner() {
+    }
+
+    /**
+     * @param json the response body
+     * @return {@link #ALLOWED} if the top-level <code>result</code> of <code>json</code> is <code>true</code>,
+     * {@link #DENIED} if it's anything else, or missing, and {@link #UNKNOWN} if <code>json</code> couldn't be
+     * scanned
+     */
+    static int scan(byte[] json) {
+        if (json == null) {
+            return UNKNOWN;
+        }
+
+        int i = skipWhitespace(json, 0);
+        if (!at(json, i, '{')) {
+            return UNKNOWN;
+        }
+        i = skipWhitespace(json, i + 1);
+        if (at(json, i, '}')) {
+            return DENIED;
+        }
+
+        int decision = DENIED;
+        while (true) {
+            if (!at(json, i, '"')) {
+                return UNKNOWN;
+            }
+            int keyEnd = skipString(json, i);
+            if (keyEnd == INVALID) {
+                return UNKNOWN;
+            }
+            boolean isResult = keyEnd - i == RESULT.length + 2 && matches(json, i + 1, RESULT);
+
+            i = skipWhitespace(json, keyEnd);
+            if (!at(json, i, ':')) {
+                return UNKNOWN;
+            }
+            i = skipWhitespace(json, i + 1);
+
+            int valueEnd = skipValue(json, i, 1);
+            if (valueEnd == INVALID) {
+                return UNKNOWN;
+            }
+            if (isResult) {
+                // The last of duplicate keys wins, as when parsed into a map
+                decision = valueEnd - i == TRUE.length && matches(json, i, TRUE) ? ALLOWED : DENIED;
+            }
+
+            i = skipWhitespace(json, valueEnd);
+            if (at(json, i, ',')) {
+                i = skipWhitespace(json, i + 1);
+            } else if (at(json, i, '}')) {
+                // Like the parser, trailing content is ignored
+                return decision;
+            } else {
+                return UNKNOWN;
+            }
+        }
+    }
+
+    /**
+     * @return the index following the value starting at <code>i</code>, or {@link #INVALID}
+     */
+    private static int skipValue(byte[] json, int i, int depth) {
+        if (i >= json.length) {
+            return INVALID;
+        }
+        switch (json[i]) {
+            case '"':
+                return skipString(json, i);
+            case '{':
+                return depth < MAX_DEPTH ? skipObject(json, i, depth + 1) : INVALID;
+            case '[':
+                return depth < MAX_DEPTH ? skipArray(json, i, depth + 1) : INVALID;
+            case 't':
+                return matches(json, i, TRUE) ? i + TRUE.length : INVALID;
+            case 'f':
+                return matches(json, i, FALSE) ? i + FALSE.length : INVALID;
+            case 'n':
+                return matches(json, i, NULL) ? i + NULL.length : INVALID;
+            default:
+                return skipNumber(json, i);
+        }
+    }
+
+    private static int skipObject(byte[] json, int i, int depth) {
+        i = skipWhitespace(json, i + 1);
+        if (at(json, i, '}')) {
+            return i + 1;
+        }
+        while (true) {
+            if (!at(json, i, '"')) {
+                return INVALID;
+            }
+            i = skipString(json, i);
+            if (i == INVALID) {
+                return INVALID;
+            }
+            i = skipWhitespace(json, i);
+            if (!at(json, i, ':')) {
+                return INVALID;
+            }
+            i = skipValue(json, skipWhitespace(json, i + 1), depth);
+            if (i == INVALID) {
+                return INVALID;
+            }
+            i = skipWhitespace(json, i);
+            if (at(json, i, ',')) {
+                i = skipWhitespace(json, i + 1);
+            } else if (at(json, i, '}')) {
+                return i + 1;
+            } else {
+                return INVALID;
+            }
+        }
+    }
+
+    private static int skipArray(byte[] json, int i, int depth) {
+        i = skipWhitespace(json, i + 1);
+        if (at(json, i, ']')) {
+            return i + 1;
+        }
+        while (true) {
+            i = skipValue(json, i, depth);
+            if (i == INVALID) {
+                return INVALID;
+            }
+            i = skipWhitespace(json, i);
+            if (at(json, i, ',')) {
+                i = skipWhitespace(json, i + 1);
+            } else if (at(json, i, ']')) {
+                return i + 1;
+            } else {
+                return INVALID;
+            }
+        }
+    }
+
+    private static int skipString(byte[] json, int i) {
+        i++;
+        while (i < json.length) {
+            int b = json[i] & 0xFF;
+            if (b == '"') {
+                return i + 1;
+            } else if (b == '\\') {
+                if (i + 1 >= json.length) {
+                    return INVALID;
+                }
+                byte escaped = json[i + 1];
+                if (escaped == 'u') {
+                    if (i + 5 >= json.length) {
+                        return INVALID;
+                    }
+                    for (int j = i + 2; j < i + 6; j++) {
+                        if (Character.digit(json[j], 16) < 0) {
+                            return INVALID;
+                        }
+                    }
+                    i += 6;
+                } else if (escaped == '"' || escaped == '\\' || escaped == '/' || escaped == 'b' || escaped == 'f'
+                        || escaped == 'n' || escaped == 'r' || escaped == 't') {
+                    i += 2;
+                } else {
+                    return INVALID;
+                }
+            } else if (b < 0x20) {
+                return INVALID;
+            } else {
+                i++;
+            }
+        }
+        return INVALID;
+    }
+
+    private static int skipNumber(byte[] json, int i) {
+        if (at(json, i, '-')) {
+            i++;
+        }
+        if (at(json, i, '0')) {
+            i++;
+        } else if (isDigit(json, i)) {
+            i = skipDigits(json, i);
+        } else {
+            return INVALID;
+        }
+        if (at(json, i, '.')) {
+            if (!isDigit(json, i + 1)) {
+                return INVALID;
+            }
+            i = skipDigits(json, i + 1);
+        }
+        if (at(json, i, 'e') || at(json, i, 'E')) {
+            i++;
+            if (at(json, i, '+') || at(json, i, '-')) {
+                i++;
+            }
+            if (!isDigit(json, i)) {
+                return INVALID;
+            }
+            i = skipDigits(json, i);
+        }
+        return i;
+    }
+
+    private static int skipDigits(byte[] json, int i) {
+        while (isDigit(json, i)) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isDigit(byte[] json, int i) {
+        return i < json.length && json[i] >= '0' && json[i] <= '9';
+    }
+
+    private static int skipWhitespace(byte[] json, int i) {
+        while (i < json.length) {
+            byte b = json[i];
+            if (b != ' ' && b != '\t' && b != '\n' && b != '\r') {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean at(byte[] json, int i, char c) {
+        return i < json.length && json[i] == c;
+    }
+
+    private static boolean matches(byte[] json, int i, byte[] literal) {
+        if (i + literal.length > json.length) {
+            return false;
+        }
+        for (int j = 0; j < literal.length; j++) {
+            if (json[i + j] != literal[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
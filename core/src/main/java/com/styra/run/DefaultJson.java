@@ -1,15 +1,96 @@
 package com.styra.run;
 
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.SegmentedStringWriter;
+import com.fasterxml.jackson.core.util.BufferRecyclers;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
 import com.fasterxml.jackson.jr.ob.JSON;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
+/**
+ * The default {@link Json} implementation.
+ * <p>
+ * Maps, collections, arrays, strings, numbers and booleans are serialized and deserialized directly on
+ * jackson-core's streaming generator and parser, which reuse thread-local buffers between calls;
+ * any other types are delegated to jackson-jr.
+ */
 public class DefaultJson implements Json {
+    static final JsonFactory factory = new JsonFactory()
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+            .disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+
     @Override
     public String from(Object value) throws IOException {
-        return JSON.std.asString(value);
+        SegmentedStringWriter writer = new SegmentedStringWriter(BufferRecyclers.getBufferRecycler());
+        try (JsonGenerator generator = factory.createGenerator(writer)) {
+            writeValue(generator, value);
+        }
+        return writer.getAndClear();
+    }
+
+    @Override
+    public byte[] toBytes(Object value) throws IOException {
+        ByteArrayBuilder builder = new ByteArrayBuilder(BufferRecyclers.getBufferRecycler());
+        try {
+            try (JsonGenerator generator = factory.createGenerator(builder, JsonEncoding.UTF8)) {
+                writeValue(generator, value);
+            }
+            return builder.toByteArray();
+        } finally {
+            builder.release();
+        }
+    }
+
+    @Override
+    public void write(Object value, OutputStream out) throws IOException {
+        try (JsonGenerator generator = factory.createGenerator(out, JsonEncoding.UTF8)) {
+            writeValue(generator, value);
+        }
+    }
+
+    @Override
+    public void write(Object value, Writer out) throws IOException {
+        try (JsonGenerator generator = factory.createGenerator(out)) {
+            writeValue(generator, value);
+        }
+    }
+
+    @Override
+    public Map<String, ?> toMap(byte[] source) throws IOException {
+        if (source == null) {
+            return null;
+        }
+
+        try (JsonParser parser = factory.createParser(source)) {
+            return readMap(parser);
+        }
+    }
+
+    @Override
+    public Map<String, ?> toMap(InputStream source) throws IOException {
+        if (source == null) {
+            return null;
+        }
+
+        try (JsonParser parser = factory.createParser(source)) {
+            return readMap(parser);
+        }
     }
 
     @Override
@@ -18,7 +99,9 @@ public class DefaultJson implements Json {
             return null;
         }
 
-        return JSON.std.mapFrom(source);
+        try (JsonParser parser = factory.createParser(source)) {
+            return readMap(parser);
+        }
     }
 
     @Override
@@ -38,4 +121,104 @@ public class DefaultJson implements Json {
 
         return JSON.std.beanFrom(type, source);
     }
+
+    private static void writeValue(JsonGenerator generator, Object value) throws IOException {
+        if (value == null) {
+            generator.writeNull();
+        } else if (value instanceof String) {
+            generator.writeString((String) value);
+        } else if (value instanceof Boolean) {
+            generator.writeBoolean((Boolean) value);
+        } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            generator.writeNumber(((Number) value).intValue());
+        } else if (value instanceof Long) {
+            generator.writeNumber((Long) value);
+        } else if (value instanceof Double) {
+            generator.writeNumber((Double) value);
+        } else if (value instanceof Float) {
+            generator.writeNumber((Float) value);
+        } else if (value instanceof BigDecimal) {
+            generator.writeNumber((BigDecimal) value);
+        } else if (value instanceof BigInteger) {
+            generator.writeNumber((BigInteger) value);
+        } else if (value instanceof Map) {
+            generator.writeStartObject();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                // Like jackson-jr, null-valued entries are omitted
+                if (entry.getValue() != null) {
+                    generator.writeFieldName(String.valueOf(entry.getKey()));
+                    writeValue(generator, entry.getValue());
+                }
+            }
+            generator.writeEndObject();
+        } else if (value instanceof Collection) {
+            generator.writeStartArray();
+            for (Object item : (Collection<?>) value) {
+                writeValue(generator, item);
+            }
+            generator.writeEndArray();
+        } else if (value instanceof Object[]) {
+            generator.writeStartArray();
+            for (Object item : (Object[]) value) {
+                writeValue(generator, item);
+            }
+            generator.writeEndArray();
+        } else if (value instanceof CharSequence) {
+            generator.writeString(value.toString());
+        } else {
+            generator.writeRawValue(JSON.std.asString(value));
+        }
+    }
+
+    private static Map<String, ?> readMap(JsonParser parser) throws IOException {
+        JsonToken token = parser.nextToken();
+        if (token == null) {
+            return null;
+        }
+        if (token != JsonToken.START_OBJECT) {
+            throw new JsonParseException(parser, String.format("Expected JSON object, but found %s", token));
+        }
+        return readObject(parser);
+    }
+
+    static Map<String, Object> readObject(JsonParser parser) throws IOException {
+        Map<String, Object> map = new LinkedHashMap<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            map.put(name, readValue(parser, parser.nextToken()));
+        }
+        return map;
+    }
+
+    static Object readValue(JsonParser parser, JsonToken token) throws IOException {
+        if (token == null) {
+            throw new JsonParseException(parser, "Unexpected end of JSON input");
+        }
+
+        switch (token) {
+            case START_OBJECT:
+                return readObject(parser);
+            case START_ARRAY:
+                List<Object> list = new ArrayList<>();
+                JsonToken next;
+                while ((next = parser.nextToken()) != JsonToken.END_ARRAY) {
+                    list.add(readValue(parser, next));
+                }
+                return list;
+            case VALUE_STRING:
+                return parser.getText();
+            case VALUE_NUMBER_INT:
+                return parser.getNumberValue();
+            case VALUE_NUMBER_FLOAT:
+                return parser.getDoubleValue();
+            case VALUE_TRUE:
+                return Boolean.TRUE;
+            case VALUE_FALSE:
+                return Boolean.FALSE;
+            case VALUE_NULL:
+                return null;
+            default:
+                throw new JsonParseException(parser, String.format("Unexpected JSON token %s", token));
+        }
+    }
 }
@@ -42,13 +42,13 @@ public class Input<T> {
      * @return <code>true</code>, if the value is <code>null</code>; <code>false</code> otherwise.
      */
     public boolean isEmpty() {
-        return value == null;
+        return getValue() == null;
     }
 
     @Override
     public String toString() {
         return "Input{" +
-                "value=" + value +
+                "value=" + getValue() +
                 '}';
     }
 }
@@ -0,0 +1,367 @@
+package com.styra.run;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static com.styra.run.utils.Null.orThrow;
+
+/**
+ * A pre-serialized <code>input</code> of fixed shape, with slots for the values that vary from query to query.
+ * <p>
+ * The constant parts of the input are serialized once, when the template is compiled. Queries with a
+ * {@link #bind(Object...) bound} input only serialize the slot values, and splice them into the request body:
+ * <pre>{@code
+ * InputTemplate template = InputTemplate.compile(styraRun.getJson(), Map.of(
+ *         "action", "read",
+ *         "resource", Map.of("type", "doc", "id", InputTemplate.slot(0)),
+ *         "subject", InputTemplate.slot(1)));
+ *
+ * styraRun.check("documents/allow", template.bind(documentId, subject));
+ * }</pre>
+ * An <code>InputTemplate</code> is immutable and thread-safe.
+ */
+public final class InputTemplate {
+    private static final byte[] TRUE = "true".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] FALSE = "false".getBytes(StandardCharsets.US_ASCII);
+
+    private final Json json;
+    private final Map<String, ?> shape;
+    private final int slotCount;
+    // The serialized request body, split at each slot; segments.length == slotOrder.length + 1
+    private final byte[][] segments;
+    private final int[] slotOrder;
+    private final int constantLength;
+
+    private InputTemplate(Json json, Map<String, ?> shape, int slotCount, byte[][] segments, int[] slotOrder) {
+        this.json = json;
+        this.shape = shape;
+        this.slotCount = slotCount;
+        this.segments = segments;
+        this.slotOrder = slotOrder;
+        int length = 0;
+        for (byte[] segment : segments) {
+            length += segment.length;
+        }
+        this.constantLength = length;
+    }
+
+    /**
+     * Creates a placeholder for the value at <code>index</code> of the values passed to {@link #bind(Object...)}.
+     * The same slot may occur more than once in a template.
+     *
+     * @param index the index of the slot
+     * @return a new slot placeholder
+     */
+    public static Object slot(int index) {
+        if (index < 0) {
+            throw new IllegalArgumentException("index must not be negative");
+        }
+        return new Slot(index);
+    }
+
+    /**
+     * Compiles an input template, serializing its constant parts with <code>json</code>. <code>shape</code> may
+     * contain nested {@link Map}s and {@link List}s, with {@link #slot(int) slots} as values; slot indexes must run
+     * from <code>0</code>, without gaps.
+     *
+     * @param json the {@link Json} to serialize the input with; normally {@link StyraRun#getJson()}
+     * @param shape the shape of the input
+     * @return a new <code>InputTemplate</code>
+     * @throws IOException if <code>shape</code> could not be serialized
+     */
+    public static InputTemplate compile(Json json, Map<String, ?> shape) throws IOException {
+        orThrow(json, "json must not be null");
+        orThrow(shape, "shape must not be null");
+
+        // Slots are serialized as unique strings, which are then cut out of the serialized body
+        String nonce = UUID.randomUUID().toString();
+        List<Slot> occurrences = new ArrayList<>();
+        Object marked = mark(shape, nonce, occurrences);
+
+        int slotCount = 0;
+        boolean[] present = new boolean[occurrences.size()];
+        for (Slot slot : occurrences) {
+            if (slot.index >= present.length) {
+                throw new IllegalArgumentException(String.format("Slot index %d is out of sequence", slot.index));
+            }
+            present[slot.index] = true;
+            slotCount = Math.max(slotCount, slot.index + 1);
+        }
+        for (int i = 0; i < slotCount; i++) {
+            if (!present[i]) {
+                throw new IllegalArgumentException(String.format("Slot index %d is missing", i));
+            }
+        }
+
+        byte[] body = json.toBytes(Collections.singletonMap("input", marked));
+
+        int[] positions = new int[occurrences.size()];
+        byte[][] markers = new byte[occurrences.size()][];
+        for (int i = 0; i < occurrences.size(); i++) {
+            markers[i] = ('"' + marker(nonce, i) + '"').getBytes(StandardCharsets.UTF_8);
+            positions[i] = indexOf(body, markers[i]);
+            if (positions[i] < 0) {
+                throw new IOException("Slot could not be located in serialized input");
+            }
+        }
+
+        // Order the occurrences as serialized, which needn't be the order they were found in
+        Integer[] order = new Integer[occurrences.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Integer.compare(positions[a], positions[b]));
+
+        byte[][] segments = new byte[order.length + 1][];
+        int[] slotOrder = new int[order.length];
+        int start = 0;
+        for (int i = 0; i < order.length; i++) {
+            int occurrence = order[i];
+            segments[i] = Arrays.copyOfRange(body, start, positions[occurrence]);
+            slotOrder[i] = occurrences.get(occurrence).index;
+            start = positions[occurrence] + markers[occurrence].length;
+        }
+        segments[order.length] = Arrays.copyOfRange(body, start, body.length);
+
+        @SuppressWarnings("unchecked")
+        Map<String, ?> frozenShape = (Map<String, ?>) freeze(shape);
+        return new InputTemplate(json, frozenShape, slotCount, segments, slotOrder);
+    }
+
+    /**
+     * Compiles an input template, serialized with the default {@link Json} implementation.
+     *
+     * @param shape the shape of the input
+     * @return a new <code>InputTemplate</code>
+     * @throws IOException if <code>shape</code> could not be serialized
+     * @see #compile(Json, Map)
+     */
+    public static InputTemplate compile(Map<String, ?> shape) throws IOException {
+        return compile(new DefaultJson(), shape);
+    }
+
+    public int getSlotCount() {
+        return slotCount;
+    }
+
+    /**
+     * Creates an {@link Input} from this template, with <code>values</code> in its slots.
+     *
+     * @param values the slot values, in slot index order
+     * @return a new {@link Input}
+     */
+    public TemplateInput bind(Object... values) {
+        if (values.length != slotCount) {
+            throw new IllegalArgumentException(
+                    String.format("Expected %d slot values, but got %d", slotCount, values.length));
+        }
+        return new TemplateInput(this, values.clone());
+    }
+
+    private byte[] toRequestBody(Object[] values) throws IOException {
+        for (Object value : values) {
+            if (value == null) {
+                // Null-valued entries are left out of serialized maps; which a splice can't do
+                return json.toBytes(Collections.singletonMap("input", materialize(values)));
+            }
+        }
+
+        byte[][] encoded = new byte[values.length][];
+        int length = constantLength;
+        for (int slot : slotOrder) {
+            if (encoded[slot] == null) {
+                encoded[slot] = encode(values[slot]);
+            }
+            length += encoded[slot].length;
+        }
+
+        byte[] body = new byte[length];
+        int position = 0;
+        for (int i = 0; i < slotOrder.length; i++) {
+            position = append(body, position, segments[i]);
+            position = append(body, position, encoded[slotOrder[i]]);
+        }
+        append(body, position, segments[slotOrder.length]);
+        return body;
+    }
+
+    private byte[] encode(Object value) throws IOException {
+        if (value instanceof Boolean) {
+            return (Boolean) value ? TRUE : FALSE;
+        }
+        if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            return value.toString().getBytes(StandardCharsets.US_ASCII);
+        }
+        if (value instanceof String) {
+            byte[] encoded = encodePlainString((String) value);
+            if (encoded != null) {
+                return encoded;
+            }
+        }
+        return json.toBytes(SerializableAsMap.serialize(value));
+    }
+
+    /**
+     * Encodes <code>value</code> as a JSON string if it's printable ASCII without characters needing escaping;
+     * which is the norm for IDs and names. Returns <code>null</code> otherwise.
+     */
+    private static byte[] encodePlainString(String value) {
+        int length = value.length();
+        byte[] encoded = new byte[length + 2];
+        encoded[0] = '"';
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x20 || c > 0x7E || c == '"' || c == '\\') {
+                return null;
+            }
+            encoded[i + 1] = (byte) c;
+        }
+        encoded[length + 1] = '"';
+        return encoded;
+    }
+
+    private Map<String, ?> materialize(Object[] values) {
+        @SuppressWarnings("unchecked")
+        Map<String, ?> value = (Map<String, ?>) substitute(shape, values);
+        return value;
+    }
+
+    private static Object mark(Object value, String nonce, List<Slot> occurrences) {
+        if (value instanceof Slot) {
+            occurrences.add((Slot) value);
+            return marker(nonce, occurrences.size() - 1);
+        } else if (value instanceof Map) {
+            Map<Object, Object> map = new LinkedHashMap<>();
+            ((Map<?, ?>) value).forEach((k, v) -> {
+                if (k instanceof Slot) {
+                    throw new IllegalArgumentException("Slots are not allowed as keys");
+                }
+                map.put(k, mark(v, nonce, occurrences));
+            });
+            return map;
+        } else if (value instanceof List) {
+            List<Object> list = new ArrayList<>();
+            for (Object item : (List<?>) value) {
+                list.add(mark(item, nonce, occurrences));
+            }
+            return list;
+        }
+        return value;
+    }
+
+    private static Object freeze(Object value) {
+        if (value instanceof Map) {
+            Map<Object, Object> map = new LinkedHashMap<>();
+            ((Map<?, ?>) value).forEach((k, v) -> map.put(k, freeze(v)));
+            return Collections.unmodifiableMap(map);
+        } else if (value instanceof List) {
+            List<Object> list = new ArrayList<>();
+            for (Object item : (List<?>) value) {
+                list.add(freeze(item));
+            }
+            return Collections.unmodifiableList(list);
+        }
+        return value;
+    }
+
+    private static Object substitute(Object value, Object[] values) {
+        if (value instanceof Slot) {
+            return values[((Slot) value).index];
+        } else if (value instanceof Map) {
+            Map<Object, Object> map = new HashMap<>();
+            ((Map<?, ?>) value).forEach((k, v) -> map.put(k, substitute(v, values)));
+            return Collections.unmodifiableMap(map);
+        } else if (value instanceof List) {
+            List<Object> list = new ArrayList<>();
+            for (Object item : (List<?>) value) {
+                list.add(substitute(item, values));
+            }
+            return Collections.unmodifiableList(list);
+        }
+        return value;
+    }
+
+    private static String marker(String nonce, int occurrence) {
+        return "styra-run-slot:" + nonce + ":" + occurrence;
+    }
+
+    private static int indexOf(byte[] bytes, byte[] target) {
+        outer:
+        for (int i = 0; i <= bytes.length - target.length; i++) {
+            for (int j = 0; j < target.length; j++) {
+                if (bytes[i + j] != target[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private static int append(byte[] target, int position, byte[] bytes) {
+        System.arraycopy(bytes, 0, target, position, bytes.length);
+        return position + bytes.length;
+    }
+
+    @Override
+    public String toString() {
+        return "InputTemplate{" +
+                "shape=" + shape +
+                '}';
+    }
+
+    private static final class Slot {
+        private final int index;
+
+        private Slot(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public String toString() {
+            return "?" + index;
+        }
+    }
+
+    /**
+     * An {@link Input} bound from an {@link InputTemplate}. Its request body is spliced together from the
+     * pre-serialized template; its value is only built if asked for, such as when it's cached or batched.
+     */
+    public static final class TemplateInput extends Input<Map<String, ?>> {
+        private final InputTemplate template;
+        private final Object[] values;
+        private volatile Map<String, ?> value;
+
+        private TemplateInput(InputTemplate template, Object[] values) {
+            super(null);
+            this.template = template;
+            this.values = values;
+        }
+
+        @Override
+        public Map<String, ?> getValue() {
+            Map<String, ?> value = this.value;
+            if (value == null) {
+                value = template.materialize(values);
+                this.value = value;
+            }
+            return value;
+        }
+
+        /**
+         * @return the serialized request body of a query with this input
+         * @throws IOException if a slot value could not be serialized
+         */
+        byte[] toRequestBody() throws IOException {
+            return template.toRequestBody(values);
+        }
+    }
+}
@@ -1,6 +1,11 @@
 package com.styra.run;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -18,6 +23,41 @@ public interface Json {
      */
     String from(Object value) throws IOException;
 
+    /**
+     * Serializes the given <code>value</code> to UTF-8 encoded JSON bytes.
+     *
+     * @param value the object to serialize
+     * @return the serialized JSON bytes
+     * @throws IOException on serialization error
+     */
+    default byte[] toBytes(Object value) throws IOException {
+        return from(value).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Serializes the given <code>value</code> as UTF-8 encoded JSON to <code>out</code>.
+     * <code>out</code> is not closed.
+     *
+     * @param value the object to serialize
+     * @param out the {@link OutputStream} to write to
+     * @throws IOException on serialization error, or if <code>out</code> could not be written to
+     */
+    default void write(Object value, OutputStream out) throws IOException {
+        out.write(toBytes(value));
+    }
+
+    /**
+     * Serializes the given <code>value</code> as JSON to <code>out</code>.
+     * <code>out</code> is not closed.
+     *
+     * @param value the object to serialize
+     * @param out the {@link Writer} to write to
+     * @throws IOException on serialization error, or if <code>out</code> could not be written to
+     */
+    default void write(Object value, Writer out) throws IOException {
+        out.write(from(value));
+    }
+
     /**
      * Deserializes the given <code>source</code> JSON String into a Map.
      *
@@ -39,6 +79,55 @@ public interface Json {
         }
     }
 
+    /**
+     * Deserializes the given <code>source</code> UTF-8 encoded JSON bytes into a Map.
+     *
+     * @param source the JSON bytes to deserialize into a Map
+     * @return the deserialized Map
+     * @throws IOException on deserialization error
+     */
+    default Map<String, ?> toMap(byte[] source) throws IOException {
+        if (source == null) {
+            return null;
+        }
+
+        return toMap(new String(source, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Deserializes UTF-8 encoded JSON read from <code>source</code> into a Map.
+     * <code>source</code> is not closed.
+     *
+     * @param source the {@link InputStream} to read JSON from
+     * @return the deserialized Map
+     * @throws IOException on deserialization error, or if <code>source</code> could not be read from
+     */
+    default Map<String, ?> toMap(InputStream source) throws IOException {
+        if (source == null) {
+            return null;
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = source.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return toMap(out.toByteArray());
+    }
+
+    default Optional<Map<String, ?>> toOptionalMap(byte[] source) {
+        if (source == null) {
+            return Optional.empty();
+        }
+
+        try {
+            return Optional.ofNullable(toMap(source));
+        } catch (IOException e) {
+            return Optional.empty();
+        }
+    }
+
     /**
      * Deserializes the given <code>source</code> JSON String into a typed List.
      *
@@ -0,0 +1,166 @@
+package com.styra.run;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Creates {@link Result}s and {@link ListResult}s backed by the raw bytes of a Styra Run API response.
+ * <p>
+ * The response is tokenized once, recording where each result value and its attributes are found; scalar result
+ * values, such as the booleans of most decisions, are read right away. Object and array values, and attributes, are
+ * only parsed into {@link Map}s and {@link List}s when first accessed.
+ */
+final class LazyResults {
+    private static final String RESULT_KEY = "result";
+
+    private LazyResults() {
+    }
+
+    /**
+     * @param body the response body
+     * @return the {@link Result} of <code>body</code>, or <code>null</code> if it isn't a JSON object
+     */
+    static Result<?> result(byte[] body) {
+        if (body == null) {
+            return null;
+        }
+        try (JsonParser parser = DefaultJson.factory.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            return scanResult(parser, body);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param body the response body
+     * @return the {@link ListResult} of <code>body</code>, or <code>null</code> if it isn't a JSON object with a
+     * list of objects as result
+     */
+    static ListResult listResult(byte[] body) {
+        if (body == null) {
+            return null;
+        }
+        try (JsonParser parser = DefaultJson.factory.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+
+            int start = tokenStart(parser);
+            List<Result<?>> items = Collections.emptyList();
+            boolean hasAttributes = false;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                boolean isResult = RESULT_KEY.equals(parser.getCurrentName());
+                JsonToken token = nextValueToken(parser);
+                if (!isResult) {
+                    hasAttributes = true;
+                    parser.skipChildren();
+                } else if (token == JsonToken.START_ARRAY) {
+                    items = new ArrayList<>();
+                    while ((token = nextValueToken(parser)) != JsonToken.END_ARRAY) {
+                        if (token != JsonToken.START_OBJECT) {
+                            return null;
+                        }
+                        items.add(scanResult(parser, body));
+                    }
+                } else if (token == JsonToken.VALUE_NULL) {
+                    items = Collections.emptyList();
+                } else {
+                    return null;
+                }
+            }
+            int end = currentEnd(parser);
+
+            return new ListResult(items, hasAttributes ? () -> readAttributes(body, start, end) : null);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Scans the result object the parser is positioned at the start of, leaving it positioned at its end.
+     */
+    private static Result<?> scanResult(JsonParser parser, byte[] body) throws IOException {
+        int start = tokenStart(parser);
+        Object value = null;
+        Supplier<Object> lazyValue = null;
+        Class<?> lazyValueType = null;
+        boolean hasAttributes = false;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            boolean isResult = RESULT_KEY.equals(parser.getCurrentName());
+            JsonToken token = nextValueToken(parser);
+            if (!isResult) {
+                hasAttributes = true;
+                parser.skipChildren();
+            } else if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+                int valueStart = tokenStart(parser);
+                parser.skipChildren();
+                int valueEnd = currentEnd(parser);
+                value = null;
+                lazyValue = () -> readValue(body, valueStart, valueEnd);
+                lazyValueType = token == JsonToken.START_OBJECT ? LinkedHashMap.class : ArrayList.class;
+            } else {
+                value = DefaultJson.readValue(parser, token);
+                lazyValue = null;
+                lazyValueType = null;
+            }
+        }
+        int end = currentEnd(parser);
+
+        return new Result<>(value, lazyValue, lazyValueType,
+                hasAttributes ? () -> readAttributes(body, start, end) : null, end - start);
+    }
+
+    private static Object readValue(byte[] body, int start, int end) {
+        try (JsonParser parser = DefaultJson.factory.createParser(body, start, end - start)) {
+            return DefaultJson.readValue(parser, parser.nextToken());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to parse result value", e);
+        }
+    }
+
+    private static Map<String, ?> readAttributes(byte[] body, int start, int end) {
+        Map<String, Object> attributes = new HashMap<>();
+        try (JsonParser parser = DefaultJson.factory.createParser(body, start, end - start)) {
+            parser.nextToken();
+            DefaultJson.readObject(parser).forEach((key, value) -> {
+                if (value != null && !RESULT_KEY.equals(key)) {
+                    attributes.put(key, value);
+                }
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to parse result attributes", e);
+        }
+        return attributes;
+    }
+
+    private static JsonToken nextValueToken(JsonParser parser) throws IOException {
+        JsonToken token = parser.nextToken();
+        if (token == null) {
+            throw new JsonParseException(parser, "Unexpected end of JSON input");
+        }
+        return token;
+    }
+
+    private static int tokenStart(JsonParser parser) {
+        return (int) parser.getTokenLocation().getByteOffset();
+    }
+
+    private static int currentEnd(JsonParser parser) {
+        return (int) parser.getCurrentLocation().getByteOffset();
+    }
+}
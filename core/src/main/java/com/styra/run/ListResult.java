@@ -3,6 +3,7 @@ package com.styra.run;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -17,6 +18,10 @@ public class ListResult extends Result<List<Result<?>>> {
         super(resultList, attributes);
     }
 
+    ListResult(List<Result<?>> resultList, Supplier<Map<String, ?>> lazyAttributes) {
+        super(resultList, null, null, lazyAttributes, -1);
+    }
+
     public static ListResult empty() {
         return EMPTY;
     }
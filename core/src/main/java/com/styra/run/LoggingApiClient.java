@@ -8,6 +8,8 @@ import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 
+import static com.styra.run.utils.Futures.propagateCancellation;
+
 public class LoggingApiClient implements ApiClient {
     private static final Logger logger = LoggerFactory.getLogger(ApiClient.class);
     private final ApiClient delegate;
@@ -32,6 +34,19 @@ public class LoggingApiClient implements ApiClient {
                 .thenApply((response -> logResponse(response, uuid)));
     }
 
+    @Override
+    public CompletableFuture<ApiResponse> request(ApiRequest request) {
+        UUID uuid = UUID.randomUUID();
+        if (logger.isTraceEnabled()) {
+            logger.trace("{} '{}'; uuid:{}; headers={}; body='{}'", request.getMethod(), request.getUri(), uuid,
+                    request.getHeaders(), request.getBodyAsString());
+        } else {
+            logger.debug("{} '{}'; uuid:{}", request.getMethod(), request.getUri(), uuid);
+        }
+        CompletableFuture<ApiResponse> response = delegate.request(request);
+        return propagateCancellation(response.thenApply((r -> logResponse(r, uuid))), response);
+    }
+
     private static ApiResponse logResponse(ApiResponse response, UUID uuid) {
         if (logger.isTraceEnabled()) {
             logger.trace("Response: uuid={}; status={}, body={}", uuid, response.getStatusCode(), response.getBody());
@@ -0,0 +1,108 @@
+package com.styra.run;
+
+import com.styra.run.discovery.GatewayPath;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Predicate;
+
+/**
+ * Queries of a single policy rule, as created by {@link StyraRun#prepare(String)}.
+ * <p>
+ * Behaves like {@link StyraRun#query(String, Input)} and {@link StyraRun#check(String, Input)} for the prepared path,
+ * but the request URI for each gateway is only built once, and shared by all queries. A <code>PreparedQuery</code> is
+ * thread-safe, and meant to be kept for as long as its {@link StyraRun} instance.
+ */
+public final class PreparedQuery {
+    private final StyraRun styraRun;
+    private final String path;
+    private final GatewayPath gatewayPath;
+
+    PreparedQuery(StyraRun styraRun, String path, GatewayPath gatewayPath) {
+        this.styraRun = styraRun;
+        this.path = path;
+        this.gatewayPath = gatewayPath;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @return a {@link CompletableFuture} carrying the {@link Result} encapsulating the query result
+     * @see StyraRun#query(String)
+     */
+    public CompletableFuture<Result<?>> query() {
+        return query(null, null);
+    }
+
+    /**
+     * @param input the {@link Input} value for the policy
+     * @return a {@link CompletableFuture} carrying the {@link Result} encapsulating the query result
+     * @see StyraRun#query(String, Input)
+     */
+    public CompletableFuture<Result<?>> query(Input<?> input) {
+        return query(input, null);
+    }
+
+    /**
+     * @param input the {@link Input} value for the policy
+     * @param deadline the {@link Deadline} of the query, or <code>null</code> for none
+     * @return a {@link CompletableFuture} carrying the {@link Result} encapsulating the query result
+     * @see StyraRun#query(String, Input, Deadline)
+     */
+    public CompletableFuture<Result<?>> query(Input<?> input, Deadline deadline) {
+        return styraRun.query(path, gatewayPath, input, deadline);
+    }
+
+    /**
+     * @return a {@link CompletableFuture} carrying <code>true</code> if the query result contains the boolean value
+     * <code>true</code>; <code>false</code> otherwise
+     * @see StyraRun#check(String)
+     */
+    public CompletableFuture<Boolean> check() {
+        return check(null, StyraRun.DEFAULT_CHECK_PREDICATE, null);
+    }
+
+    /**
+     * @param input the {@link Input} value for the policy
+     * @return a {@link CompletableFuture} carrying <code>true</code> if the query result contains the boolean value
+     * <code>true</code>; <code>false</code> otherwise
+     * @see StyraRun#check(String, Input)
+     */
+    public CompletableFuture<Boolean> check(Input<?> input) {
+        return check(input, StyraRun.DEFAULT_CHECK_PREDICATE, null);
+    }
+
+    /**
+     * @param input the {@link Input} value for the policy
+     * @param deadline the {@link Deadline} of the query, or <code>null</code> for none
+     * @return a {@link CompletableFuture} carrying <code>true</code> if the query result contains the boolean value
+     * <code>true</code>; <code>false</code> otherwise
+     * @see StyraRun#check(String, Input, Deadline)
+     */
+    public CompletableFuture<Boolean> check(Input<?> input, Deadline deadline) {
+        return check(input, StyraRun.DEFAULT_CHECK_PREDICATE, deadline);
+    }
+
+    /**
+     * @param input the {@link Input} value for the policy
+     * @param predicate a {@link Predicate} for "checking" the {@link Result}
+     * @return a {@link CompletableFuture} carrying the boolean output of applying <code>predicate</code> on the query
+     * result
+     * @see StyraRun#check(String, Input, Predicate)
+     */
+    public CompletableFuture<Boolean> check(Input<?> input, Predicate<Result<?>> predicate) {
+        return check(input, predicate, null);
+    }
+
+    private CompletableFuture<Boolean> check(Input<?> input, Predicate<Result<?>> predicate, Deadline deadline) {
+        return styraRun.check(path, gatewayPath, input, predicate, deadline);
+    }
+
+    @Override
+    public String toString() {
+        return "PreparedQuery{" +
+                "path='" + path + '\'' +
+                '}';
+    }
+}
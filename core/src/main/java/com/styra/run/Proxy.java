@@ -13,6 +13,7 @@ import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 import static com.styra.run.utils.Futures.async;
+import static com.styra.run.utils.Futures.propagateCancellation;
 
 /**
  * A helper construct for building HTTP proxy functionality.
@@ -64,12 +65,13 @@ public class Proxy<S extends Session> {
                 .map((query) -> query.withInput(inputTransformer.transform(query.getInput(), query.getPath(), session)))
                 .collect(Collectors.toList());
 
-        return styraRun.batchQuery(items, globalInput)
+        CompletableFuture<ListResult> result = styraRun.batchQuery(items, globalInput);
+        return propagateCancellation(result
                 .thenApply(this::sanitizeResults)
                 .exceptionally(async((e) -> {
                     logger.info("Batch query failed", e);
                     throw new StyraRunException("Batch query failed");
-                }));
+                })), result);
     }
 
     private ListResult sanitizeResults(ListResult listResult) {
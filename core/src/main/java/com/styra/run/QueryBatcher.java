@@ -0,0 +1,179 @@
+package com.styra.run;
+
+import com.styra.run.exceptions.StyraRunException;
+import com.styra.run.utils.Timers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static com.styra.run.utils.Futures.failedFuture;
+import static com.styra.run.utils.Types.castMap;
+
+/**
+ * Collects single policy queries into batches, which are sent as one batch query when either <code>maxItems</code>
+ * queries have been collected, or the first collected query has lingered for the configured duration.
+ * <p>
+ * Batches flushed after lingering are sent from <code>executor</code>, rather than from the shared timer thread.
+ * Closing the batcher sends any collected queries, and waits for all sent batches to complete.
+ */
+final class QueryBatcher implements AutoCloseable {
+    private final int maxItems;
+    private final Duration linger;
+    private final Function<List<BatchQuery.Item>, CompletableFuture<ListResult>> batchQuery;
+    private final Executor executor;
+
+    private final Object lock = new Object();
+    private List<PendingQuery> pending = new ArrayList<>();
+    private ScheduledFuture<?> flushTask;
+    private boolean closed = false;
+    // Completed when each drained batch has been sent, and its queries completed
+    private final Set<CompletableFuture<Void>> inFlight = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param executor the {@link Executor} to send lingering batches from, or <code>null</code> for the default
+     *                 asynchronous executor of {@link CompletableFuture}
+     */
+    QueryBatcher(int maxItems,
+                 Duration linger,
+                 Function<List<BatchQuery.Item>, CompletableFuture<ListResult>> batchQuery,
+                 Executor executor) {
+        this.maxItems = maxItems;
+        this.linger = linger;
+        this.batchQuery = batchQuery;
+        this.executor = executor;
+    }
+
+    CompletableFuture<Result<?>> submit(String path, Input<?> input) {
+        PendingQuery query = new PendingQuery(new BatchQuery.Item(path, input));
+        Batch batch = null;
+        synchronized (lock) {
+            if (closed) {
+                return failedFuture(new StyraRunException("Client is closed"));
+            }
+            pending.add(query);
+            if (maxItems > 0 && pending.size() >= maxItems) {
+                batch = drain();
+            } else if (flushTask == null) {
+                flushTask = Timers.schedule(this::flush, linger.toNanos(), executor);
+            }
+        }
+
+        if (batch != null) {
+            send(batch);
+        }
+        return query.future;
+    }
+
+    void flush() {
+        Batch batch;
+        synchronized (lock) {
+            batch = drain();
+        }
+        send(batch);
+    }
+
+    /**
+     * Sends any collected queries, and waits for all sent batches to complete; so that no batch is sent after the
+     * API client has been closed. Queries submitted afterwards fail.
+     */
+    @Override
+    public void close() {
+        Batch batch;
+        synchronized (lock) {
+            closed = true;
+            batch = drain();
+        }
+        send(batch);
+        CompletableFuture.allOf(inFlight.toArray(new CompletableFuture<?>[0])).join();
+    }
+
+    /**
+     * Must be called while holding <code>lock</code>.
+     */
+    private Batch drain() {
+        if (flushTask != null) {
+            flushTask.cancel(false);
+            flushTask = null;
+        }
+        if (pending.isEmpty()) {
+            return null;
+        }
+        Batch batch = new Batch(pending);
+        pending = new ArrayList<>();
+        inFlight.add(batch.done);
+        batch.done.whenComplete((v, e) -> inFlight.remove(batch.done));
+        return batch;
+    }
+
+    private void send(Batch batch) {
+        if (batch == null) {
+            return;
+        }
+
+        List<BatchQuery.Item> items = batch.queries.stream()
+                .map((query) -> query.item)
+                .collect(Collectors.toList());
+
+        CompletableFuture<ListResult> future;
+        try {
+            future = batchQuery.apply(items);
+        } catch (RuntimeException e) {
+            batch.queries.forEach((query) -> query.future.completeExceptionally(e));
+            batch.done.complete(null);
+            return;
+        }
+
+        future.whenComplete((listResult, e) -> {
+            try {
+                if (e != null) {
+                    batch.queries.forEach((query) -> query.future.completeExceptionally(e));
+                    return;
+                }
+
+                List<Result<?>> results = listResult.get();
+                for (int i = 0; i < batch.queries.size(); i++) {
+                    completeFrom(batch.queries.get(i).future, results.get(i));
+                }
+            } finally {
+                batch.done.complete(null);
+            }
+        });
+    }
+
+    private static void completeFrom(CompletableFuture<Result<?>> future, Result<?> result) {
+        Object error = result.getAttributes().get("error");
+        if (!result.hasValue() && error instanceof Map) {
+            ApiError apiError = ApiError.fromMap(castMap(Object.class, (Map<?, ?>) error));
+            future.completeExceptionally(new StyraRunException(String.format("Batched query failed: %s", apiError)));
+        } else {
+            future.complete(result);
+        }
+    }
+
+    private static final class Batch {
+        private final List<PendingQuery> queries;
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        private Batch(List<PendingQuery> queries) {
+            this.queries = queries;
+        }
+    }
+
+    private static final class PendingQuery {
+        private final BatchQuery.Item item;
+        private final CompletableFuture<Result<?>> future = new CompletableFuture<>();
+
+        private PendingQuery(BatchQuery.Item item) {
+            this.item = item;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.styra.run;
+
+import com.styra.run.utils.Url;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Identifies a policy query by its normalized rule path and serialized, UTF-8 encoded, request body.
+ */
+final class QueryKey {
+    private final String path;
+    private final byte[] body;
+    private final int hash;
+
+    QueryKey(String path, byte[] body) {
+        this.path = normalizePath(path);
+        this.body = body;
+        this.hash = 31 * this.path.hashCode() + Arrays.hashCode(body);
+    }
+
+    static String normalizePath(String path) {
+        return Url.joinPath("", path);
+    }
+
+    String getPath() {
+        return path;
+    }
+
+    long weight() {
+        return 2L * path.length() + body.length;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        QueryKey key = (QueryKey) o;
+        return hash == key.hash && path.equals(key.path) && Arrays.equals(body, key.body);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return "QueryKey{" +
+                "path='" + path + '\'' +
+                ", body='" + new String(body, StandardCharsets.UTF_8) + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,52 @@
+package com.styra.run;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent, identical requests, so that only one of them is sent to the Styra Run API,
+ * and all callers share its response.
+ * <p>
+ * A response is only shared while its request is in flight; once it has completed, the next request with the same key
+ * is sent anew.
+ *
+ * @param <K> the type of the key identifying identical requests
+ */
+final class RequestCoalescer<K> {
+    private final ConcurrentMap<K, CompletableFuture<ApiResponse>> inFlight = new ConcurrentHashMap<>();
+
+    CompletableFuture<ApiResponse> execute(K key, Supplier<CompletableFuture<ApiResponse>> request) {
+        CompletableFuture<ApiResponse> shared = new CompletableFuture<>();
+        CompletableFuture<ApiResponse> existing = inFlight.putIfAbsent(key, shared);
+        if (existing != null) {
+            return dependent(existing);
+        }
+
+        try {
+            request.get().whenComplete((response, e) -> {
+                inFlight.remove(key, shared);
+                if (e != null) {
+                    shared.completeExceptionally(e);
+                } else {
+                    shared.complete(response);
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlight.remove(key, shared);
+            shared.completeExceptionally(e);
+        }
+        return dependent(shared);
+    }
+
+    int size() {
+        return inFlight.size();
+    }
+
+    // Every caller gets its own future, so that one caller cancelling doesn't affect the others
+    private static CompletableFuture<ApiResponse> dependent(CompletableFuture<ApiResponse> shared) {
+        return shared.thenApply(Function.identity());
+    }
+}
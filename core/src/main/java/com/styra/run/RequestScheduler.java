@@ -0,0 +1,168 @@
+package com.styra.run;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static com.styra.run.utils.Futures.propagateCancellation;
+
+/**
+ * Schedules requests to the Styra Run API, bounding the number of concurrent in-flight requests.
+ * <p>
+ * Requests are submitted through {@link Lane lanes}, each with its own in-flight bound; e.g. one lane per batch query.
+ * Waiting lanes are served round-robin, one request at a time, so that a lane with many requests can't starve
+ * other lanes; single requests submitted through {@link #submit(Supplier)} get a lane of their own, and are therefore
+ * interleaved with the requests of concurrent batches.
+ */
+final class RequestScheduler {
+    private final int maxInFlight;
+
+    private final Object lock = new Object();
+    private final Deque<Lane> readyLanes = new ArrayDeque<>();
+    private int inFlight = 0;
+
+    private final AtomicInteger dispatchRequests = new AtomicInteger();
+
+    /**
+     * @param maxInFlight the maximum number of concurrent in-flight requests; <code>0</code> means no limit
+     */
+    RequestScheduler(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * Creates a new lane.
+     *
+     * @param maxInFlight the maximum number of concurrent in-flight requests of the lane; <code>0</code> means no limit
+     * @return a new {@link Lane}
+     */
+    Lane lane(int maxInFlight) {
+        return new Lane(maxInFlight);
+    }
+
+    <T> CompletableFuture<T> submit(Supplier<CompletableFuture<T>> request) {
+        return lane(0).submit(request);
+    }
+
+    int getInFlight() {
+        synchronized (lock) {
+            return inFlight;
+        }
+    }
+
+    private void dispatch() {
+        // Only one thread drains at a time; concurrent, or re-entrant, calls make the draining thread do another pass.
+        if (dispatchRequests.getAndIncrement() != 0) {
+            return;
+        }
+
+        int missed = 1;
+        do {
+            drain();
+            missed = dispatchRequests.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private void drain() {
+        while (true) {
+            Lane lane;
+            Task<?> task;
+            synchronized (lock) {
+                if (maxInFlight > 0 && inFlight >= maxInFlight) {
+                    return;
+                }
+                lane = readyLanes.pollFirst();
+                if (lane == null) {
+                    return;
+                }
+                lane.queued = false;
+                task = lane.tasks.pollFirst();
+                lane.inFlight++;
+                inFlight++;
+                // Back of the line, to give other lanes a turn
+                enqueueIfReady(lane);
+            }
+            task.run(lane);
+        }
+    }
+
+    private void onComplete(Lane lane) {
+        synchronized (lock) {
+            lane.inFlight--;
+            inFlight--;
+            enqueueIfReady(lane);
+        }
+        dispatch();
+    }
+
+    private void enqueueIfReady(Lane lane) {
+        if (!lane.queued && lane.isReady()) {
+            readyLanes.addLast(lane);
+            lane.queued = true;
+        }
+    }
+
+    final class Lane {
+        private final int maxInFlight;
+        private final Deque<Task<?>> tasks = new ArrayDeque<>();
+        private int inFlight = 0;
+        private boolean queued = false;
+
+        private Lane(int maxInFlight) {
+            this.maxInFlight = maxInFlight;
+        }
+
+        <T> CompletableFuture<T> submit(Supplier<CompletableFuture<T>> request) {
+            Task<T> task = new Task<>(request);
+            synchronized (lock) {
+                tasks.addLast(task);
+                enqueueIfReady(this);
+            }
+            dispatch();
+            return task.future;
+        }
+
+        private boolean isReady() {
+            return !tasks.isEmpty() && (maxInFlight <= 0 || inFlight < maxInFlight);
+        }
+    }
+
+    private final class Task<T> {
+        private final Supplier<CompletableFuture<T>> request;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+
+        private Task(Supplier<CompletableFuture<T>> request) {
+            this.request = request;
+        }
+
+        private void run(Lane lane) {
+            if (future.isDone()) {
+                // Cancelled while waiting to be dispatched
+                onComplete(lane);
+                return;
+            }
+
+            CompletableFuture<T> response;
+            try {
+                response = request.get();
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+                onComplete(lane);
+                return;
+            }
+
+            propagateCancellation(future, response);
+            response.whenComplete((value, e) -> {
+                // The caller is completed first; releasing the slot may start the next request on this thread
+                if (e != null) {
+                    future.completeExceptionally(e);
+                } else {
+                    future.complete(value);
+                }
+                onComplete(lane);
+            });
+        }
+    }
+}
@@ -3,12 +3,15 @@ package com.styra.run;
 import com.styra.run.exceptions.StyraRunException;
 import com.styra.run.utils.Null;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import static com.styra.run.utils.Lambdas.CheckedValue.tryWrap;
@@ -22,8 +25,15 @@ import static com.styra.run.utils.Lambdas.CheckedValue.unwrapOrThrow;
 public class Result<T> implements SerializableAsMap {
     public static final Result<?> EMPTY_RESULT = new Result<>(null, Collections.emptyMap());
 
-    private final T value;
-    private final Map<String, ?> attributes;
+    private T value;
+    private Map<String, ?> attributes;
+    // The type of the value yet to be materialized, if any
+    private final Class<?> lazyValueType;
+    // Materialize the value, and the attributes, on first access; null once materialized
+    private volatile Supplier<? extends T> lazyValue;
+    private volatile Supplier<Map<String, ?>> lazyAttributes;
+    // The length of the JSON this result was read from, if known; -1 otherwise
+    private final long encodedLength;
 
     public Result(T value) {
         this(value, Collections.emptyMap());
@@ -32,6 +42,106 @@ public class Result<T> implements SerializableAsMap {
     public Result(T value, Map<String, ?> attributes) {
         this.value = value;
         this.attributes = Null.map(attributes, Collections::unmodifiableMap, Collections.emptyMap());
+        this.lazyValueType = null;
+        this.lazyValue = null;
+        this.lazyAttributes = null;
+        this.encodedLength = -1;
+    }
+
+    /**
+     * Creates a <code>Result</code> whose value, and attributes, are only materialized when first accessed.
+     *
+     * @param value the value, if already known
+     * @param lazyValue supplies the value, or <code>null</code> if <code>value</code> is known
+     * @param lazyValueType the type of the value supplied by <code>lazyValue</code>
+     * @param lazyAttributes supplies the attributes, or <code>null</code> if there are none
+     * @param encodedLength the length of the JSON the result is read from, or <code>-1</code> if unknown
+     */
+    Result(T value,
+           Supplier<? extends T> lazyValue,
+           Class<?> lazyValueType,
+           Supplier<Map<String, ?>> lazyAttributes,
+           long encodedLength) {
+        this.value = value;
+        this.attributes = Collections.emptyMap();
+        this.lazyValueType = lazyValueType;
+        this.lazyValue = lazyValue;
+        this.lazyAttributes = lazyAttributes;
+        this.encodedLength = encodedLength;
+    }
+
+    private T value() {
+        if (lazyValue != null) {
+            synchronized (this) {
+                Supplier<? extends T> supplier = lazyValue;
+                if (supplier != null) {
+                    value = supplier.get();
+                    lazyValue = null;
+                }
+            }
+        }
+        return value;
+    }
+
+    private Map<String, ?> attributes() {
+        if (lazyAttributes != null) {
+            synchronized (this) {
+                Supplier<Map<String, ?>> supplier = lazyAttributes;
+                if (supplier != null) {
+                    attributes = Collections.unmodifiableMap(supplier.get());
+                    lazyAttributes = null;
+                }
+            }
+        }
+        return attributes;
+    }
+
+    /**
+     * Returns a copy of this result whose value, and attributes, are deeply unmodifiable; so that it can be shared
+     * by callers that mustn't see each other's changes. A value, or attributes, yet to be materialized stay so.
+     */
+    Result<T> toUnmodifiable() {
+        T value;
+        Supplier<? extends T> lazyValue;
+        Map<String, ?> attributes;
+        Supplier<Map<String, ?>> lazyAttributes;
+        synchronized (this) {
+            value = this.value;
+            lazyValue = this.lazyValue;
+            attributes = this.attributes;
+            lazyAttributes = this.lazyAttributes;
+        }
+
+        Map<String, ?> unmodifiableAttributes = lazyAttributes == null ? unmodifiable(attributes) : null;
+        return new Result<>(
+                lazyValue == null ? unmodifiable(value) : null,
+                lazyValue != null ? () -> unmodifiable(lazyValue.get()) : null,
+                lazyValueType,
+                lazyAttributes != null ?
+                        () -> unmodifiable(lazyAttributes.get()) :
+                        unmodifiableAttributes.isEmpty() ? null : () -> unmodifiableAttributes,
+                encodedLength);
+    }
+
+    /**
+     * @return the length of the JSON this result was read from, or <code>-1</code> if unknown
+     */
+    long getEncodedLength() {
+        return encodedLength;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> V unmodifiable(V value) {
+        if (value instanceof Map) {
+            Map<Object, Object> map = new LinkedHashMap<>();
+            ((Map<?, ?>) value).forEach((k, v) -> map.put(k, unmodifiable(v)));
+            return (V) Collections.unmodifiableMap(map);
+        } else if (value instanceof List) {
+            List<Object> list = new ArrayList<>(((List<?>) value).size());
+            ((List<?>) value).forEach((v) -> list.add(unmodifiable(v)));
+            return (V) Collections.unmodifiableList(list);
+        }
+        return value;
     }
 
     /**
@@ -64,7 +174,7 @@ public class Result<T> implements SerializableAsMap {
     }
 
     public Result<T> withAttributes(Map<String, ?> attributes) {
-        return new Result<>(value, attributes);
+        return new Result<>(value(), attributes);
     }
 
     /**
@@ -73,7 +183,7 @@ public class Result<T> implements SerializableAsMap {
      * @return the value of this result, or <code>null</code>
      */
     public T get() {
-        return value;
+        return value();
     }
 
     /**
@@ -87,6 +197,7 @@ public class Result<T> implements SerializableAsMap {
      * @throws StyraRunException if this result's value is not of the required type
      */
     public <R> R get(Class<R> type) throws StyraRunException {
+        T value = value();
         if (value == null) {
             throw new StyraRunException("Result value is null");
         }
@@ -110,6 +221,7 @@ public class Result<T> implements SerializableAsMap {
      * @return the value of this result
      */
     public <R> R getSafe(Class<R> type, R def) {
+        T value = value();
         if (value == null) {
             return def;
         }
@@ -127,7 +239,8 @@ public class Result<T> implements SerializableAsMap {
      * @return <code>true</code> if this Result's value is not null
      */
     public boolean hasValue() {
-        return value != null;
+        // A lazy value is never null
+        return lazyValue != null || value() != null;
     }
 
     /**
@@ -137,6 +250,7 @@ public class Result<T> implements SerializableAsMap {
      * @return <code>true</code> if this Result's value is <code>null</code> or an empty {@link Collection}
      */
     public boolean isEmpty() {
+        T value = value();
         if (value instanceof Collection) {
             return ((Collection<?>) value).isEmpty();
         } else if (value instanceof Map) {
@@ -195,7 +309,10 @@ public class Result<T> implements SerializableAsMap {
     }
 
     boolean isValueType(Class<?> type) {
-        return type.isInstance(value);
+        if (lazyValue != null) {
+            return type.isAssignableFrom(lazyValueType);
+        }
+        return type.isInstance(value());
     }
 
     boolean isBooleanValue() {
@@ -203,15 +320,15 @@ public class Result<T> implements SerializableAsMap {
     }
 
     public Map<String, ?> getAttributes() {
-        return attributes;
+        return attributes();
     }
 
     public boolean containsAttribute(String key) {
-        return attributes.containsKey(key);
+        return attributes().containsKey(key);
     }
 
     public T getAttribute(String key, Class<T> type) throws StyraRunException {
-        Object attribute = attributes.get(key);
+        Object attribute = attributes().get(key);
         if (attribute == null) {
             throw new StyraRunException(String.format("Result attribute '%s' is null", key));
         }
@@ -225,7 +342,7 @@ public class Result<T> implements SerializableAsMap {
     }
 
     public Result<T> withoutAttributes() {
-        return new Result<>(value, Collections.emptyMap());
+        return new Result<>(value(), Collections.emptyMap());
     }
 
     @Override
@@ -233,29 +350,30 @@ public class Result<T> implements SerializableAsMap {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         Result<?> result1 = (Result<?>) o;
-        return Objects.equals(value, result1.value) && Objects.equals(attributes, result1.attributes);
+        return Objects.equals(value(), result1.value()) && Objects.equals(attributes(), result1.attributes());
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(value, attributes);
+        return Objects.hash(value(), attributes());
     }
 
     @Override
     public String toString() {
-        return "Result{" + value +
-                ", attributes=" + attributes +
+        return "Result{" + value() +
+                ", attributes=" + attributes() +
                 '}';
     }
 
     public Map<String, ?> toMap() {
+        T value = value();
         if (value == null) {
             return Collections.emptyMap();
         }
 
         Map<String, Object> map = new HashMap<>();
         map.put("result", SerializableAsMap.serialize(value));
-        map.putAll(attributes.entrySet().stream().collect(Collectors.toMap(
+        map.putAll(attributes().entrySet().stream().collect(Collectors.toMap(
                 Map.Entry::getKey,
                 e -> SerializableAsMap.serialize(e.getValue()))));
         return map;
@@ -2,42 +2,56 @@ package com.styra.run;
 
 import com.styra.run.ApiClient.RequestBuilder;
 import com.styra.run.discovery.ApiGatewaySelector;
+import com.styra.run.discovery.CircuitBreakerPolicy;
+import com.styra.run.discovery.ConcurrencyLimitPolicy;
 import com.styra.run.discovery.Gateway;
+import com.styra.run.discovery.GatewayPath;
 import com.styra.run.discovery.GatewaySelectionStrategy;
 import com.styra.run.discovery.GatewaySelector;
+import com.styra.run.discovery.HedgingPolicy;
+import com.styra.run.discovery.RetryPolicy;
 import com.styra.run.discovery.SimpleGatewaySelectionStrategy;
 import com.styra.run.discovery.StaticGatewaySelector;
 import com.styra.run.exceptions.StyraRunException;
 import com.styra.run.exceptions.StyraRunHttpException;
 import com.styra.run.rbac.RbacManager;
 import com.styra.run.spi.ApiClientFactory;
-import com.styra.run.utils.Futures;
 import com.styra.run.utils.Null;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.net.ssl.SSLContext;
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.security.NoSuchAlgorithmException;
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
-import java.util.stream.Collectors;
+import java.util.zip.ZipException;
 
 import static com.styra.run.ApiClient.Method.DELETE;
 import static com.styra.run.ApiClient.Method.GET;
 import static com.styra.run.ApiClient.Method.POST;
 import static com.styra.run.ApiClient.Method.PUT;
+import static com.styra.run.utils.Futures.composeCancellable;
 import static com.styra.run.utils.Futures.failedFuture;
+import static com.styra.run.utils.Futures.propagateCancellation;
 import static com.styra.run.utils.Null.firstNonNull;
 import static com.styra.run.utils.Null.orThrow;
 import static java.util.Objects.requireNonNull;
@@ -50,29 +64,68 @@ import static java.util.concurrent.CompletableFuture.completedFuture;
 public class StyraRun implements AutoCloseable {
     private static final Logger logger = LoggerFactory.getLogger(StyraRun.class);
 
-    private static final Predicate<Result<?>> DEFAULT_CHECK_PREDICATE = (result) -> result.getSafe(Boolean.class, false);
+    static final Predicate<Result<?>> DEFAULT_CHECK_PREDICATE = (result) -> result.getSafe(Boolean.class, false);
 
     private final ApiClient apiClient;
     private final Json json;
     private final GatewaySelector gatewaySelector;
     private final String token;
+    private final Map<String, String> commonHeaders;
+    private final Map<String, String> jsonHeaders;
     private final int batchQueryItemsMax;
+    private final DecisionCache decisionCache;
+    private final RequestCoalescer<QueryKey> queryCoalescer;
+    private final RequestCoalescer<String> dataCoalescer;
+    private final QueryBatcher queryBatcher;
+    private final RequestScheduler requestScheduler;
+    private final int batchQueryConcurrencyMax;
 
     private StyraRun(String token,
                      ApiClient apiClient,
                      Json json,
-                     GatewaySelector gatewaySelector, int batchQueryItemsMax) {
+                     GatewaySelector gatewaySelector, int batchQueryItemsMax,
+                     DecisionCache decisionCache,
+                     boolean requestCoalescing,
+                     Duration autoBatchingLinger,
+                     int autoBatchingItemsMax,
+                     int queryConcurrencyMax,
+                     int batchQueryConcurrencyMax,
+                     Executor executor) {
         this.token = token;
+        this.commonHeaders = makeAuthorizationHeader(token);
+        Map<String, String> jsonHeaders = new HashMap<>(commonHeaders);
+        jsonHeaders.put("Content-Type", "application/json");
+        this.jsonHeaders = Collections.unmodifiableMap(jsonHeaders);
         this.apiClient = apiClient;
         this.json = json;
         this.gatewaySelector = gatewaySelector;
         this.batchQueryItemsMax = batchQueryItemsMax;
+        this.decisionCache = decisionCache;
+        this.queryCoalescer = requestCoalescing ? new RequestCoalescer<>() : null;
+        this.dataCoalescer = requestCoalescing ? new RequestCoalescer<>() : null;
+        this.queryBatcher = autoBatchingLinger != null ?
+                new QueryBatcher(autoBatchingItemsMax, autoBatchingLinger, this::batchQuery, executor) :
+                null;
+        this.requestScheduler = queryConcurrencyMax > 0 || batchQueryConcurrencyMax > 0 ?
+                new RequestScheduler(queryConcurrencyMax) :
+                null;
+        this.batchQueryConcurrencyMax = batchQueryConcurrencyMax;
     }
 
     public Json getJson() {
         return json;
     }
 
+    /**
+     * Returns the {@link DecisionCache} consulted by {@link #query(String, Input)} and {@link #check(String, Input)},
+     * if one has been configured.
+     *
+     * @return an {@link Optional} carrying the {@link DecisionCache}, or empty if decisions aren't cached
+     */
+    public Optional<DecisionCache> getDecisionCache() {
+        return Optional.ofNullable(decisionCache);
+    }
+
     protected ApiClient getApiClient() {
         return apiClient;
     }
@@ -97,19 +150,128 @@ public class StyraRun implements AutoCloseable {
      * @see #query(String)
      */
     public CompletableFuture<Result<?>> query(String path, Input<?> input) {
+        return query(path, input, null);
+    }
+
+    /**
+     * Query a policy rule at the given <code>path</code>, with the given <code>input</code>, that must complete before
+     * <code>deadline</code>; including any retries.
+     * <p>
+     * If the deadline passes, the returned {@link CompletableFuture} is completed exceptionally with a
+     * {@link com.styra.run.exceptions.DeadlineExceededException}. If the deadline passes, or the returned
+     * {@link CompletableFuture} is cancelled, the request to the Styra Run API is aborted; unless it's shared with
+     * other calls.
+     *
+     * @param path the String path to the policy rule
+     * @param input the {@link Input} value for the policy
+     * @param deadline the {@link Deadline} of the query, or <code>null</code> for none
+     * @return a {@link CompletableFuture} carrying the {@link Result} encapsulating the query result
+     * @see #query(String, Input)
+     */
+    public CompletableFuture<Result<?>> query(String path, Input<?> input, Deadline deadline) {
         requireNonNull(path, "path must not be null");
+        return query(path, null, input, deadline);
+    }
 
-        return completedFuture(apiClient.requestBuilder(POST)
-                .headers(getCommonHeaders())
-                .jsonContentType())
-                .thenCombine(serializeBody(new InputContainer(input)), RequestBuilder::body)
-                .thenCompose((request) -> gatewaySelector.retry(request, "data", path))
-                .thenApply(this::handleResponse)
-                .thenApply(Result::fromResponseMap)
+    /**
+     * Prepares queries of the policy rule at the given <code>path</code>. The returned {@link PreparedQuery} is
+     * meant to be kept, and reused for all queries of the rule; the request URI for each gateway, and the request
+     * headers, are only built once.
+     *
+     * @param path the String path to the policy rule
+     * @return a new {@link PreparedQuery}
+     */
+    public PreparedQuery prepare(String path) {
+        requireNonNull(path, "path must not be null");
+        return new PreparedQuery(this, path, GatewayPath.of("data", path));
+    }
+
+    CompletableFuture<Result<?>> query(String path, GatewayPath gatewayPath, Input<?> input, Deadline deadline) {
+        if (decisionCache != null && decisionCache.isEnabledFor(path)) {
+            return composeCancellable(serializeCanonicalBody(new InputContainer(input)),
+                    (body) -> cachedQuery(path, gatewayPath, input, body, deadline));
+        }
+
+        if (queryBatcher != null) {
+            return bound(queryBatcher.submit(path, input)
+                    .thenApply((result) -> {
+                        logger.trace("Query (batched): path='{}'; input={}; result={}", path, input, result);
+                        return result;
+                    }), deadline);
+        }
+
+        CompletableFuture<ApiResponse> response = composeCancellable(serializeInput(input),
+                (body) -> requestQuery(path, gatewayPath, body, deadline));
+        return propagateCancellation(response
+                .thenApply(this::handleResultResponse)
                 .thenApply((result) -> {
                     logger.trace("Query: path='{}'; input={}; result={}", path, input, result);
                     return result;
-                });
+                }), response);
+    }
+
+    private CompletableFuture<Result<?>> cachedQuery(String path,
+                                                     GatewayPath gatewayPath,
+                                                     Input<?> input,
+                                                     byte[] body,
+                                                     Deadline deadline) {
+        QueryKey key = new QueryKey(path, body);
+        Result<?> cached = decisionCache.get(key);
+        if (cached != null) {
+            logger.trace("Query (cached): path='{}'; input={}; result={}", path, input, cached);
+            return completedFuture(cached);
+        }
+
+        if (queryBatcher != null) {
+            return bound(queryBatcher.submit(path, input)
+                    .thenApply((result) -> {
+                        decisionCache.put(key, result, DecisionCache.estimateBytes(result));
+                        logger.trace("Query (batched): path='{}'; input={}; result={}", path, input, result);
+                        return result;
+                    }), deadline);
+        }
+
+        CompletableFuture<ApiResponse> response = requestQuery(path, gatewayPath, body, deadline);
+        return propagateCancellation(response
+                .thenApply((r) -> {
+                    Result<?> result = handleResultResponse(r);
+                    decisionCache.put(key, result, r.getBodyLength());
+                    return result;
+                })
+                .thenApply((result) -> {
+                    logger.trace("Query: path='{}'; input={}; result={}", path, input, result);
+                    return result;
+                }), response);
+    }
+
+    private CompletableFuture<ApiResponse> requestQuery(String path,
+                                                        GatewayPath gatewayPath,
+                                                        byte[] body,
+                                                        Deadline deadline) {
+        // A coalesced request is shared by calls with different deadlines, so each call is bounded by its own instead
+        Deadline requestDeadline = queryCoalescer == null ? deadline : null;
+        Supplier<CompletableFuture<ApiResponse>> request = () -> {
+            RequestBuilder requestBuilder = apiClient.requestBuilder(POST)
+                    .sharedHeaders(jsonHeaders)
+                    .body(body)
+                    .deadline(requestDeadline);
+            return gatewayPath != null ?
+                    gatewaySelector.hedge(requestBuilder, gatewayPath) :
+                    gatewaySelector.hedge(requestBuilder, "data", path);
+        };
+
+        Supplier<CompletableFuture<ApiResponse>> scheduledRequest = requestScheduler != null ?
+                () -> bound(requestScheduler.submit(request), requestDeadline) :
+                request;
+
+        if (queryCoalescer != null) {
+            return bound(queryCoalescer.execute(new QueryKey(path, body), scheduledRequest), deadline);
+        }
+        return scheduledRequest.get();
+    }
+
+    private static <T> CompletableFuture<T> bound(CompletableFuture<T> future, Deadline deadline) {
+        return deadline != null ? deadline.bound(future) : future;
     }
 
     /**
@@ -149,6 +311,26 @@ public class StyraRun implements AutoCloseable {
      * @see #batchQueryBuilder()
      */
     public CompletableFuture<ListResult> batchQuery(List<BatchQuery.Item> items, Input<?> globalInput) {
+        return batchQuery(items, globalInput, null);
+    }
+
+    /**
+     * Make a batch query to the Styra Run API, like {@link #batchQuery(List, Input)}, that must complete before
+     * <code>deadline</code>; including any retries.
+     * <p>
+     * If the deadline passes, the returned {@link CompletableFuture} is completed exceptionally with a
+     * {@link com.styra.run.exceptions.DeadlineExceededException}. If the deadline passes, or the returned
+     * {@link CompletableFuture} is cancelled, all in-flight requests to the Styra Run API are aborted.
+     *
+     * @param items the list of queries to execute
+     * @param globalInput the global input value to use as default
+     * @param deadline the {@link Deadline} of the batch query, or <code>null</code> for none
+     * @return a {@link CompletableFuture} carrying the {@link ListResult} enumerating the results for each submitted query
+     * @see #batchQuery(List, Input)
+     */
+    public CompletableFuture<ListResult> batchQuery(List<BatchQuery.Item> items,
+                                                    Input<?> globalInput,
+                                                    Deadline deadline) {
         requireNonNull(items, "items must not be null");
         if (items.isEmpty()) {
             throw new IllegalArgumentException("items must not be empty");
@@ -156,39 +338,214 @@ public class StyraRun implements AutoCloseable {
 
         logger.trace("Batch query: items='{}'; input={}", items, globalInput);
 
-        List<BatchQuery> chunks = new BatchQuery(items, globalInput)
-                .chunk(batchQueryItemsMax);
+        Result<?>[] results = new Result<?>[items.size()];
+        Map<String, Object> attributes = new HashMap<>();
+        CompletableFuture<?>[] futures = requestBatchQuery(items, globalInput, deadline, new BatchResultHandler() {
+            @Override
+            public void onResult(int index, Result<?> result) {
+                results[index] = result;
+            }
 
-        List<CompletableFuture<ListResult>> futures = chunks.stream()
-                .map(this::batchQuery)
-                .collect(Collectors.toList());
+            @Override
+            public void onAttributes(Map<String, ?> chunkAttributes) {
+                synchronized (attributes) {
+                    attributes.putAll(chunkAttributes);
+                }
+            }
+        });
 
-        return Futures.allOf(futures)
-                .thenApply((resultList) -> resultList.stream()
-                        .reduce(ListResult::append)
-                        .orElse(ListResult.empty()))
-                .thenApply((result) -> {
-                    if (result.size() != items.size()) {
-                        throw new CompletionException(new StyraRunException(String.format(
-                                "Number of items in batch query response (%d) does not match number of items in request (%d)",
-                                result.size(), items.size())));
+        CompletableFuture<ListResult> result = CompletableFuture.allOf(futures)
+                .thenApply((v) -> new ListResult(Arrays.asList(results), attributes))
+                .thenApply((listResult) -> {
+                    logger.trace("Batch query: items='{}'; input={}; result={}", items, globalInput, listResult);
+                    return listResult;
+                });
+        for (CompletableFuture<?> future : futures) {
+            propagateCancellation(result, future);
+        }
+        return bound(result, deadline);
+    }
+
+    /**
+     * Make a batch query to the Styra Run API, where each {@link BatchQuery.Item} in <code>items</code> is a query,
+     * and <code>globalInput</code> is the default input value that will be applied to any query entry that doesn't
+     * contain its own <code>input</code> value.
+     * <p>
+     * Unlike {@link #batchQuery(List, Input)}, the result of each query is delivered as soon as it's available;
+     * when <code>items</code> is split across multiple requests to the Styra Run API, the results of early requests
+     * can be acted upon while later requests are still in flight.
+     * <p>
+     * The returned list maintains the order of <code>items</code>.
+     *
+     * @param items the list of queries to execute
+     * @param globalInput the global input value to use as default
+     * @return a list of {@link CompletableFuture}:s, one per item, each carrying the {@link Result} of its query
+     * @see #batchQuery(List, Input)
+     */
+    public List<CompletableFuture<Result<?>>> batchQueryEach(List<BatchQuery.Item> items, Input<?> globalInput) {
+        requireNonNull(items, "items must not be null");
+        if (items.isEmpty()) {
+            throw new IllegalArgumentException("items must not be empty");
+        }
+
+        logger.trace("Batch query: items='{}'; input={}", items, globalInput);
+
+        List<CompletableFuture<Result<?>>> results = new ArrayList<>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            results.add(new CompletableFuture<>());
+        }
+
+        requestBatchQuery(items, globalInput, null, new BatchResultHandler() {
+            @Override
+            public void onResult(int index, Result<?> result) {
+                results.get(index).complete(result);
+            }
+
+            @Override
+            public void onError(int index, Throwable e) {
+                results.get(index).completeExceptionally(e);
+            }
+        });
+
+        return results;
+    }
+
+    /**
+     * Make a batch query to the Styra Run API, like {@link #batchQuery(List, Input)}, expecting a boolean result
+     * for each {@link BatchQuery.Item} in <code>items</code>.
+     *
+     * @param items the list of queries to execute
+     * @param globalInput the global input value to use as default
+     * @return a {@link CompletableFuture} carrying a {@link BitSet}, where the bit at the index of each item in
+     * <code>items</code> is set if the result of its query is the boolean value <code>true</code>
+     * @see #checkAll(List, Input, Deadline)
+     */
+    public CompletableFuture<BitSet> checkAll(List<BatchQuery.Item> items, Input<?> globalInput) {
+        return checkAll(items, globalInput, null);
+    }
+
+    /**
+     * Make a batch query to the Styra Run API, like {@link #checkAll(List, Input)}, that must complete before
+     * <code>deadline</code>; including any retries.
+     *
+     * @param items the list of queries to execute
+     * @param globalInput the global input value to use as default
+     * @param deadline the {@link Deadline} of the batch query, or <code>null</code> for none
+     * @return a {@link CompletableFuture} carrying a {@link BitSet}, where the bit at the index of each item in
+     * <code>items</code> is set if the result of its query is the boolean value <code>true</code>
+     * @see #batchQuery(List, Input, Deadline)
+     */
+    public CompletableFuture<BitSet> checkAll(List<BatchQuery.Item> items, Input<?> globalInput, Deadline deadline) {
+        requireNonNull(items, "items must not be null");
+        if (items.isEmpty()) {
+            throw new IllegalArgumentException("items must not be empty");
+        }
+
+        logger.trace("Batch check: items='{}'; input={}", items, globalInput);
+
+        BitSet allowed = new BitSet(items.size());
+        CompletableFuture<?>[] futures = requestBatchQuery(items, globalInput, deadline, (index, result) -> {
+            if (DEFAULT_CHECK_PREDICATE.test(result)) {
+                // Chunks may complete concurrently
+                synchronized (allowed) {
+                    allowed.set(index);
+                }
+            }
+        });
+
+        CompletableFuture<BitSet> result = CompletableFuture.allOf(futures)
+                .thenApply((v) -> {
+                    synchronized (allowed) {
+                        logger.trace("Batch check: items='{}'; input={}; allowed={}", items, globalInput, allowed);
+                        return allowed;
                     }
-                    return result;
-                })
-                .thenApply((result) -> {
-                    logger.trace("Batch query: items='{}'; input={}; result={}", items, globalInput, result);
-                    return result;
                 });
+        for (CompletableFuture<?> future : futures) {
+            propagateCancellation(result, future);
+        }
+        return bound(result, deadline);
     }
 
-    private CompletableFuture<ListResult> batchQuery(BatchQuery query) {
-        return completedFuture(apiClient.requestBuilder(POST)
-                .headers(getCommonHeaders())
-                .jsonContentType())
-                .thenCombine(serializeBody(query), RequestBuilder::body)
-                .thenCompose(request -> gatewaySelector.retry(request, "data_batch"))
-                .thenApply(this::handleResponse)
-                .thenApply(ListResult::fromResponseMap);
+    /**
+     * Requests the chunks of a batch query, handing the result of each item to <code>handler</code>
+     * together with the index of the item in <code>items</code>.
+     * Duplicate items are only requested once, and their result is handed to <code>handler</code> for every index.
+     *
+     * @return one {@link CompletableFuture} per chunk, completed after <code>handler</code> has been called
+     */
+    private CompletableFuture<?>[] requestBatchQuery(List<BatchQuery.Item> items,
+                                                     Input<?> globalInput,
+                                                     Deadline deadline,
+                                                     BatchResultHandler handler) {
+        UniqueBatchQuery uniqueQuery = UniqueBatchQuery.of(items, globalInput);
+        if (uniqueQuery.size() < items.size()) {
+            logger.debug("Batch query: {} duplicate items not sent", items.size() - uniqueQuery.size());
+        }
+
+        List<BatchQuery> chunks = uniqueQuery.getQuery()
+                .chunk(batchQueryItemsMax);
+
+        // Shared by all chunks, so that the global input is only serialized once
+        BatchQueryEncoder encoder = new BatchQueryEncoder(json, globalInput);
+
+        RequestScheduler.Lane lane = requestScheduler != null ?
+                requestScheduler.lane(batchQueryConcurrencyMax) :
+                null;
+
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[chunks.size()];
+        int offset = 0;
+        for (int i = 0; i < chunks.size(); i++) {
+            BatchQuery chunk = chunks.get(i);
+            int chunkOffset = offset;
+            int chunkSize = chunk.getItems().size();
+
+            CompletableFuture<ListResult> future = lane != null ?
+                    lane.submit(() -> batchQuery(chunk, encoder, deadline)) :
+                    batchQuery(chunk, encoder, deadline);
+            futures[i] = propagateCancellation(future
+                    .thenAccept((chunkResult) -> {
+                        if (chunkResult.size() != chunkSize) {
+                            throw new CompletionException(new StyraRunException(String.format(
+                                    "Number of items in batch query response (%d) does not match number of items in request (%d)",
+                                    chunkResult.size(), chunkSize)));
+                        }
+                        List<Result<?>> chunkResults = chunkResult.get();
+                        for (int j = 0; j < chunkSize; j++) {
+                            Result<?> result = chunkResults.get(j);
+                            uniqueQuery.forEachOriginal(chunkOffset + j, (index) -> handler.onResult(index, result));
+                        }
+                        handler.onAttributes(chunkResult.getAttributes());
+                    })
+                    .whenComplete((v, e) -> {
+                        if (e != null) {
+                            for (int j = 0; j < chunkSize; j++) {
+                                uniqueQuery.forEachOriginal(chunkOffset + j, (index) -> handler.onError(index, e));
+                            }
+                        }
+                    }), future);
+            offset += chunkSize;
+        }
+        return futures;
+    }
+
+    private interface BatchResultHandler {
+        void onResult(int index, Result<?> result);
+
+        default void onAttributes(Map<String, ?> attributes) {
+        }
+
+        default void onError(int index, Throwable e) {
+        }
+    }
+
+    private CompletableFuture<ListResult> batchQuery(BatchQuery query, BatchQueryEncoder encoder, Deadline deadline) {
+        CompletableFuture<ApiResponse> response = composeCancellable(serializeBatchBody(query, encoder),
+                (body) -> gatewaySelector.hedge(apiClient.requestBuilder(POST)
+                        .sharedHeaders(jsonHeaders)
+                        .body(body)
+                        .deadline(deadline), "data_batch"));
+        return propagateCancellation(response
+                .thenApply(this::handleListResultResponse), response);
     }
 
     /**
@@ -238,12 +595,57 @@ public class StyraRun implements AutoCloseable {
      * @see #query(String, Input)
      */
     public CompletableFuture<Boolean> check(String path, Input<?> input, Predicate<Result<?>> predicate) {
-        return query(path, input)
+        return check(path, input, predicate, null);
+    }
+
+    /**
+     * Query a policy rule at the given <code>path</code>, expecting a boolean result, that must complete before
+     * <code>deadline</code>.
+     *
+     * @param path the String path to the policy rule
+     * @param input the {@link Input} value for the policy
+     * @param deadline the {@link Deadline} of the query, or <code>null</code> for none
+     * @return <code>true</code> if the query result contains the boolean value <code>true</code>; <code>false</code> otherwise
+     * @see #query(String, Input, Deadline)
+     */
+    public CompletableFuture<Boolean> check(String path, Input<?> input, Deadline deadline) {
+        return check(path, input, DEFAULT_CHECK_PREDICATE, deadline);
+    }
+
+    private CompletableFuture<Boolean> check(String path,
+                                             Input<?> input,
+                                             Predicate<Result<?>> predicate,
+                                             Deadline deadline) {
+        requireNonNull(path, "path must not be null");
+        return check(path, null, input, predicate, deadline);
+    }
+
+    CompletableFuture<Boolean> check(String path,
+                                     GatewayPath gatewayPath,
+                                     Input<?> input,
+                                     Predicate<Result<?>> predicate,
+                                     Deadline deadline) {
+        if (predicate == DEFAULT_CHECK_PREDICATE && queryBatcher == null &&
+                (decisionCache == null || !decisionCache.isEnabledFor(path))) {
+            CompletableFuture<ApiResponse> response = composeCancellable(serializeInput(input),
+                    (body) -> requestQuery(path, gatewayPath, body, deadline));
+            return propagateCancellation(response
+                    .thenApply((r) -> {
+                        boolean allowed = handleCheckResponse(r);
+                        if (logger.isTraceEnabled()) {
+                            logger.trace("Check: path='{}'; input={}; allowed={}", path, input, allowed);
+                        }
+                        return allowed;
+                    }), response);
+        }
+
+        CompletableFuture<Result<?>> result = query(path, gatewayPath, input, deadline);
+        return propagateCancellation(result
                 .thenApply((predicate::test))
                 .thenApply((allowed) -> {
                     logger.trace("Check: path='{}'; input={}; allowed={}", path, input, allowed);
                     return allowed;
-                });
+                }), result);
     }
 
     /**
@@ -277,14 +679,12 @@ public class StyraRun implements AutoCloseable {
     public CompletableFuture<Result<?>> getData(String path, Supplier<?> defaultSupplier) {
         requireNonNull(path, "path must not be null");
 
-        return completedFuture(apiClient.requestBuilder(GET)
-                .headers(getCommonHeaders()))
-                .thenCompose(request -> gatewaySelector.retry(request, "data", path))
+        return requestData(path)
                 .thenApply((response) -> {
                     if (response.isNotFoundStatus()) {
                         return new Result<>(defaultSupplier.get());
                     } else {
-                        return Result.fromResponseMap(handleResponse(response));
+                        return handleResultResponse(response);
                     }
                 })
                 .thenApply((result) -> {
@@ -293,6 +693,18 @@ public class StyraRun implements AutoCloseable {
                 });
     }
 
+    private CompletableFuture<ApiResponse> requestData(String path) {
+        Supplier<CompletableFuture<ApiResponse>> request = () -> gatewaySelector.hedge(
+                apiClient.requestBuilder(GET)
+                        .sharedHeaders(getCommonHeaders()),
+                "data", path);
+
+        if (dataCoalescer != null) {
+            return dataCoalescer.execute(QueryKey.normalizePath(path), request);
+        }
+        return request.get();
+    }
+
     /**
      * Upserts (creates or updates) the data at <code>path</code> with the provided <code>data</code>.
      *
@@ -305,8 +717,7 @@ public class StyraRun implements AutoCloseable {
         requireNonNull(data, "data must not be null");
 
         return completedFuture(apiClient.requestBuilder(PUT)
-                .headers(getCommonHeaders())
-                .jsonContentType())
+                .sharedHeaders(jsonHeaders))
                 .thenCombine(toJson(data), RequestBuilder::body)
                 .thenCompose(request -> gatewaySelector.retry(request, "data", path))
                 .thenApply(this::handleResponse)
@@ -327,7 +738,7 @@ public class StyraRun implements AutoCloseable {
         requireNonNull(path, "path must not be null");
 
         return completedFuture(apiClient.requestBuilder(DELETE)
-                .headers(getCommonHeaders()))
+                .sharedHeaders(getCommonHeaders()))
                 .thenCompose(request -> gatewaySelector.retry(request, "data", path))
                 .thenApply(this::handleResponse)
                 .thenApply(Result::empty)
@@ -342,18 +753,42 @@ public class StyraRun implements AutoCloseable {
     }
 
     /**
-     * Closes any resources this Styra Run client might have allocated.
+     * Closes any resources this Styra Run client might have allocated. Queries collected for automatic batching are
+     * sent, and their responses awaited, before the API client is closed.
      *
      * @throws Exception if this client could not be closed
      */
     @Override
     public void close() throws Exception {
+        if (queryBatcher != null) {
+            queryBatcher.close();
+        }
+        gatewaySelector.close();
         apiClient.close();
     }
 
-    private CompletableFuture<String> serializeBody(SerializableAsMap body) {
+    private CompletableFuture<byte[]> serializeInput(Input<?> input) {
+        if (input instanceof InputTemplate.TemplateInput) {
+            try {
+                return completedFuture(((InputTemplate.TemplateInput) input).toRequestBody());
+            } catch (IOException e) {
+                return failedFuture(new StyraRunException("Input could not be serialized into json", e));
+            }
+        }
+        return serializeBody(new InputContainer(input));
+    }
+
+    private CompletableFuture<byte[]> serializeBatchBody(BatchQuery query, BatchQueryEncoder encoder) {
+        try {
+            return completedFuture(encoder.encode(query.getItems()));
+        } catch (IOException e) {
+            return failedFuture(new StyraRunException("Input could not be serialized into json", e));
+        }
+    }
+
+    private CompletableFuture<byte[]> serializeBody(SerializableAsMap body) {
         try {
-            return completedFuture(getJson().from(Null.map(body,
+            return completedFuture(getJson().toBytes(Null.map(body,
                     SerializableAsMap::toMap,
                     Collections.emptyMap())));
         } catch (IOException e) {
@@ -361,25 +796,96 @@ public class StyraRun implements AutoCloseable {
         }
     }
 
+    private CompletableFuture<byte[]> serializeCanonicalBody(SerializableAsMap body) {
+        try {
+            return completedFuture(getJson().toBytes(DecisionCache.canonicalize(body)));
+        } catch (IOException e) {
+            return failedFuture(new StyraRunException("Input could not be serialized into json", e));
+        }
+    }
+
+    private Result<?> handleResultResponse(ApiResponse response) {
+        if (isLazilyParsed(response)) {
+            Result<?> result = LazyResults.result(response.getBodyBytes());
+            if (result != null) {
+                return result;
+            }
+        }
+        return Result.fromResponseMap(handleResponse(response));
+    }
+
+    /**
+     * Reads the decision of a {@link #DEFAULT_CHECK_PREDICATE default} check straight from the response bytes,
+     * when possible; without building a {@link Result}.
+     */
+    private boolean handleCheckResponse(ApiResponse response) {
+        if (isLazilyParsed(response)) {
+            int decision = DecisionScanner.scan(response.getBodyBytes());
+            if (decision != DecisionScanner.UNKNOWN) {
+                return decision == DecisionScanner.ALLOWED;
+            }
+        }
+        return DEFAULT_CHECK_PREDICATE.test(handleResultResponse(response));
+    }
+
+    private ListResult handleListResultResponse(ApiResponse response) {
+        if (isLazilyParsed(response)) {
+            ListResult result = LazyResults.listResult(response.getBodyBytes());
+            if (result != null) {
+                return result;
+            }
+        }
+        return ListResult.fromResponseMap(handleResponse(response));
+    }
+
+    /**
+     * Successful, uncompressed, responses are parsed on demand, if parsed by the {@link DefaultJson} implementation;
+     * others are parsed as a whole.
+     */
+    private boolean isLazilyParsed(ApiResponse response) {
+        return json.getClass() == DefaultJson.class && response.isSuccessful() && !response.isBodyEncoded();
+    }
+
     private Map<String, ?> handleResponse(ApiResponse response) {
+        if (response.isSuccessful() && response.isBodyEncoded()) {
+            return handleEncodedResponse(response);
+        }
         return json.toOptionalMap(handleRawResponse(response))
                 .orElse(Collections.emptyMap());
     }
 
-    private String handleRawResponse(ApiResponse response) {
+    private Map<String, ?> handleEncodedResponse(ApiResponse response) {
+        // Decompress straight into the JSON parser, without buffering the decompressed body
+        InputStream body;
+        try {
+            body = response.getBodyAsStream();
+        } catch (UncheckedIOException e) {
+            throw new CompletionException(new StyraRunException("Failed to decompress response body", e.getCause()));
+        }
+        try (InputStream in = body) {
+            Map<String, ?> map = json.toMap(in);
+            return map != null ? map : Collections.emptyMap();
+        } catch (ZipException | EOFException e) {
+            throw new CompletionException(new StyraRunException("Failed to decompress response body", e));
+        } catch (IOException e) {
+            return Collections.emptyMap();
+        }
+    }
+
+    private byte[] handleRawResponse(ApiResponse response) {
         if (!response.isSuccessful()) {
             throw new CompletionException(new StyraRunHttpException(
                     response.getStatusCode(), response.getBody(),
                     ApiError.fromApiResponse(response, json)));
         } else {
-            return response.getBody();
+            return response.getBodyBytes();
         }
     }
 
-    private CompletableFuture<String> toJson(Object value) {
-        CompletableFuture<String> future = new CompletableFuture<>();
+    private CompletableFuture<byte[]> toJson(Object value) {
+        CompletableFuture<byte[]> future = new CompletableFuture<>();
         try {
-            future.complete(json.from(value));
+            future.complete(json.toBytes(value));
         } catch (IOException e) {
             future.completeExceptionally(e);
         }
@@ -414,7 +920,7 @@ public class StyraRun implements AutoCloseable {
     }
 
     private Map<String, String> getCommonHeaders() {
-        return makeAuthorizationHeader(token);
+        return commonHeaders;
     }
 
     private static Map<String, String> makeAuthorizationHeader(String token) {
@@ -446,6 +952,10 @@ public class StyraRun implements AutoCloseable {
         public CompletableFuture<ListResult> execute() {
             return batchQuery(items, input);
         }
+
+        public List<CompletableFuture<Result<?>>> executeEach() {
+            return batchQueryEach(items, input);
+        }
     }
 
     public static final class Builder {
@@ -455,13 +965,30 @@ public class StyraRun implements AutoCloseable {
         private ApiClientFactory apiClientFactory;
         private GatewaySelectionStrategy.Factory gatewaySelectionStrategyFactory = new SimpleGatewaySelectionStrategy.Factory();
         private Json json;
+        private DecisionCache decisionCache;
+        private HedgingPolicy hedgingPolicy;
+        private RetryPolicy retryPolicy;
+        private CircuitBreakerPolicy circuitBreakerPolicy;
+        private ConcurrencyLimitPolicy concurrencyLimitPolicy;
+        private Duration gatewayRefreshInterval;
+        private boolean requestCoalescing = false;
+        private Duration autoBatchingLinger;
+        private int autoBatchingItemsMax;
         private int batchQueryItemsMax = 20;
+        private int queryConcurrencyMax = 0;
+        private int batchQueryConcurrencyMax = 0;
         private int maxRetryAttempts = 3;
         private SSLContext sslContext;
         private Duration connectionTimeout = Duration.ofSeconds(1);
         private Duration requestTimeout = Duration.ofSeconds(3);
         private String userAgent = String.format("Styra Run Java Client (%s)",
                 firstNonNull(getClass().getPackage().getImplementationVersion(), "DEVELOPMENT"));
+        private Executor requestExecutor;
+        private ApiClient.HttpVersion httpVersion;
+        private int maxConnectionsPerGateway = 0;
+        private Duration keepAliveTimeout;
+        private boolean acceptCompressedResponses = false;
+        private int requestCompressionThreshold = 0;
 
         public Builder(String envUri, String token) {
             this.envUri = orThrow(envUri, "url must not be null");
@@ -485,6 +1012,74 @@ public class StyraRun implements AutoCloseable {
             return this;
         }
 
+        /**
+         * Enables caching of policy decisions made through {@link StyraRun#query(String, Input)} and
+         * {@link StyraRun#check(String, Input)}. Disabled by default.
+         *
+         * @param decisionCache the {@link DecisionCache} to use
+         * @return this builder
+         * @see DecisionCache#builder()
+         */
+        public Builder decisionCache(DecisionCache decisionCache) {
+            this.decisionCache = orThrow(decisionCache, "decisionCache must not be null");
+            return this;
+        }
+
+        /**
+         * If set to <code>true</code>, concurrent identical calls to {@link StyraRun#query(String, Input)},
+         * {@link StyraRun#check(String, Input)} and {@link StyraRun#getData(String)} share a single in-flight request
+         * to the Styra Run API. Disabled by default.
+         * <p>
+         * When {@link #autoBatching(Duration) automatic batching} is enabled, queries are batched rather than coalesced.
+         *
+         * @param enabled whether identical in-flight requests should be coalesced
+         * @return this builder
+         */
+        public Builder requestCoalescing(boolean enabled) {
+            this.requestCoalescing = enabled;
+            return this;
+        }
+
+        /**
+         * Enables automatic batching, where single calls to {@link StyraRun#query(String, Input)} and
+         * {@link StyraRun#check(String, Input)} are collected and sent together as one batch query.
+         * A batch is sent once {@link #batchQueryItemsMax(int)} queries have been collected, or the first collected
+         * query has waited for <code>linger</code>; whichever happens first.
+         * Disabled by default.
+         *
+         * @param linger the maximum time a query waits for other queries to be batched with
+         * @return this builder
+         * @see #autoBatching(Duration, int)
+         */
+        public Builder autoBatching(Duration linger) {
+            return autoBatching(linger, 0);
+        }
+
+        /**
+         * Enables automatic batching, where single calls to {@link StyraRun#query(String, Input)} and
+         * {@link StyraRun#check(String, Input)} are collected and sent together as one batch query.
+         * A batch is sent once <code>maxItems</code> queries have been collected, or the first collected
+         * query has waited for <code>linger</code>; whichever happens first.
+         * <code>maxItems</code> is capped by {@link #batchQueryItemsMax(int)}.
+         * Disabled by default.
+         *
+         * @param linger the maximum time a query waits for other queries to be batched with
+         * @param maxItems the number of collected queries that triggers sending a batch; <code>0</code> means no limit
+         * @return this builder
+         */
+        public Builder autoBatching(Duration linger, int maxItems) {
+            orThrow(linger, "linger must not be null");
+            if (linger.isNegative() || linger.isZero()) {
+                throw new IllegalArgumentException("linger must be positive");
+            }
+            if (maxItems < 0) {
+                throw new IllegalArgumentException("maxItems must not be negative");
+            }
+            this.autoBatchingLinger = linger;
+            this.autoBatchingItemsMax = maxItems;
+            return this;
+        }
+
         public Builder batchQueryItemsMax(int max) {
             if (max < 0) {
                 throw new IllegalArgumentException("max must not be negative");
@@ -493,6 +1088,42 @@ public class StyraRun implements AutoCloseable {
             return this;
         }
 
+        /**
+         * Sets the maximum number of concurrent in-flight query requests to the Styra Run API, across single queries
+         * and the chunks of batch queries. Requests exceeding the limit are queued, and dispatched fairly:
+         * chunks of concurrent batch queries, and single queries, take turns, so that one large batch query can't
+         * hold up other queries. <code>0</code> means no limit. Defaults to <code>0</code>.
+         *
+         * @param max the maximum number of concurrent in-flight query requests
+         * @return this builder
+         * @see #batchQueryConcurrencyMax(int)
+         */
+        public Builder queryConcurrencyMax(int max) {
+            if (max < 0) {
+                throw new IllegalArgumentException("max must not be negative");
+            }
+            this.queryConcurrencyMax = max;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of concurrent in-flight requests for a single call to
+         * {@link StyraRun#batchQuery(List, Input)}, where a batch query with more than
+         * {@link #batchQueryItemsMax(int)} items is split into multiple requests. <code>0</code> means no limit.
+         * Defaults to <code>0</code>.
+         *
+         * @param max the maximum number of concurrent in-flight requests per batch query
+         * @return this builder
+         * @see #queryConcurrencyMax(int)
+         */
+        public Builder batchQueryConcurrencyMax(int max) {
+            if (max < 0) {
+                throw new IllegalArgumentException("max must not be negative");
+            }
+            this.batchQueryConcurrencyMax = max;
+            return this;
+        }
+
         public Builder maxRetryAttempts(int max) {
             if (max <= 0) {
                 throw new IllegalArgumentException("max must not be zero or negative");
@@ -501,6 +1132,82 @@ public class StyraRun implements AutoCloseable {
             return this;
         }
 
+        /**
+         * Sets the {@link RetryPolicy} for delaying retries with an exponential backoff, honoring
+         * <code>Retry-After</code> response headers, and budgeting retries to a percentage of successful requests.
+         * The retry budget is tracked per <code>StyraRun</code> instance, and isn't charged for failing over to another
+         * gateway. Defaults to <code>null</code>, where failed requests are retried immediately on another gateway,
+         * up to the maximum number of retry attempts.
+         *
+         * @param retryPolicy the {@link RetryPolicy} to apply; or <code>null</code>
+         * @return this builder
+         * @see RetryPolicy#builder()
+         */
+        public Builder retryPolicy(RetryPolicy retryPolicy) {
+            this.retryPolicy = retryPolicy;
+            return this;
+        }
+
+        /**
+         * Enables hedging of idempotent requests; queries, checks, batch queries and data reads.
+         * If a gateway hasn't responded within the delay of <code>hedgingPolicy</code>, the same request is also sent
+         * to another gateway, and the first response is used. Disabled by default.
+         *
+         * @param hedgingPolicy the {@link HedgingPolicy} to apply
+         * @return this builder
+         * @see HedgingPolicy#builder()
+         */
+        public Builder hedging(HedgingPolicy hedgingPolicy) {
+            this.hedgingPolicy = orThrow(hedgingPolicy, "hedgingPolicy must not be null");
+            return this;
+        }
+
+        /**
+         * Enables tracking of gateway health, where gateways that fail consecutive requests, or respond much slower
+         * than other gateways, are temporarily avoided. Disabled by default.
+         *
+         * @param circuitBreakerPolicy the {@link CircuitBreakerPolicy} to apply
+         * @return this builder
+         * @see CircuitBreakerPolicy#builder()
+         */
+        public Builder circuitBreaker(CircuitBreakerPolicy circuitBreakerPolicy) {
+            this.circuitBreakerPolicy = orThrow(circuitBreakerPolicy, "circuitBreakerPolicy must not be null");
+            return this;
+        }
+
+        /**
+         * Enables adaptive limiting of the number of concurrent requests to the Styra Run API. Requests beyond the
+         * limit wait in a bounded queue; when the queue is full, requests fail fast with an
+         * {@link com.styra.run.exceptions.OverloadedException}. Disabled by default.
+         *
+         * @param concurrencyLimitPolicy the {@link ConcurrencyLimitPolicy} to apply
+         * @return this builder
+         * @see ConcurrencyLimitPolicy#builder()
+         */
+        public Builder concurrencyLimit(ConcurrencyLimitPolicy concurrencyLimitPolicy) {
+            this.concurrencyLimitPolicy = orThrow(concurrencyLimitPolicy, "concurrencyLimitPolicy must not be null");
+            return this;
+        }
+
+        /**
+         * Enables periodic re-fetching of gateways from the project environment, at roughly the given
+         * <code>interval</code>; with some random jitter applied. Only applies when the client is built with a
+         * project environment URL. Disabled by default.
+         * <p>
+         * Regardless of this setting, gateways are re-fetched when they appear to be unavailable.
+         *
+         * @param interval the gateway refresh interval
+         * @return this builder
+         */
+        public Builder gatewayRefreshInterval(Duration interval) {
+            orThrow(interval, "interval must not be null");
+            if (interval.isNegative() || interval.isZero()) {
+                throw new IllegalArgumentException("interval must be positive");
+            }
+            this.gatewayRefreshInterval = interval;
+            return this;
+        }
+
         public Builder gatewaySelectionStrategy(GatewaySelectionStrategy.Factory factory) {
             this.gatewaySelectionStrategyFactory = orThrow(factory, "factory must not be null");
             return this;
@@ -526,6 +1233,95 @@ public class StyraRun implements AutoCloseable {
             return this;
         }
 
+        /**
+         * Sets the {@link Executor} on which the API client runs requests, and handles their responses; see
+         * {@link ApiClient.Config#getExecutor()}. The {@link BlockingApiClient} otherwise blocks the calling thread.
+         * <p>
+         * {@link com.styra.run.utils.RequestExecutors#virtualThreadPerTask(int)} gives an executor that runs every
+         * request on its own virtual thread, when supported by the JVM. The executor is not shut down when the
+         * client is closed.
+         *
+         * @param executor the request executor
+         * @return this builder
+         */
+        public Builder requestExecutor(Executor executor) {
+            this.requestExecutor = orThrow(executor, "executor must not be null");
+            return this;
+        }
+
+        /**
+         * Sets the preferred HTTP version for requests to the Styra Run API. With
+         * {@link ApiClient.HttpVersion#HTTP_2}, concurrent requests share a single connection to gateways that support
+         * it. Defaults to the API client's own default; which, for the Java 11 client, is HTTP/2.
+         *
+         * @param version the HTTP version
+         * @return this builder
+         */
+        public Builder httpVersion(ApiClient.HttpVersion version) {
+            this.httpVersion = orThrow(version, "version must not be null");
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of connections the API client opens to each gateway; see
+         * {@link ApiClient.Config#getMaxConnectionsPerGateway()}. With {@link ApiClient.HttpVersion#HTTP_2}, where
+         * requests are multiplexed over a single connection, this limits concurrent requests (streams) instead.
+         * Defaults to the API client's own default.
+         *
+         * @param max the maximum number of connections
+         * @return this builder
+         */
+        public Builder maxConnectionsPerGateway(int max) {
+            if (max <= 0) {
+                throw new IllegalArgumentException("max must be positive");
+            }
+            this.maxConnectionsPerGateway = max;
+            return this;
+        }
+
+        /**
+         * Sets how long the API client keeps idle connections open for reuse; see
+         * {@link ApiClient.Config#getKeepAliveTimeout()}. Defaults to the API client's own default.
+         *
+         * @param timeout the keep-alive timeout
+         * @return this builder
+         */
+        public Builder keepAliveTimeout(Duration timeout) {
+            orThrow(timeout, "timeout must not be null");
+            if (timeout.isNegative()) {
+                throw new IllegalArgumentException("timeout must not be negative");
+            }
+            this.keepAliveTimeout = timeout;
+            return this;
+        }
+
+        /**
+         * Sets whether to ask the Styra Run API for <code>gzip</code> or <code>deflate</code> compressed response
+         * bodies. Compressed bodies are decompressed as they're parsed. Defaults to <code>false</code>.
+         *
+         * @param enabled whether compressed responses are accepted
+         * @return this builder
+         */
+        public Builder acceptCompressedResponses(boolean enabled) {
+            this.acceptCompressedResponses = enabled;
+            return this;
+        }
+
+        /**
+         * Enables <code>gzip</code> compression of request bodies of at least <code>minBytes</code> bytes, such as large
+         * batch queries. Disabled by default.
+         *
+         * @param minBytes the minimum size, in bytes, of request bodies to compress
+         * @return this builder
+         */
+        public Builder compressRequests(int minBytes) {
+            if (minBytes <= 0) {
+                throw new IllegalArgumentException("minBytes must be positive");
+            }
+            this.requestCompressionThreshold = minBytes;
+            return this;
+        }
+
         // TODO: Throw StyraRunException
         public StyraRun build() {
             SSLContext sslContext;
@@ -538,20 +1334,35 @@ public class StyraRun implements AutoCloseable {
                     throw new IllegalStateException("Failed to get default SSL Context", e);
                 }
             }
-            ApiClient.Config clientConfig = new ApiClient.Config(sslContext, connectionTimeout, requestTimeout, userAgent);
-            ApiClient apiClient = new LoggingApiClient(apiClientFactory != null ?
+            ApiClient.Config clientConfig = new ApiClient.Config(sslContext, connectionTimeout, requestTimeout, userAgent,
+                    requestExecutor, httpVersion, maxConnectionsPerGateway, keepAliveTimeout);
+            ApiClient baseApiClient = apiClientFactory != null ?
                     apiClientFactory.create(clientConfig) :
-                    ApiClientLoader.load(clientConfig));
+                    ApiClientLoader.load(clientConfig);
+            if (acceptCompressedResponses || requestCompressionThreshold > 0) {
+                baseApiClient = new CompressionApiClient(baseApiClient, acceptCompressedResponses,
+                        requestCompressionThreshold);
+            }
+            ApiClient apiClient = new LoggingApiClient(baseApiClient);
 
             Json json = firstNonNull(
                     () -> this.json, DefaultJson::new);
 
+            GatewaySelector.Config gatewaySelectorConfig = GatewaySelector.Config.builder()
+                    .hedgingPolicy(hedgingPolicy)
+                    .retryPolicy(retryPolicy)
+                    .circuitBreakerPolicy(circuitBreakerPolicy)
+                    .concurrencyLimitPolicy(concurrencyLimitPolicy)
+                    .refreshInterval(gatewayRefreshInterval)
+                    .executor(requestExecutor)
+                    .build();
+
             GatewaySelector gatewaySelector;
             if (envUri != null) {
                 try {
                     Supplier<Map<String, String>> headerSupplier = () -> makeAuthorizationHeader(token);
                     gatewaySelector = new ApiGatewaySelector(gatewaySelectionStrategyFactory, maxRetryAttempts,
-                            apiClient, json, new URI(envUri), headerSupplier);
+                            gatewaySelectorConfig, apiClient, json, new URI(envUri), headerSupplier);
                 } catch (URISyntaxException e) {
                     throw new IllegalStateException(String.format("Malformed environment URI: %s", envUri), e);
                 }
@@ -564,13 +1375,25 @@ public class StyraRun implements AutoCloseable {
                         throw new IllegalStateException(String.format("Malformed gateway URI: %s", gateway), e);
                     }
                 }
-                gatewaySelector = new StaticGatewaySelector(gatewaySelectionStrategyFactory, maxRetryAttempts, list);
+                gatewaySelector = new StaticGatewaySelector(gatewaySelectionStrategyFactory, maxRetryAttempts,
+                        gatewaySelectorConfig, list);
             } else {
                 throw new IllegalStateException("Environment URI or gateway list must be set");
             }
 
             return new StyraRun(token, apiClient,
-                    json, gatewaySelector, batchQueryItemsMax);
+                    json, gatewaySelector, batchQueryItemsMax, decisionCache, requestCoalescing,
+                    autoBatchingLinger, effectiveAutoBatchingItemsMax(),
+                    queryConcurrencyMax, batchQueryConcurrencyMax, requestExecutor);
+        }
+
+        private int effectiveAutoBatchingItemsMax() {
+            if (autoBatchingItemsMax == 0) {
+                return batchQueryItemsMax;
+            } else if (batchQueryItemsMax == 0) {
+                return autoBatchingItemsMax;
+            }
+            return Math.min(autoBatchingItemsMax, batchQueryItemsMax);
         }
     }
 }
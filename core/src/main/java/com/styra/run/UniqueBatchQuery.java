@@ -0,0 +1,109 @@
+package com.styra.run;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The unique items of a batch query, together with a mapping back to the indices of the original items.
+ * <p>
+ * Items are considered equal if they have the same rule path and the same effective input value, where the effective
+ * input of an item without its own input is the global input.
+ * Items with an input equal to the global input are sent without input.
+ */
+final class UniqueBatchQuery {
+    private static final int NONE = -1;
+
+    private final BatchQuery query;
+    // Index of the first original item of each unique item
+    private final int[] first;
+    // Index of the next original item mapped to the same unique item, or NONE
+    private final int[] next;
+
+    private UniqueBatchQuery(BatchQuery query, int[] first, int[] next) {
+        this.query = query;
+        this.first = first;
+        this.next = next;
+    }
+
+    static UniqueBatchQuery of(List<BatchQuery.Item> items, Input<?> globalInput) {
+        Object globalValue = globalInput != null ? globalInput.getValue() : null;
+
+        Map<ItemKey, Integer> uniqueIndices = new HashMap<>();
+        List<BatchQuery.Item> uniqueItems = new ArrayList<>(items.size());
+        int[] first = new int[items.size()];
+        int[] last = new int[items.size()];
+        int[] next = new int[items.size()];
+        Arrays.fill(next, NONE);
+
+        for (int i = 0; i < items.size(); i++) {
+            BatchQuery.Item item = items.get(i);
+            Object value = item.getInput() != null ? item.getInput().getValue() : null;
+            boolean ownInput = value != null && !value.equals(globalValue);
+
+            Integer uniqueIndex = uniqueIndices.putIfAbsent(
+                    new ItemKey(QueryKey.normalizePath(item.getPath()), ownInput ? value : globalValue),
+                    uniqueItems.size());
+            if (uniqueIndex == null) {
+                first[uniqueItems.size()] = i;
+                last[uniqueItems.size()] = i;
+                uniqueItems.add(ownInput || item.getInput() == null ? item : new BatchQuery.Item(item.getPath()));
+            } else {
+                next[last[uniqueIndex]] = i;
+                last[uniqueIndex] = i;
+            }
+        }
+
+        return new UniqueBatchQuery(new BatchQuery(uniqueItems, globalInput), first, next);
+    }
+
+    BatchQuery getQuery() {
+        return query;
+    }
+
+    int size() {
+        return query.getItems().size();
+    }
+
+    /**
+     * Calls <code>consumer</code> with the index of every original item mapped to the unique item at
+     * <code>uniqueIndex</code>.
+     */
+    void forEachOriginal(int uniqueIndex, IndexConsumer consumer) {
+        for (int i = first[uniqueIndex]; i != NONE; i = next[i]) {
+            consumer.accept(i);
+        }
+    }
+
+    interface IndexConsumer {
+        void accept(int index);
+    }
+
+    private static final class ItemKey {
+        private final String path;
+        private final Object input;
+        private final int hash;
+
+        private ItemKey(String path, Object input) {
+            this.path = path;
+            this.input = input;
+            this.hash = Objects.hash(path, input);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            ItemKey itemKey = (ItemKey) o;
+            return hash == itemKey.hash && path.equals(itemKey.path) && Objects.equals(input, itemKey.input);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
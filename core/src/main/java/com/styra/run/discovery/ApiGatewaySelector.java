@@ -16,10 +16,14 @@ import java.net.URISyntaxException;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import static com.styra.run.ApiClient.Method.GET;
+import static com.styra.run.utils.Futures.async;
+import static com.styra.run.utils.Futures.failedFuture;
 import static com.styra.run.utils.Lambdas.CheckedValue.tryWrap;
 import static com.styra.run.utils.Url.appendPath;
 
@@ -37,22 +41,39 @@ public final class ApiGatewaySelector extends GatewaySelector {
                               Json json,
                               URI envUri,
                               Supplier<Map<String, String>> headerSupplier) {
-        super(discoveryStrategyFactory, maxAttempts);
+        this(discoveryStrategyFactory, maxAttempts, Config.DEFAULT, apiClient, json, envUri, headerSupplier);
+    }
+
+    /**
+     * @param discoveryStrategyFactory the factory for the {@link GatewaySelectionStrategy} used to pick gateways
+     * @param maxAttempts the maximum number of attempts per request
+     * @param config the {@link Config} of optional request policies
+     * @param apiClient the {@link ApiClient} used for fetching gateways
+     * @param json the {@link Json} used for parsing fetched gateways
+     * @param envUri the {@link URI} of the Styra Run project environment
+     * @param headerSupplier supplier of the headers to send when fetching gateways
+     */
+    public ApiGatewaySelector(GatewaySelectionStrategy.Factory discoveryStrategyFactory,
+                              int maxAttempts,
+                              Config config,
+                              ApiClient apiClient,
+                              Json json,
+                              URI envUri,
+                              Supplier<Map<String, String>> headerSupplier) {
+        super(discoveryStrategyFactory, maxAttempts, config);
         this.apiClient = apiClient;
         this.json = json;
         this.envUri = envUri;
         this.headerSupplier = headerSupplier;
     }
 
-    // TODO: Return Future?
+    @Override
     protected List<Gateway> fetchGateways() throws StyraRunException {
-        ApiResponse response;
         try {
-            response = apiClient.requestBuilder(GET)
-                    .uri(appendPath(envUri, "gateways"))
-                    .headers(headerSupplier.get())
-                    .request()
-                    .get();
+            return fetchGatewaysAsync().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StyraRunException("Interrupted while fetching gateways", e);
         } catch (Exception e) {
             Throwable cause = Futures.unwrapException(e);
             if (cause instanceof StyraRunException) {
@@ -60,13 +81,43 @@ public final class ApiGatewaySelector extends GatewaySelector {
             }
             throw new StyraRunException("Unexpected error", cause);
         }
+    }
+
+    @Override
+    protected CompletableFuture<List<Gateway>> fetchGatewaysAsync() {
+        CompletableFuture<ApiResponse> request;
+        try {
+            request = apiClient.requestBuilder(GET)
+                    .uri(appendPath(envUri, "gateways"))
+                    .headers(headerSupplier.get())
+                    .request();
+        } catch (Exception e) {
+            request = failedFuture(e);
+        }
+
+        return request
+                .exceptionally((e) -> {
+                    Throwable cause = Futures.unwrapException(e);
+                    if (cause instanceof StyraRunException) {
+                        throw new CompletionException(cause);
+                    }
+                    throw new CompletionException(new StyraRunException("Unexpected error", cause));
+                })
+                .thenApply(async(this::toGateways));
+    }
+
+    @Override
+    protected boolean isRefreshable() {
+        return true;
+    }
 
+    private List<Gateway> toGateways(ApiResponse response) throws StyraRunException {
         if (!response.isSuccessful()) {
             throw new StyraRunHttpException(response.getStatusCode(), response.getBody(),
                     ApiError.fromApiResponse(response, json));
         }
 
-        Result<?> result = Result.fromResponseMap(json.toOptionalMap(response.getBody())
+        Result<?> result = Result.fromResponseMap(json.toOptionalMap(response.getBodyBytes())
                 .orElseThrow(() -> new StyraRunException("Invalid response JSON")));
 
         return result.getListOf(Map.class)
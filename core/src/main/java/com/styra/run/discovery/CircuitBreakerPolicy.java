@@ -0,0 +1,153 @@
+package com.styra.run.discovery;
+
+import java.time.Duration;
+
+import static com.styra.run.utils.Null.orThrow;
+
+/**
+ * A policy for tracking the health of gateways, and temporarily avoiding unhealthy ones.
+ * <p>
+ * A gateway's circuit is opened after a number of consecutive failed requests, and no requests are made to it until
+ * the circuit has been open for a while. Then, a single probe request is let through; if it succeeds, the circuit is
+ * closed, otherwise it's opened again.
+ * <p>
+ * Optionally, gateways with a moving average latency much higher than the median of all gateways are ejected for a
+ * while, as outliers.
+ * <p>
+ * If all gateways are unavailable, requests are still made; failing open.
+ */
+public final class CircuitBreakerPolicy {
+    private final int failureThreshold;
+    private final long openNanos;
+    private final double outlierFactor;
+    private final long ejectionNanos;
+    private final int maxEjectionPercent;
+
+    private CircuitBreakerPolicy(int failureThreshold,
+                                 Duration openDuration,
+                                 double outlierFactor,
+                                 Duration ejectionDuration,
+                                 int maxEjectionPercent) {
+        this.failureThreshold = failureThreshold;
+        this.openNanos = openDuration.toNanos();
+        this.outlierFactor = outlierFactor;
+        this.ejectionNanos = ejectionDuration.toNanos();
+        this.maxEjectionPercent = maxEjectionPercent;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    int getFailureThreshold() {
+        return failureThreshold;
+    }
+
+    long getOpenNanos() {
+        return openNanos;
+    }
+
+    double getOutlierFactor() {
+        return outlierFactor;
+    }
+
+    long getEjectionNanos() {
+        return ejectionNanos;
+    }
+
+    int getMaxEjectionPercent() {
+        return maxEjectionPercent;
+    }
+
+    public static final class Builder {
+        private int failureThreshold = 5;
+        private Duration openDuration = Duration.ofSeconds(10);
+        private double outlierFactor = 0;
+        private Duration ejectionDuration = Duration.ofSeconds(30);
+        private int maxEjectionPercent = 50;
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the number of consecutive failed requests after which a gateway's circuit is opened.
+         * Defaults to <code>5</code>.
+         *
+         * @param threshold the number of consecutive failures
+         * @return this builder
+         */
+        public Builder failureThreshold(int threshold) {
+            if (threshold <= 0) {
+                throw new IllegalArgumentException("threshold must be positive");
+            }
+            this.failureThreshold = threshold;
+            return this;
+        }
+
+        /**
+         * Sets the time a gateway's circuit stays open before a probe request is let through.
+         * Defaults to 10 seconds.
+         *
+         * @param duration the open duration
+         * @return this builder
+         */
+        public Builder openDuration(Duration duration) {
+            this.openDuration = requireNotNegative(duration);
+            return this;
+        }
+
+        /**
+         * Enables ejection of latency outliers; gateways with a moving average latency more than <code>factor</code>
+         * times the median of all gateways. <code>0</code> disables outlier ejection. Defaults to <code>0</code>.
+         *
+         * @param factor the outlier factor; <code>0</code>, or greater than <code>1</code>
+         * @return this builder
+         */
+        public Builder outlierFactor(double factor) {
+            if (factor != 0 && factor <= 1) {
+                throw new IllegalArgumentException("factor must be 0, or greater than 1");
+            }
+            this.outlierFactor = factor;
+            return this;
+        }
+
+        /**
+         * Sets the time an outlier gateway is ejected for. Defaults to 30 seconds.
+         *
+         * @param duration the ejection duration
+         * @return this builder
+         */
+        public Builder ejectionDuration(Duration duration) {
+            this.ejectionDuration = requireNotNegative(duration);
+            return this;
+        }
+
+        /**
+         * Sets the maximum percentage of gateways that may be ejected as outliers at the same time.
+         * Defaults to <code>50</code>.
+         *
+         * @param percent the maximum ejection percentage
+         * @return this builder
+         */
+        public Builder maxEjectionPercent(int percent) {
+            if (percent < 0 || percent > 100) {
+                throw new IllegalArgumentException("percent must be between 0 and 100");
+            }
+            this.maxEjectionPercent = percent;
+            return this;
+        }
+
+        public CircuitBreakerPolicy build() {
+            return new CircuitBreakerPolicy(failureThreshold, openDuration, outlierFactor, ejectionDuration,
+                    maxEjectionPercent);
+        }
+
+        private static Duration requireNotNegative(Duration duration) {
+            orThrow(duration, "duration must not be null");
+            if (duration.isNegative()) {
+                throw new IllegalArgumentException("duration must not be negative");
+            }
+            return duration;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.styra.run.discovery;
+
+import java.time.Duration;
+
+import static com.styra.run.utils.Null.orThrow;
+
+/**
+ * A policy for limiting the number of concurrent requests to the Styra Run API, adapting the limit to how the gateways
+ * cope with the load.
+ * <p>
+ * The limit is adjusted by additive-increase/multiplicative-decrease (AIMD): it grows slowly while requests succeed
+ * within the latency threshold, and is cut back when requests fail, are throttled, or are slower than the threshold.
+ * <p>
+ * Requests beyond the limit wait in a bounded queue; when the queue is full, requests fail fast with an
+ * {@link com.styra.run.exceptions.OverloadedException}, instead of piling up.
+ */
+public final class ConcurrencyLimitPolicy {
+    private final int initialLimit;
+    private final int minLimit;
+    private final int maxLimit;
+    private final int maxQueueSize;
+    private final double backoffRatio;
+    private final long latencyThresholdNanos;
+
+    private ConcurrencyLimitPolicy(int initialLimit,
+                                   int minLimit,
+                                   int maxLimit,
+                                   int maxQueueSize,
+                                   double backoffRatio,
+                                   Duration latencyThreshold) {
+        this.initialLimit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.maxQueueSize = maxQueueSize;
+        this.backoffRatio = backoffRatio;
+        this.latencyThresholdNanos = latencyThreshold.toNanos();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    int getInitialLimit() {
+        return initialLimit;
+    }
+
+    int getMinLimit() {
+        return minLimit;
+    }
+
+    int getMaxLimit() {
+        return maxLimit;
+    }
+
+    int getMaxQueueSize() {
+        return maxQueueSize;
+    }
+
+    double getBackoffRatio() {
+        return backoffRatio;
+    }
+
+    long getLatencyThresholdNanos() {
+        return latencyThresholdNanos;
+    }
+
+    public static final class Builder {
+        private int initialLimit = 20;
+        private int minLimit = 1;
+        private int maxLimit = 200;
+        private int maxQueueSize = 100;
+        private double backoffRatio = 0.9;
+        private Duration latencyThreshold = Duration.ofSeconds(1);
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the concurrency limit before it has been adapted. Defaults to <code>20</code>.
+         *
+         * @param limit the initial limit
+         * @return this builder
+         */
+        public Builder initialLimit(int limit) {
+            this.initialLimit = requirePositive(limit);
+            return this;
+        }
+
+        /**
+         * Sets the lowest the concurrency limit can be cut back to. Defaults to <code>1</code>.
+         *
+         * @param limit the minimum limit
+         * @return this builder
+         */
+        public Builder minLimit(int limit) {
+            this.minLimit = requirePositive(limit);
+            return this;
+        }
+
+        /**
+         * Sets the highest the concurrency limit can grow to. Defaults to <code>200</code>.
+         *
+         * @param limit the maximum limit
+         * @return this builder
+         */
+        public Builder maxLimit(int limit) {
+            this.maxLimit = requirePositive(limit);
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of requests waiting for the concurrency limit; <code>0</code> means requests beyond
+         * the limit are rejected right away. Defaults to <code>100</code>.
+         *
+         * @param size the maximum queue size
+         * @return this builder
+         */
+        public Builder maxQueueSize(int size) {
+            if (size < 0) {
+                throw new IllegalArgumentException("size must not be negative");
+            }
+            this.maxQueueSize = size;
+            return this;
+        }
+
+        /**
+         * Sets the factor the concurrency limit is multiplied by when a request fails, or is too slow.
+         * Defaults to <code>0.9</code>.
+         *
+         * @param ratio the backoff ratio, between <code>0</code> and <code>1</code> (exclusive)
+         * @return this builder
+         */
+        public Builder backoffRatio(double ratio) {
+            if (!(ratio > 0 && ratio < 1)) {
+                throw new IllegalArgumentException("ratio must be greater than 0, and less than 1");
+            }
+            this.backoffRatio = ratio;
+            return this;
+        }
+
+        /**
+         * Sets the latency above which a request is taken as a sign of overload, and the concurrency limit is cut
+         * back. Defaults to 1 second.
+         *
+         * @param threshold the latency threshold
+         * @return this builder
+         */
+        public Builder latencyThreshold(Duration threshold) {
+            orThrow(threshold, "threshold must not be null");
+            if (threshold.isNegative() || threshold.isZero()) {
+                throw new IllegalArgumentException("threshold must be positive");
+            }
+            this.latencyThreshold = threshold;
+            return this;
+        }
+
+        public ConcurrencyLimitPolicy build() {
+            if (minLimit > maxLimit) {
+                throw new IllegalArgumentException("minLimit must not be greater than maxLimit");
+            }
+            int initial = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+            return new ConcurrencyLimitPolicy(initial, minLimit, maxLimit, maxQueueSize, backoffRatio,
+                    latencyThreshold);
+        }
+
+        private static int requirePositive(int limit) {
+            if (limit <= 0) {
+                throw new IllegalArgumentException("limit must be positive");
+            }
+            return limit;
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.styra.run.discovery;
+
+import com.styra.run.ApiResponse;
+import com.styra.run.exceptions.OverloadedException;
+import com.styra.run.utils.Futures;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static com.styra.run.utils.Futures.failedFuture;
+import static com.styra.run.utils.Futures.propagateCancellation;
+
+/**
+ * Admission control of calls to the Styra Run API, according to a {@link ConcurrencyLimitPolicy}.
+ */
+final class ConcurrencyLimiter {
+    private static final Logger logger = LoggerFactory.getLogger(ConcurrencyLimiter.class);
+
+    private final ConcurrencyLimitPolicy policy;
+
+    private final Object lock = new Object();
+    private final Deque<Waiter> queue = new ArrayDeque<>();
+    private double limit;
+    private int inFlight = 0;
+
+    private final AtomicInteger dispatchRequests = new AtomicInteger();
+
+    ConcurrencyLimiter(ConcurrencyLimitPolicy policy) {
+        this.policy = policy;
+        this.limit = policy.getInitialLimit();
+    }
+
+    /**
+     * Makes <code>call</code> if the concurrency limit allows; otherwise queues it, or rejects it if the queue is full.
+     *
+     * @return a {@link CompletableFuture} completed like the future returned by <code>call</code>, or exceptionally
+     * with an {@link OverloadedException} if the call was rejected
+     */
+    CompletableFuture<ApiResponse> execute(Supplier<CompletableFuture<ApiResponse>> call) {
+        Waiter waiter = null;
+        synchronized (lock) {
+            if (queue.isEmpty() && inFlight < (int) limit) {
+                inFlight++;
+            } else if (hasQueueCapacity()) {
+                waiter = new Waiter(call);
+                queue.addLast(waiter);
+            } else {
+                logger.debug("Concurrency limit ({}) reached, and queue full; rejecting request", (int) limit);
+                return failedFuture(new OverloadedException(String.format(
+                        "Too many concurrent requests (limit: %d); request rejected", (int) limit)));
+            }
+        }
+
+        if (waiter != null) {
+            return waiter.result;
+        }
+        return start(call);
+    }
+
+    /**
+     * Must be called while holding <code>lock</code>.
+     */
+    private boolean hasQueueCapacity() {
+        if (queue.size() < policy.getMaxQueueSize()) {
+            return true;
+        }
+        // Waiters cancelled, or past their deadline, are otherwise only polled off the queue once calls complete
+        queue.removeIf((waiter) -> waiter.result.isDone());
+        return queue.size() < policy.getMaxQueueSize();
+    }
+
+    int getLimit() {
+        synchronized (lock) {
+            return (int) limit;
+        }
+    }
+
+    int getInFlight() {
+        synchronized (lock) {
+            return inFlight;
+        }
+    }
+
+    private CompletableFuture<ApiResponse> start(Supplier<CompletableFuture<ApiResponse>> call) {
+        long start = System.nanoTime();
+        CompletableFuture<ApiResponse> response;
+        try {
+            response = call.get();
+        } catch (RuntimeException e) {
+            onComplete(System.nanoTime() - start, null, e);
+            throw e;
+        }
+        response.whenComplete((r, e) -> onComplete(System.nanoTime() - start, r, e));
+        return response;
+    }
+
+    private void onComplete(long latencyNanos, ApiResponse response, Throwable e) {
+        Throwable unwrapped = e != null ? Futures.unwrapException(e) : null;
+        synchronized (lock) {
+            // A cancelled call says nothing about the load on the gateways
+            if (!(unwrapped instanceof CancellationException)) {
+                if (isOverloaded(latencyNanos, response, unwrapped)) {
+                    limit = Math.max(policy.getMinLimit(), limit * policy.getBackoffRatio());
+                } else if (inFlight * 2 >= limit) {
+                    // Only grow the limit while it's actually being used
+                    limit = Math.min(policy.getMaxLimit(), limit + 1 / limit);
+                }
+            }
+            inFlight--;
+        }
+        dispatch();
+    }
+
+    private boolean isOverloaded(long latencyNanos, ApiResponse response, Throwable e) {
+        if (latencyNanos > policy.getLatencyThresholdNanos()) {
+            return true;
+        }
+        if (e != null) {
+            return true;
+        }
+        int status = response.getStatusCode();
+        return status == 429 || status == 502 || status == 503 || status == 504;
+    }
+
+    private void dispatch() {
+        // Only one thread dispatches at a time; concurrent, or re-entrant, calls make the dispatching thread do another pass.
+        if (dispatchRequests.getAndIncrement() != 0) {
+            return;
+        }
+
+        int missed = 1;
+        do {
+            drain();
+            missed = dispatchRequests.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private void drain() {
+        while (true) {
+            Waiter waiter;
+            synchronized (lock) {
+                if (inFlight >= (int) limit) {
+                    return;
+                }
+                waiter = queue.pollFirst();
+                while (waiter != null && waiter.result.isDone()) {
+                    // Cancelled, or past its deadline, while waiting
+                    waiter = queue.pollFirst();
+                }
+                if (waiter == null) {
+                    return;
+                }
+                inFlight++;
+            }
+            waiter.run();
+        }
+    }
+
+    private final class Waiter {
+        private final Supplier<CompletableFuture<ApiResponse>> call;
+        private final CompletableFuture<ApiResponse> result = new CompletableFuture<>();
+
+        private Waiter(Supplier<CompletableFuture<ApiResponse>> call) {
+            this.call = call;
+        }
+
+        private void run() {
+            CompletableFuture<ApiResponse> response;
+            try {
+                response = start(call);
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+                return;
+            }
+
+            propagateCancellation(result, response);
+            response.whenComplete((value, e) -> {
+                if (e != null) {
+                    result.completeExceptionally(Futures.unwrapException(e));
+                } else {
+                    result.complete(value);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package com.styra.run.discovery;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free tracking of the health of gateways, according to a {@link CircuitBreakerPolicy}.
+ */
+final class GatewayHealth {
+    private static final Logger logger = LoggerFactory.getLogger(GatewayHealth.class);
+
+    private static final double SMOOTHING = 0.3;
+    private static final int MIN_OUTLIER_SAMPLES = 10;
+    private static final int MIN_OUTLIER_GATEWAYS = 3;
+    // The median latency is recomputed every this many successes, rather than on every success
+    private static final int SAMPLES_PER_UPDATE = 32;
+    private static final long NO_MEDIAN = Double.doubleToRawLongBits(0);
+
+    private final CircuitBreakerPolicy policy;
+    private final ConcurrentMap<Gateway, State> states = new ConcurrentHashMap<>();
+    private final AtomicLong successes = new AtomicLong();
+    private final AtomicLong medianLatency = new AtomicLong(NO_MEDIAN);
+
+    GatewayHealth(CircuitBreakerPolicy policy) {
+        this.policy = policy;
+    }
+
+    /**
+     * Returns whether a request may be made to <code>gateway</code>. If the gateway's circuit is half-open, only the
+     * first caller is allowed to make a probe request; which must be reported as such when it completes, to release
+     * the probe.
+     */
+    Permit tryAcquire(Gateway gateway) {
+        return stateOf(gateway).tryAcquire(System.nanoTime());
+    }
+
+    boolean isAvailable(Gateway gateway) {
+        return stateOf(gateway).isAvailable(System.nanoTime());
+    }
+
+    void onSuccess(Gateway gateway, long latencyNanos) {
+        State state = stateOf(gateway);
+        state.onSuccess(latencyNanos);
+        if (policy.getOutlierFactor() > 0) {
+            if (successes.incrementAndGet() % SAMPLES_PER_UPDATE == 0) {
+                updateMedianLatency();
+            }
+            ejectIfOutlier(gateway, state);
+        }
+    }
+
+    /**
+     * @param probe <code>true</code> if the failed request was the probe request of a half-open circuit
+     */
+    void onFailure(Gateway gateway, boolean probe) {
+        State state = stateOf(gateway);
+        if (state.onFailure(System.nanoTime() + policy.getOpenNanos(), policy.getFailureThreshold(), probe)) {
+            logger.debug("Opened circuit for {}", gateway);
+        }
+    }
+
+    /**
+     * @param probe <code>true</code> if the cancelled request was the probe request of a half-open circuit
+     */
+    void onCancelled(Gateway gateway, boolean probe) {
+        // Other requests, such as ones made before the circuit opened, mustn't release a probe still in flight
+        if (probe) {
+            stateOf(gateway).probing.set(false);
+        }
+    }
+
+    /**
+     * Forgets the state of gateways not in <code>gateways</code>.
+     */
+    void retainAll(List<Gateway> gateways) {
+        states.keySet().retainAll(gateways);
+        if (policy.getOutlierFactor() > 0) {
+            updateMedianLatency();
+        }
+    }
+
+    private State stateOf(Gateway gateway) {
+        State state = states.get(gateway);
+        return state != null ? state : states.computeIfAbsent(gateway, (g) -> new State());
+    }
+
+    private void updateMedianLatency() {
+        double[] latencies = states.values().stream()
+                .filter((s) -> s.samples.get() >= MIN_OUTLIER_SAMPLES)
+                .mapToDouble(State::getLatency)
+                .toArray();
+        if (latencies.length < MIN_OUTLIER_GATEWAYS) {
+            medianLatency.set(NO_MEDIAN);
+            return;
+        }
+        Arrays.sort(latencies);
+        medianLatency.set(Double.doubleToRawLongBits(latencies[latencies.length / 2]));
+    }
+
+    private void ejectIfOutlier(Gateway gateway, State state) {
+        if (state.samples.get() < MIN_OUTLIER_SAMPLES) {
+            return;
+        }
+
+        long median = medianLatency.get();
+        if (median == NO_MEDIAN
+                || state.getLatency() <= Double.longBitsToDouble(median) * policy.getOutlierFactor()) {
+            return;
+        }
+
+        Collection<State> all = states.values();
+        long now = System.nanoTime();
+        long ejected = all.stream().filter((s) -> s.isEjected(now)).count();
+        if ((ejected + 1) * 100 > (long) all.size() * policy.getMaxEjectionPercent()) {
+            return;
+        }
+        if (state.eject(now, now + policy.getEjectionNanos())) {
+            logger.debug("Ejected {} as a latency outlier", gateway);
+        }
+    }
+
+    enum Permit {
+        DENIED,
+        GRANTED,
+        // Granted as the single probe request of a half-open circuit
+        PROBE
+    }
+
+    static final class State {
+        private static final long CLOSED = 0;
+
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+        // Time when the open circuit becomes half-open; or CLOSED
+        private final AtomicLong openUntil = new AtomicLong(CLOSED);
+        private final AtomicBoolean probing = new AtomicBoolean();
+        private final AtomicLong ejectedUntil = new AtomicLong(CLOSED);
+        private final AtomicLong latency = new AtomicLong(Double.doubleToRawLongBits(0));
+        private final AtomicLong samples = new AtomicLong();
+
+        private boolean isAvailable(long now) {
+            if (isEjected(now)) {
+                return false;
+            }
+            long until = openUntil.get();
+            return until == CLOSED || (now - until >= 0 && !probing.get());
+        }
+
+        private Permit tryAcquire(long now) {
+            if (isEjected(now)) {
+                return Permit.DENIED;
+            }
+            long until = openUntil.get();
+            if (until == CLOSED) {
+                return Permit.GRANTED;
+            }
+            return now - until >= 0 && probing.compareAndSet(false, true) ? Permit.PROBE : Permit.DENIED;
+        }
+
+        private boolean isEjected(long now) {
+            long until = ejectedUntil.get();
+            return until != CLOSED && now - until < 0;
+        }
+
+        private boolean eject(long now, long until) {
+            long current = ejectedUntil.get();
+            return (current == CLOSED || now - current >= 0) && ejectedUntil.compareAndSet(current, until);
+        }
+
+        private void onSuccess(long latencyNanos) {
+            consecutiveFailures.set(0);
+            if (openUntil.get() != CLOSED) {
+                openUntil.set(CLOSED);
+                probing.set(false);
+            }
+
+            long current;
+            long updated;
+            do {
+                current = latency.get();
+                double ewma = Double.longBitsToDouble(current);
+                updated = Double.doubleToRawLongBits(ewma == 0 ?
+                        latencyNanos :
+                        ewma + SMOOTHING * (latencyNanos - ewma));
+            } while (!latency.compareAndSet(current, updated));
+            samples.incrementAndGet();
+        }
+
+        /**
+         * @return <code>true</code> if the circuit was opened
+         */
+        private boolean onFailure(long openUntil, int threshold, boolean probe) {
+            int failures = consecutiveFailures.incrementAndGet();
+            if (probe || failures == threshold) {
+                this.openUntil.set(openUntil);
+                if (probe) {
+                    // Only once re-opened, so that no other probe is let through in between
+                    probing.set(false);
+                }
+                return true;
+            }
+            return false;
+        }
+
+        private double getLatency() {
+            return Double.longBitsToDouble(latency.get());
+        }
+    }
+}
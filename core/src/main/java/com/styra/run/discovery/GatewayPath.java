@@ -0,0 +1,63 @@
+package com.styra.run.discovery;
+
+import com.styra.run.exceptions.StyraRunException;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.styra.run.utils.Url.appendPath;
+import static com.styra.run.utils.Url.joinPath;
+
+/**
+ * A request path, relative to the gateway URI, that's joined with the URI of each {@link Gateway} only once.
+ * <p>
+ * Meant to be created once, and shared by all requests to the same path; see
+ * {@link GatewaySelector#hedge(com.styra.run.ApiClient.RequestBuilder, GatewayPath)}.
+ */
+public final class GatewayPath {
+    // Gateway URIs change on refresh; stale ones are let go of, rather than accumulated
+    private static final int MAX_CACHED_URIS = 32;
+
+    private final String path;
+    private final Map<URI, URI> uris = new ConcurrentHashMap<>();
+
+    private GatewayPath(String path) {
+        this.path = path;
+    }
+
+    /**
+     * @param path the elements of the path, each of which may contain <code>/</code> separators
+     * @return a new <code>GatewayPath</code>
+     */
+    public static GatewayPath of(String... path) {
+        return new GatewayPath(joinPath("", path));
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @param gateway the {@link Gateway} to make a request to
+     * @return the URI of this path on <code>gateway</code>
+     * @throws StyraRunException if the URI couldn't be constructed
+     */
+    public URI resolve(Gateway gateway) throws StyraRunException {
+        URI base = gateway.getUri();
+        URI uri = uris.get(base);
+        if (uri == null) {
+            uri = appendPath(base, path);
+            if (uris.size() >= MAX_CACHED_URIS) {
+                uris.clear();
+            }
+            uris.put(base, uri);
+        }
+        return uri;
+    }
+
+    @Override
+    public String toString() {
+        return path;
+    }
+}
@@ -18,6 +18,37 @@ public interface GatewaySelectionStrategy {
         return current();
     }
 
+    /**
+     * Returns a gateway, other than <code>gateway</code>, to send a hedged request to; without affecting the selection
+     * of gateways for subsequent requests.
+     *
+     * @param gateway the {@link Gateway} the original request was sent to
+     * @return an alternative {@link Gateway}; or <code>null</code>, if there is none
+     */
+    default Gateway alternativeTo(Gateway gateway) {
+        return null;
+    }
+
+    /**
+     * Called by the {@link GatewaySelector} when a request to <code>gateway</code> is started.
+     *
+     * @param gateway the {@link Gateway} the request is made to
+     */
+    default void onRequestStart(Gateway gateway) {
+    }
+
+    /**
+     * Called by the {@link GatewaySelector} when a request to <code>gateway</code>, previously announced through
+     * {@link #onRequestStart(Gateway)}, has completed.
+     *
+     * @param gateway the {@link Gateway} the request was made to
+     * @param latencyNanos the time, in nanoseconds, it took for the request to complete
+     * @param successful <code>false</code> if the request failed, or the gateway responded with an error that caused
+     *                   the request to be retried; <code>true</code> otherwise
+     */
+    default void onRequestComplete(Gateway gateway, long latencyNanos, boolean successful) {
+    }
+
     @FunctionalInterface
     interface Factory {
         GatewaySelectionStrategy create(List<Gateway> gateways);
@@ -2,110 +2,737 @@ package com.styra.run.discovery;
 
 import com.styra.run.ApiClient.RequestBuilder;
 import com.styra.run.ApiResponse;
+import com.styra.run.Deadline;
 import com.styra.run.exceptions.RetryException;
 import com.styra.run.exceptions.StyraRunException;
 import com.styra.run.utils.Futures;
+import com.styra.run.utils.Timers;
+import com.styra.run.utils.TokenBucket;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import static com.styra.run.utils.Futures.async;
+import static com.styra.run.utils.Futures.composeCancellable;
 import static com.styra.run.utils.Futures.failedFuture;
 import static com.styra.run.utils.Futures.startAsync;
 import static com.styra.run.utils.Url.appendPath;
 import static java.util.concurrent.CompletableFuture.completedFuture;
 
-public abstract class GatewaySelector {
+public abstract class GatewaySelector implements AutoCloseable {
     private static final Logger logger = LoggerFactory.getLogger(GatewaySelector.class);
     private static final List<Integer> STATUS_CODES_TO_RETRY = Arrays.asList(421, 502, 503, 504);
 
-    private final Object gatewaysFetchLock = new Object();
+    private static final Supplier<CompletableFuture<ApiResponse>> NO_ATTEMPTS_ALLOWED =
+            () -> failedFuture(new StyraRunException("No API request attempts allowed"));
+
+    private static final long MIN_REFRESH_INTERVAL_NANOS = Duration.ofSeconds(1).toNanos();
 
     private final GatewaySelectionStrategy.Factory gatewaySelectionStrategyFactory;
-    private volatile GatewaySelectionStrategy discoveryStrategy;
+    private final AtomicReference<CompletableFuture<GatewaySelectionStrategy>> strategy = new AtomicReference<>();
+    private final AtomicBoolean refreshing = new AtomicBoolean();
     private final int maxAttempts;
+    private final HedgingState hedging;
+    private final RetryPolicy retryPolicy;
+    private final TokenBucket retryBudget;
+    private final GatewayHealth health;
+    private final ConcurrencyLimiter limiter;
+    private final long refreshIntervalNanos;
+    private final Executor executor;
+    private volatile long lastRefreshNanos = System.nanoTime();
+    private volatile ScheduledFuture<?> refreshTimer;
+    private volatile boolean closed = false;
 
     public GatewaySelector(GatewaySelectionStrategy.Factory gatewaySelectionStrategyFactory, int maxAttempts) {
+        this(gatewaySelectionStrategyFactory, maxAttempts, Config.DEFAULT);
+    }
+
+    /**
+     * @param gatewaySelectionStrategyFactory the factory for the {@link GatewaySelectionStrategy} used to pick gateways
+     * @param maxAttempts the maximum number of attempts per request
+     * @param config the {@link Config} of optional request policies
+     */
+    public GatewaySelector(GatewaySelectionStrategy.Factory gatewaySelectionStrategyFactory,
+                           int maxAttempts,
+                           Config config) {
         this.gatewaySelectionStrategyFactory = gatewaySelectionStrategyFactory;
         this.maxAttempts = maxAttempts;
+        this.hedging = config.hedgingPolicy != null ? config.hedgingPolicy.newState() : null;
+        this.retryPolicy = config.retryPolicy;
+        this.retryBudget = config.retryPolicy != null ? config.retryPolicy.newBudget() : null;
+        this.health = config.circuitBreakerPolicy != null ? new GatewayHealth(config.circuitBreakerPolicy) : null;
+        this.limiter = config.concurrencyLimitPolicy != null ?
+                new ConcurrencyLimiter(config.concurrencyLimitPolicy) :
+                null;
+        this.refreshIntervalNanos = config.refreshInterval != null ? config.refreshInterval.toNanos() : 0;
+        this.executor = config.executor;
     }
 
+    /**
+     * Makes <code>request</code> to a gateway, retrying on other gateways if it fails.
+     * <p>
+     * If the request has a {@link Deadline}, retries stop when the deadline passes. Cancelling the returned future,
+     * or the deadline passing, cancels any in-flight attempt.
+     * <p>
+     * If a {@link ConcurrencyLimitPolicy} is configured, and the concurrency limit is reached, the request waits for
+     * other requests to complete first; or, if too many requests are waiting already, the returned future is
+     * completed exceptionally with an {@link com.styra.run.exceptions.OverloadedException}.
+     *
+     * @param request the request to make
+     * @param path the path of the request, relative to the gateway URI
+     * @return a {@link CompletableFuture} carrying the {@link ApiResponse}
+     */
     public CompletableFuture<ApiResponse> retry(RequestBuilder request, String... path) {
-        return retry(async(gateway ->
-                request.uri(appendPath(gateway.getUri(), path))
-                        .request()));
+        Deadline deadline = request.getDeadline();
+        return admit(deadline, () -> composeCancellable(getGatewaySelectionStrategy(),
+                (strategy) -> retry(toRequest(request, path), strategy, deadline)));
+    }
+
+    /**
+     * Like {@link #retry(RequestBuilder, String...)}, but if a {@link HedgingPolicy} is configured, and the gateway
+     * hasn't responded within the hedging delay, the same request is also sent to another gateway, and the first
+     * response is used; the other request is cancelled.
+     * <p>
+     * Must only be used for idempotent requests.
+     *
+     * @param request the request to make
+     * @param path the path of the request, relative to the gateway URI
+     * @return a {@link CompletableFuture} carrying the {@link ApiResponse}
+     */
+    public CompletableFuture<ApiResponse> hedge(RequestBuilder request, String... path) {
+        if (hedging == null) {
+            return retry(request, path);
+        }
+
+        Deadline deadline = request.getDeadline();
+        return admit(deadline, () -> composeCancellable(getGatewaySelectionStrategy(),
+                (strategy) -> hedge(toRequest(request, path), strategy, deadline)));
+    }
+
+    /**
+     * Like {@link #hedge(RequestBuilder, String...)}, but with a {@link GatewayPath}; which only joins the path with
+     * the URI of each gateway once, across requests.
+     *
+     * @param request the request to make
+     * @param path the path of the request, relative to the gateway URI
+     * @return a {@link CompletableFuture} carrying the {@link ApiResponse}
+     */
+    public CompletableFuture<ApiResponse> hedge(RequestBuilder request, GatewayPath path) {
+        Function<Gateway, CompletableFuture<ApiResponse>> call = toRequest(request, path);
+        Deadline deadline = request.getDeadline();
+        return admit(deadline, () -> composeCancellable(getGatewaySelectionStrategy(),
+                (strategy) -> hedging != null ?
+                        hedge(call, strategy, deadline) :
+                        retry(call, strategy, deadline)));
+    }
+
+    private CompletableFuture<ApiResponse> admit(Deadline deadline, Supplier<CompletableFuture<ApiResponse>> call) {
+        if (limiter == null) {
+            return call.get();
+        }
+        // Bounds the time spent waiting for the concurrency limit
+        CompletableFuture<ApiResponse> result = limiter.execute(call);
+        return deadline != null ? deadline.bound(result) : result;
+    }
+
+    private static Function<Gateway, CompletableFuture<ApiResponse>> toRequest(RequestBuilder request, String... path) {
+        return async(gateway -> request.request(appendPath(gateway.getUri(), path)));
+    }
+
+    private static Function<Gateway, CompletableFuture<ApiResponse>> toRequest(RequestBuilder request, GatewayPath path) {
+        return async(gateway -> request.request(path.resolve(gateway)));
+    }
+
+    private CompletableFuture<ApiResponse> hedge(Function<Gateway, CompletableFuture<ApiResponse>> request,
+                                                 GatewaySelectionStrategy strategy,
+                                                 Deadline deadline) {
+        hedging.onRequest();
+
+        CompletableFuture<ApiResponse> result = new CompletableFuture<>();
+        // The number of requests that might still produce the result; the primary, and possibly the hedge
+        AtomicInteger remaining = new AtomicInteger(1);
+        AtomicReference<CompletableFuture<ApiResponse>> primaryAttempt = new AtomicReference<>();
+        AtomicReference<CompletableFuture<ApiResponse>> hedgeAttempt = new AtomicReference<>();
+        // The gateway of the latest primary attempt; the circuit breaker might have steered it off the current one
+        AtomicReference<Gateway> primary = new AtomicReference<>(strategy.current());
+
+        Function<Gateway, CompletableFuture<ApiResponse>> primaryRequest = track(request, result, primaryAttempt);
+        long start = System.nanoTime();
+        CompletableFuture<ApiResponse> primaryResponse = retry((gateway) -> {
+            primary.set(gateway);
+            return primaryRequest.apply(gateway);
+        }, strategy, strategy.current(), 1, 0, false, deadline, NO_ATTEMPTS_ALLOWED);
+
+        primaryResponse.whenComplete((response, e) -> {
+            // Also when the hedge won, so that the observed latencies aren't biased towards fast primaries; a primary
+            // cancelled because the hedge won took at least as long as it ran
+            if (e == null || Futures.unwrapException(e) instanceof CancellationException) {
+                hedging.recordLatency(System.nanoTime() - start);
+            }
+            if (e == null) {
+                result.complete(response);
+            } else if (remaining.decrementAndGet() == 0) {
+                result.completeExceptionally(e);
+            }
+        });
+
+        // The hedge is sent from the executor; the shared timer thread mustn't make requests
+        ScheduledFuture<?> timer = Timers.schedule(() -> {
+            if (result.isDone()) {
+                return;
+            }
+            Gateway secondary = strategy.alternativeTo(primary.get());
+            if (secondary == null || (health != null && !health.isAvailable(secondary)) || !hedging.tryHedge()) {
+                return;
+            }
+            boolean probe = false;
+            if (health != null) {
+                GatewayHealth.Permit permit = health.tryAcquire(secondary);
+                if (permit == GatewayHealth.Permit.DENIED) {
+                    return;
+                }
+                probe = permit == GatewayHealth.Permit.PROBE;
+            }
+            if (remaining.getAndUpdate((n) -> n == 0 ? 0 : n + 1) == 0) {
+                if (probe) {
+                    health.onCancelled(secondary, true);
+                }
+                return;
+            }
+
+            logger.debug("No response within hedging delay; hedging request to {}", secondary.getUri());
+            CompletableFuture<ApiResponse> attempt;
+            try {
+                attempt = request(request, strategy, new Selection(secondary, probe));
+            } catch (RuntimeException e) {
+                attempt = failedFuture(e);
+            }
+            hedgeAttempt.set(attempt);
+            attempt.whenComplete((response, e) -> {
+                if (e == null && !isRetryable(response)) {
+                    result.complete(response);
+                } else if (remaining.decrementAndGet() == 0) {
+                    if (e == null) {
+                        result.complete(response);
+                    } else {
+                        result.completeExceptionally(e);
+                    }
+                }
+            });
+        }, hedging.getDelayNanos(), executor);
+
+        return bound(result, deadline, () -> {
+            timer.cancel(false);
+            cancel(primaryAttempt.get());
+            cancel(hedgeAttempt.get());
+        });
+    }
+
+    /**
+     * Tracks the current attempt of <code>request</code> in <code>attempt</code>, and makes no further attempts once
+     * <code>result</code> is done.
+     */
+    private static Function<Gateway, CompletableFuture<ApiResponse>> track(
+            Function<Gateway, CompletableFuture<ApiResponse>> request,
+            CompletableFuture<ApiResponse> result,
+            AtomicReference<CompletableFuture<ApiResponse>> attempt) {
+        return (gateway) -> {
+            if (result.isDone()) {
+                // A delayed retry, after the call was cancelled, its deadline passed, or a hedge produced the result
+                return failedFuture(new CancellationException());
+            }
+            CompletableFuture<ApiResponse> future = request.apply(gateway);
+            attempt.set(future);
+            return future;
+        };
+    }
+
+    /**
+     * Completes <code>result</code> exceptionally if <code>deadline</code> passes, and calls <code>onComplete</code>
+     * however <code>result</code> is completed; including by being cancelled.
+     */
+    private static CompletableFuture<ApiResponse> bound(CompletableFuture<ApiResponse> result,
+                                                        Deadline deadline,
+                                                        Runnable onComplete) {
+        if (deadline != null) {
+            deadline.bound(result);
+        }
+        result.whenComplete((response, e) -> onComplete.run());
+        return result;
+    }
+
+    private static void cancel(CompletableFuture<?> future) {
+        if (future != null) {
+            future.cancel(true);
+        }
+    }
+
+    private static boolean isRetryable(ApiResponse response) {
+        return STATUS_CODES_TO_RETRY.contains(response.getStatusCode());
     }
 
-    private CompletableFuture<ApiResponse> retry(Function<Gateway, CompletableFuture<ApiResponse>> request) {
-        return getGatewaySelectionStrategy()
-                .thenCompose((strategy) -> retry(request, strategy, strategy.current(), 1,
-                        () -> failedFuture(new StyraRunException("No API request attempts allowed"))));
+    private CompletableFuture<ApiResponse> retry(Function<Gateway, CompletableFuture<ApiResponse>> request,
+                                                 GatewaySelectionStrategy strategy,
+                                                 Deadline deadline) {
+        CompletableFuture<ApiResponse> result = new CompletableFuture<>();
+        AtomicReference<CompletableFuture<ApiResponse>> attempt = new AtomicReference<>();
+
+        retry(track(request, result, attempt), strategy, strategy.current(), 1, 0, false, deadline,
+                NO_ATTEMPTS_ALLOWED)
+                .whenComplete((response, e) -> {
+                    if (e != null) {
+                        result.completeExceptionally(Futures.unwrapException(e));
+                    } else {
+                        result.complete(response);
+                    }
+                });
+
+        return bound(result, deadline, () -> cancel(attempt.get()));
     }
 
+    /**
+     * Makes <code>attempt</code> of <code>request</code>, unless it has to be aborted. The gateway proposed by the
+     * strategy is only checked against the circuit breaker once the attempt is actually made; so that an aborted
+     * attempt never holds the probe request of a half-open circuit.
+     */
     private CompletableFuture<ApiResponse> retry(Function<Gateway, CompletableFuture<ApiResponse>> request,
                                                  GatewaySelectionStrategy strategy,
                                                  Gateway gateway,
                                                  int attempt,
+                                                 long delayNanos,
+                                                 boolean budgeted,
+                                                 Deadline deadline,
                                                  Supplier<CompletableFuture<ApiResponse>> onTooManyAttempts) {
         if (gateway == null || attempt > maxAttempts || attempt > strategy.size()) {
             logger.debug("Too many failed attempts ({}); aborting request", attempt);
+            if (attempt > 1) {
+                refreshEarly();
+            }
+            return onTooManyAttempts.get();
+        }
+
+        if (delayNanos < 0) {
+            logger.debug("Server asked for a longer retry delay than allowed; aborting request");
             return onTooManyAttempts.get();
         }
 
+        if (deadline != null && delayNanos >= deadline.getRemainingNanos()) {
+            logger.debug("Deadline would pass before attempt {}; aborting request", attempt);
+            return onTooManyAttempts.get();
+        }
+
+        if (budgeted && retryBudget != null && !retryBudget.tryWithdraw(1)) {
+            logger.debug("Retry budget exhausted; aborting request");
+            return onTooManyAttempts.get();
+        }
+
+        if (delayNanos > 0) {
+            logger.trace("Delaying attempt {} by {}ns", attempt, delayNanos);
+            return delay(delayNanos).thenCompose((v) ->
+                    attempt(request, strategy, gateway, attempt, deadline, onTooManyAttempts));
+        }
+        return attempt(request, strategy, gateway, attempt, deadline, onTooManyAttempts);
+    }
+
+    private CompletableFuture<ApiResponse> attempt(Function<Gateway, CompletableFuture<ApiResponse>> request,
+                                                   GatewaySelectionStrategy strategy,
+                                                   Gateway proposed,
+                                                   int attempt,
+                                                   Deadline deadline,
+                                                   Supplier<CompletableFuture<ApiResponse>> onTooManyAttempts) {
         logger.trace("Making request; attempt {}", attempt);
 
-        return request.apply(gateway)
+        Selection selection = selectHealthy(strategy, proposed);
+        Gateway gateway = selection.gateway;
+        return request(request, strategy, selection)
                 .thenCompose((response) -> {
-                    if (STATUS_CODES_TO_RETRY.contains(response.getStatusCode())) {
-                        return retry(request, strategy, strategy.nextIfMatch(gateway), attempt + 1,
-                                () -> completedFuture(response));
+                    if (isRetryable(response)) {
+                        if (response.getStatusCode() == 421) {
+                            refreshEarly();
+                        }
+                        Gateway next = strategy.nextIfMatch(gateway);
+                        return retry(request, strategy, next, attempt + 1, getRetryDelayNanos(attempt, response),
+                                isBudgeted(gateway, next, response), deadline, () -> completedFuture(response));
                     }
                     return completedFuture(response);
                 })
                 .exceptionallyCompose((e) -> {
                     Throwable unwrapped = Futures.unwrapException(e);
                     if (unwrapped instanceof RetryException) {
-                        return retry(request, strategy, strategy.nextIfMatch(gateway), attempt + 1,
-                                () -> failedFuture(unwrapped.getCause()));
+                        Gateway next = strategy.nextIfMatch(gateway);
+                        return retry(request, strategy, next, attempt + 1, getRetryDelayNanos(attempt, null),
+                                isBudgeted(gateway, next, null), deadline, () -> failedFuture(unwrapped.getCause()));
                     }
                     throw new CompletionException(unwrapped);
                 });
     }
 
+    /**
+     * Failing over to another gateway doesn't add load to the failed one, and isn't charged to the retry budget;
+     * unless the failed response throttled the client with a <code>Retry-After</code> header, as then the failure is
+     * likely shared by all gateways.
+     */
+    private static boolean isBudgeted(Gateway failed, Gateway next, ApiResponse response) {
+        return failed.equals(next) || (response != null && response.getHeader("Retry-After") != null);
+    }
+
+    private long getRetryDelayNanos(int retry, ApiResponse response) {
+        return retryPolicy != null ? retryPolicy.getDelayNanos(retry, response) : 0;
+    }
+
+    /**
+     * Returns a future completed after <code>delayNanos</code>, on the executor; the shared timer thread mustn't make
+     * the delayed attempt.
+     */
+    private CompletableFuture<Void> delay(long delayNanos) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        Timers.schedule(() -> future.complete(null), delayNanos, executor);
+        return future;
+    }
+
+    /**
+     * Returns <code>gateway</code>, if it's available according to the circuit breaker; otherwise the first available
+     * gateway proposed by <code>strategy</code>. If no gateway is available, <code>gateway</code> is returned anyway.
+     * If the returned gateway's circuit is half-open, the request made to it is its probe request.
+     */
+    private Selection selectHealthy(GatewaySelectionStrategy strategy, Gateway gateway) {
+        if (health == null || gateway == null) {
+            return new Selection(gateway, false);
+        }
+
+        Gateway candidate = gateway;
+        for (int i = 0; i < strategy.size(); i++) {
+            GatewayHealth.Permit permit = health.tryAcquire(candidate);
+            if (permit != GatewayHealth.Permit.DENIED) {
+                return new Selection(candidate, permit == GatewayHealth.Permit.PROBE);
+            }
+            candidate = strategy.nextIfMatch(candidate);
+        }
+        logger.debug("No healthy gateways available; failing open");
+        return new Selection(gateway, false);
+    }
+
+    private CompletableFuture<ApiResponse> request(Function<Gateway, CompletableFuture<ApiResponse>> request,
+                                                   GatewaySelectionStrategy strategy,
+                                                   Selection selection) {
+        long start = System.nanoTime();
+        strategy.onRequestStart(selection.gateway);
+        CompletableFuture<ApiResponse> future;
+        try {
+            future = request.apply(selection.gateway);
+        } catch (RuntimeException e) {
+            onRequestComplete(strategy, selection, System.nanoTime() - start, null, e);
+            throw e;
+        }
+        future.whenComplete((response, e) ->
+                onRequestComplete(strategy, selection, System.nanoTime() - start, response, e));
+        return future;
+    }
+
+    private void onRequestComplete(GatewaySelectionStrategy strategy,
+                                   Selection selection,
+                                   long latencyNanos,
+                                   ApiResponse response,
+                                   Throwable e) {
+        Gateway gateway = selection.gateway;
+        boolean cancelled = e != null && Futures.unwrapException(e) instanceof CancellationException;
+        boolean successful = e == null && !isRetryable(response);
+        strategy.onRequestComplete(gateway, latencyNanos, cancelled || successful);
+
+        if (successful && retryBudget != null) {
+            retryBudget.deposit(retryPolicy.getBudgetRatio());
+        }
+
+        if (health != null) {
+            if (cancelled) {
+                health.onCancelled(gateway, selection.probe);
+            } else if (successful) {
+                health.onSuccess(gateway, latencyNanos);
+            } else {
+                health.onFailure(gateway, selection.probe);
+            }
+        }
+    }
+
     protected abstract List<Gateway> fetchGateways() throws StyraRunException;
 
+    /**
+     * Fetches the list of available gateways, without blocking the calling thread.
+     * <p>
+     * The default implementation calls {@link #fetchGateways()} on the calling thread;
+     * implementations that fetch gateways over the network should override this method.
+     *
+     * @return a {@link CompletableFuture} carrying the list of available gateways
+     */
+    protected CompletableFuture<List<Gateway>> fetchGatewaysAsync() {
+        return startAsync(this::fetchGateways);
+    }
+
+    /**
+     * Returns <code>true</code> if the list of gateways might change over time, and should be re-fetched when
+     * gateways appear to be unavailable; <code>false</code> otherwise.
+     *
+     * @return <code>true</code> if gateways can be refreshed
+     */
+    protected boolean isRefreshable() {
+        return false;
+    }
+
+    /**
+     * Re-fetches the list of gateways in the background. Until the gateways have been fetched, the current gateways
+     * are used; if fetching fails, the current gateways are kept.
+     */
+    public void refresh() {
+        if (closed || !refreshing.compareAndSet(false, true)) {
+            return;
+        }
+
+        lastRefreshNanos = System.nanoTime();
+        discover().whenComplete((strategy, e) -> {
+            refreshing.set(false);
+            if (e != null) {
+                logger.debug("Failed to refresh gateways; keeping current gateways", e);
+            } else {
+                this.strategy.set(completedFuture(strategy));
+            }
+            scheduleRefresh();
+        });
+    }
+
+    /**
+     * Stops any periodic refresh of gateways.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        ScheduledFuture<?> timer = refreshTimer;
+        if (timer != null) {
+            timer.cancel(false);
+        }
+    }
+
+    private void refreshEarly() {
+        if (isRefreshable() && System.nanoTime() - lastRefreshNanos >= MIN_REFRESH_INTERVAL_NANOS) {
+            logger.debug("Gateways appear to be unavailable; refreshing");
+            refresh();
+        }
+    }
+
+    private void scheduleRefresh() {
+        if (closed || refreshIntervalNanos <= 0) {
+            return;
+        }
+
+        ScheduledFuture<?> previous = refreshTimer;
+        if (previous != null) {
+            previous.cancel(false);
+        }
+        // Jitter of +/-10%, to spread refreshes of concurrently started clients
+        double jitter = 0.9 + ThreadLocalRandom.current().nextDouble() * 0.2;
+        // Fetching gateways may block, e.g. with a BlockingApiClient, so keep it off the shared timer thread
+        refreshTimer = Timers.schedule(this::refresh, (long) (refreshIntervalNanos * jitter), executor);
+    }
+
     private CompletableFuture<GatewaySelectionStrategy> getGatewaySelectionStrategy() {
-        return startAsync(() -> {
-            // We block while fetching gateways, as there is no point in retrieving them more than once,
-            // and no concurrent work can be done until they're resolved anyway.
-            if (discoveryStrategy == null) {
-                synchronized (gatewaysFetchLock) {
-                    if (discoveryStrategy == null) {
-                        logger.trace("Fetching gateways");
-                        List<Gateway> gateways;
-                        try {
-                            gateways = fetchGateways();
-                        } catch (Exception e) {
-                            throw new StyraRunException("Failed to fetch gateways", e);
-                        }
-                        if (gateways == null || gateways.isEmpty()) {
-                            throw new StyraRunException("No gateways could be fetched");
-                        }
-                        logger.debug("Gateways: {}", gateways.stream()
-                                .map((g) -> g.getUri().toString())
-                                .collect(Collectors.joining(", ")));
-                        discoveryStrategy = gatewaySelectionStrategyFactory.create(gateways);
+        // Concurrent callers share one discovery; a failed discovery is retried by subsequent callers.
+        while (true) {
+            CompletableFuture<GatewaySelectionStrategy> current = strategy.get();
+            if (current != null) {
+                return current;
+            }
+
+            CompletableFuture<GatewaySelectionStrategy> discovery = new CompletableFuture<>();
+            if (strategy.compareAndSet(null, discovery)) {
+                lastRefreshNanos = System.nanoTime();
+                discover().whenComplete((strategy, e) -> {
+                    if (e != null) {
+                        this.strategy.compareAndSet(discovery, null);
+                        discovery.completeExceptionally(e);
+                    } else {
+                        discovery.complete(strategy);
+                        scheduleRefresh();
                     }
-                }
+                });
+                return discovery;
+            }
+        }
+    }
+
+    private CompletableFuture<GatewaySelectionStrategy> discover() {
+        logger.trace("Fetching gateways");
+        CompletableFuture<List<Gateway>> future;
+        try {
+            future = fetchGatewaysAsync();
+        } catch (RuntimeException e) {
+            future = failedFuture(e);
+        }
+
+        return future.handle((gateways, e) -> {
+            if (e != null) {
+                throw new CompletionException(
+                        new StyraRunException("Failed to fetch gateways", Futures.unwrapException(e)));
+            }
+            if (gateways == null || gateways.isEmpty()) {
+                throw new CompletionException(new StyraRunException("No gateways could be fetched"));
             }
-            return discoveryStrategy;
+            logger.debug("Gateways: {}", gateways.stream()
+                    .map((g) -> g.getUri().toString())
+                    .collect(Collectors.joining(", ")));
+            if (health != null) {
+                health.retainAll(gateways);
+            }
+            return gatewaySelectionStrategyFactory.create(gateways);
         });
     }
+
+    /**
+     * A gateway selected for an attempt, and whether the attempt holds the probe request of its half-open circuit.
+     */
+    private static final class Selection {
+        private final Gateway gateway;
+        private final boolean probe;
+
+        private Selection(Gateway gateway, boolean probe) {
+            this.gateway = gateway;
+            this.probe = probe;
+        }
+    }
+
+    /**
+     * Optional request policies of a {@link GatewaySelector}.
+     */
+    public static final class Config {
+        static final Config DEFAULT = builder().build();
+
+        private final HedgingPolicy hedgingPolicy;
+        private final RetryPolicy retryPolicy;
+        private final CircuitBreakerPolicy circuitBreakerPolicy;
+        private final ConcurrencyLimitPolicy concurrencyLimitPolicy;
+        private final Duration refreshInterval;
+        private final Executor executor;
+
+        private Config(HedgingPolicy hedgingPolicy,
+                       RetryPolicy retryPolicy,
+                       CircuitBreakerPolicy circuitBreakerPolicy,
+                       ConcurrencyLimitPolicy concurrencyLimitPolicy,
+                       Duration refreshInterval,
+                       Executor executor) {
+            this.hedgingPolicy = hedgingPolicy;
+            this.retryPolicy = retryPolicy;
+            this.circuitBreakerPolicy = circuitBreakerPolicy;
+            this.concurrencyLimitPolicy = concurrencyLimitPolicy;
+            this.refreshInterval = refreshInterval;
+            this.executor = executor;
+        }
+
+        public static Builder builder() {
+            return new Builder();
+        }
+
+        public static final class Builder {
+            private HedgingPolicy hedgingPolicy;
+            private RetryPolicy retryPolicy;
+            private CircuitBreakerPolicy circuitBreakerPolicy;
+            private ConcurrencyLimitPolicy concurrencyLimitPolicy;
+            private Duration refreshInterval;
+            private Executor executor;
+
+            private Builder() {
+            }
+
+            /**
+             * Sets the {@link HedgingPolicy} applied by {@link GatewaySelector#hedge(RequestBuilder, String...)};
+             * <code>null</code> if requests shouldn't be hedged. Defaults to <code>null</code>.
+             *
+             * @param hedgingPolicy the {@link HedgingPolicy}
+             * @return this builder
+             */
+            public Builder hedgingPolicy(HedgingPolicy hedgingPolicy) {
+                this.hedgingPolicy = hedgingPolicy;
+                return this;
+            }
+
+            /**
+             * Sets the {@link RetryPolicy} for delaying and budgeting retries;
+             * <code>null</code> if failed requests should be retried immediately, and without limit beyond the
+             * maximum number of attempts. Defaults to <code>null</code>.
+             *
+             * @param retryPolicy the {@link RetryPolicy}
+             * @return this builder
+             */
+            public Builder retryPolicy(RetryPolicy retryPolicy) {
+                this.retryPolicy = retryPolicy;
+                return this;
+            }
+
+            /**
+             * Sets the {@link CircuitBreakerPolicy} for tracking the health of gateways;
+             * <code>null</code> if gateway health shouldn't be tracked. Defaults to <code>null</code>.
+             *
+             * @param circuitBreakerPolicy the {@link CircuitBreakerPolicy}
+             * @return this builder
+             */
+            public Builder circuitBreakerPolicy(CircuitBreakerPolicy circuitBreakerPolicy) {
+                this.circuitBreakerPolicy = circuitBreakerPolicy;
+                return this;
+            }
+
+            /**
+             * Sets the {@link ConcurrencyLimitPolicy} for limiting the number of concurrent requests;
+             * <code>null</code> if concurrent requests shouldn't be limited. Defaults to <code>null</code>.
+             *
+             * @param concurrencyLimitPolicy the {@link ConcurrencyLimitPolicy}
+             * @return this builder
+             */
+            public Builder concurrencyLimitPolicy(ConcurrencyLimitPolicy concurrencyLimitPolicy) {
+                this.concurrencyLimitPolicy = concurrencyLimitPolicy;
+                return this;
+            }
+
+            /**
+             * Sets the interval at which gateways are periodically re-fetched;
+             * <code>null</code> if gateways shouldn't be periodically re-fetched. Defaults to <code>null</code>.
+             *
+             * @param refreshInterval the refresh interval
+             * @return this builder
+             */
+            public Builder refreshInterval(Duration refreshInterval) {
+                this.refreshInterval = refreshInterval;
+                return this;
+            }
+
+            /**
+             * Sets the {@link Executor} that delayed work that makes requests, such as hedged requests and periodic
+             * gateway refreshes, is handed off to from the shared timer thread; <code>null</code> for the default
+             * asynchronous executor of {@link CompletableFuture}. Defaults to <code>null</code>.
+             *
+             * @param executor the {@link Executor}
+             * @return this builder
+             */
+            public Builder executor(Executor executor) {
+                this.executor = executor;
+                return this;
+            }
+
+            public Config build() {
+                return new Config(hedgingPolicy, retryPolicy, circuitBreakerPolicy, concurrencyLimitPolicy,
+                        refreshInterval, executor);
+            }
+        }
+    }
 }
@@ -0,0 +1,97 @@
+package com.styra.run.discovery;
+
+import java.time.Duration;
+
+import static com.styra.run.utils.Null.orThrow;
+
+/**
+ * A policy for hedging idempotent requests to the Styra Run API: if a gateway hasn't responded within a delay,
+ * the same request is sent to a second gateway, and the first response is used.
+ * <p>
+ * The delay is either fixed, or a percentile of recently observed response latencies.
+ * Hedged requests are budgeted to a percentage of all requests, so that hedging can't amplify the load on the gateways
+ * by more than that percentage. The budget, and the observed latencies, are tracked per {@link GatewaySelector}; a
+ * policy can be shared.
+ */
+public final class HedgingPolicy {
+    private final long delayNanos;
+    private final double percentile;
+    private final double budgetRatio;
+
+    private HedgingPolicy(Duration delay, double percentile, double budgetPercent) {
+        this.delayNanos = delay.toNanos();
+        this.percentile = percentile;
+        this.budgetRatio = budgetPercent / 100;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Creates new hedging state; an empty budget, and no observed latencies.
+     */
+    HedgingState newState() {
+        return new HedgingState(delayNanos, percentile, budgetRatio);
+    }
+
+    public static final class Builder {
+        private Duration delay = Duration.ofMillis(100);
+        private double percentile = 0;
+        private double budgetPercent = 10;
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the fixed delay after which a request is hedged; or, if a {@link #percentile(double) percentile} is
+         * set, the delay used until enough latencies have been observed. Defaults to 100 milliseconds.
+         *
+         * @param delay the hedging delay
+         * @return this builder
+         */
+        public Builder delay(Duration delay) {
+            orThrow(delay, "delay must not be null");
+            if (delay.isNegative()) {
+                throw new IllegalArgumentException("delay must not be negative");
+            }
+            this.delay = delay;
+            return this;
+        }
+
+        /**
+         * Hedge requests that haven't been responded to within the given percentile of recently observed latencies;
+         * e.g. <code>95</code>. <code>0</code> means the fixed {@link #delay(Duration) delay} is always used.
+         * Defaults to <code>0</code>.
+         *
+         * @param percentile the latency percentile, between <code>0</code> and <code>100</code>
+         * @return this builder
+         */
+        public Builder percentile(double percentile) {
+            if (percentile < 0 || percentile > 100) {
+                throw new IllegalArgumentException("percentile must be between 0 and 100");
+            }
+            this.percentile = percentile;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of hedged requests, as a percentage of all hedgeable requests. Defaults to
+         * <code>10</code>.
+         *
+         * @param percent the hedging budget, between <code>0</code> and <code>100</code>
+         * @return this builder
+         */
+        public Builder budget(double percent) {
+            if (percent < 0 || percent > 100) {
+                throw new IllegalArgumentException("percent must be between 0 and 100");
+            }
+            this.budgetPercent = percent;
+            return this;
+        }
+
+        public HedgingPolicy build() {
+            return new HedgingPolicy(delay, percentile, budgetPercent);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.styra.run.discovery;
+
+import com.styra.run.utils.TokenBucket;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The hedging budget, and the recently observed latencies, of a {@link GatewaySelector} hedging requests according to
+ * a {@link HedgingPolicy}.
+ */
+final class HedgingState {
+    private static final int SAMPLE_COUNT = 256;
+    private static final int SAMPLES_PER_UPDATE = 32;
+    private static final double BUDGET_CAPACITY = 10;
+
+    private final long delayNanos;
+    private final double percentile;
+    private final double budgetRatio;
+    private final TokenBucket budget = new TokenBucket(BUDGET_CAPACITY, 0);
+
+    private final AtomicLongArray samples = new AtomicLongArray(SAMPLE_COUNT);
+    private final AtomicLong sampleCount = new AtomicLong();
+    private final AtomicLong percentileDelayNanos = new AtomicLong(-1);
+
+    HedgingState(long delayNanos, double percentile, double budgetRatio) {
+        this.delayNanos = delayNanos;
+        this.percentile = percentile;
+        this.budgetRatio = budgetRatio;
+    }
+
+    /**
+     * Returns the current hedging delay; the configured percentile of recently observed latencies, if enough have
+     * been observed, or the configured delay otherwise.
+     *
+     * @return the delay, in nanoseconds, after which a request should be hedged
+     */
+    long getDelayNanos() {
+        long delay = percentileDelayNanos.get();
+        return delay >= 0 ? delay : delayNanos;
+    }
+
+    /**
+     * Called for every hedgeable request, to add to the hedging budget.
+     */
+    void onRequest() {
+        budget.deposit(budgetRatio);
+    }
+
+    /**
+     * Attempts to withdraw one hedged request from the budget.
+     *
+     * @return <code>true</code> if a hedged request may be made; <code>false</code> otherwise
+     */
+    boolean tryHedge() {
+        return budget.tryWithdraw(1);
+    }
+
+    /**
+     * Records the latency of a primary request; whether or not it was hedged, or its hedge won.
+     *
+     * @param latencyNanos the latency, in nanoseconds
+     */
+    void recordLatency(long latencyNanos) {
+        if (percentile <= 0) {
+            return;
+        }
+
+        long count = sampleCount.incrementAndGet();
+        samples.set((int) ((count - 1) % SAMPLE_COUNT), latencyNanos);
+        if (count % SAMPLES_PER_UPDATE == 0) {
+            int size = (int) Math.min(count, SAMPLE_COUNT);
+            long[] sorted = new long[size];
+            for (int i = 0; i < size; i++) {
+                sorted[i] = samples.get(i);
+            }
+            Arrays.sort(sorted);
+            int rank = (int) Math.ceil(percentile / 100 * size) - 1;
+            percentileDelayNanos.set(sorted[Math.max(0, Math.min(size - 1, rank))]);
+        }
+    }
+}
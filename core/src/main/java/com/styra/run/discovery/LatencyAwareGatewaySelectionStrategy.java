@@ -0,0 +1,266 @@
+package com.styra.run.discovery;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.styra.run.utils.Null.orThrow;
+
+/**
+ * A {@link GatewaySelectionStrategy} that spreads requests across all gateways, preferring the ones that respond
+ * the fastest.
+ * <p>
+ * For every gateway, an exponentially weighted moving average (EWMA) of request latencies, and the number of
+ * in-flight requests, is tracked. A gateway is selected by sampling two gateways at random, and picking the one with
+ * the lowest expected latency; <i>the power of two choices</i>. Failed requests are recorded with a latency penalty.
+ * <p>
+ * Since a gateway's average only changes when it's selected, a sampled gateway that hasn't been selected for a while
+ * is probed with the request at hand; and the older a gateway's average, the more weight its next sample gets. That way
+ * a gateway recovers from a penalty, or a slow spell, within a few seconds of it being over. Gateways added by a
+ * refresh start out with the average latency of the other gateways.
+ * <p>
+ * Gateway statistics are kept by the {@link Factory}, and survive the gateway list being refreshed.
+ */
+public class LatencyAwareGatewaySelectionStrategy implements GatewaySelectionStrategy {
+    private final List<Gateway> gateways;
+    private final GatewayStats[] stats;
+    private final double smoothing;
+    private final long failurePenaltyNanos;
+    private final long probeIntervalNanos;
+
+    private LatencyAwareGatewaySelectionStrategy(List<Gateway> gateways,
+                                                 ConcurrentMap<Gateway, GatewayStats> stats,
+                                                 double smoothing,
+                                                 long failurePenaltyNanos,
+                                                 long probeIntervalNanos) {
+        this.gateways = gateways;
+        this.stats = new GatewayStats[gateways.size()];
+        double seedNanos = meanLatencyNanos(stats.values());
+        for (int i = 0; i < gateways.size(); i++) {
+            this.stats[i] = stats.computeIfAbsent(gateways.get(i), (g) -> new GatewayStats(seedNanos));
+        }
+        this.smoothing = smoothing;
+        this.failurePenaltyNanos = failurePenaltyNanos;
+        this.probeIntervalNanos = probeIntervalNanos;
+    }
+
+    @Override
+    public Gateway current() {
+        return select(-1);
+    }
+
+    @Override
+    public Gateway next() {
+        return select(-1);
+    }
+
+    @Override
+    public Gateway nextIfMatch(Gateway gateway) {
+        return select(gateways.indexOf(gateway));
+    }
+
+    @Override
+    public Gateway alternativeTo(Gateway gateway) {
+        if (gateways.size() < 2) {
+            return null;
+        }
+        return select(gateways.indexOf(gateway));
+    }
+
+    @Override
+    public int size() {
+        return gateways.size();
+    }
+
+    @Override
+    public void onRequestStart(Gateway gateway) {
+        GatewayStats s = statsFor(gateway);
+        if (s != null) {
+            s.inFlight.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void onRequestComplete(Gateway gateway, long latencyNanos, boolean successful) {
+        GatewayStats s = statsFor(gateway);
+        if (s != null) {
+            s.inFlight.decrementAndGet();
+            // The age at which an average has lost ~63% of its weight against a new sample
+            double decayNanos = probeIntervalNanos / 5.0;
+            s.record(successful ? latencyNanos : Math.max(latencyNanos, failurePenaltyNanos), smoothing, decayNanos);
+        }
+    }
+
+    private static double meanLatencyNanos(Collection<GatewayStats> stats) {
+        double sum = 0;
+        int count = 0;
+        for (GatewayStats s : stats) {
+            double latency = s.getLatencyNanos();
+            if (latency > 0) {
+                sum += latency;
+                count++;
+            }
+        }
+        return count > 0 ? sum / count : 0;
+    }
+
+    private GatewayStats statsFor(Gateway gateway) {
+        int index = gateways.indexOf(gateway);
+        return index >= 0 ? stats[index] : null;
+    }
+
+    /**
+     * Picks the better of two randomly sampled gateways, never picking the gateway at <code>excluded</code>
+     * unless it's the only one.
+     */
+    private Gateway select(int excluded) {
+        int size = gateways.size();
+        int candidates = excluded >= 0 ? size - 1 : size;
+        if (candidates <= 0) {
+            return gateways.get(0);
+        } else if (candidates == 1) {
+            return gateways.get(excluded == 0 ? 1 : 0);
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(candidates);
+        int second = random.nextInt(candidates - 1);
+        if (second >= first) {
+            second++;
+        }
+        if (excluded >= 0) {
+            if (first >= excluded) first++;
+            if (second >= excluded) second++;
+        }
+
+        long now = System.nanoTime();
+        if (stats[first].tryProbe(now, probeIntervalNanos)) {
+            return gateways.get(first);
+        } else if (stats[second].tryProbe(now, probeIntervalNanos)) {
+            return gateways.get(second);
+        }
+        return gateways.get(stats[first].score() <= stats[second].score() ? first : second);
+    }
+
+    static final class GatewayStats {
+        private final AtomicLong ewmaNanos;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicLong lastSampleNanos;
+        // When the gateway was last sampled, or probed
+        private final AtomicLong lastActivityNanos;
+
+        private GatewayStats(double seedNanos) {
+            long now = System.nanoTime();
+            this.ewmaNanos = new AtomicLong(Double.doubleToRawLongBits(seedNanos));
+            this.lastSampleNanos = new AtomicLong(now);
+            this.lastActivityNanos = new AtomicLong(now);
+        }
+
+        private void record(long latencyNanos, double smoothing, double decayNanos) {
+            long now = System.nanoTime();
+            // A stale average gives way to the new sample; a fresh one is smoothed as configured
+            double age = now - lastSampleNanos.getAndSet(now);
+            double weight = Math.max(smoothing, 1 - Math.exp(-age / decayNanos));
+            lastActivityNanos.set(now);
+
+            long current;
+            long updated;
+            do {
+                current = ewmaNanos.get();
+                double ewma = Double.longBitsToDouble(current);
+                updated = Double.doubleToRawLongBits(ewma == 0 ?
+                        latencyNanos :
+                        ewma + weight * (latencyNanos - ewma));
+            } while (!ewmaNanos.compareAndSet(current, updated));
+        }
+
+        /**
+         * Claims a probe of this gateway, if it hasn't been sampled, or probed, within the probe interval.
+         */
+        private boolean tryProbe(long now, long probeIntervalNanos) {
+            long last = lastActivityNanos.get();
+            return now - last > probeIntervalNanos && lastActivityNanos.compareAndSet(last, now);
+        }
+
+        /**
+         * The expected latency of a new request; gateways without any recorded latency, before any gateway has
+         * recorded one, are preferred, so that they are probed.
+         */
+        private double score() {
+            return Double.longBitsToDouble(ewmaNanos.get()) * (inFlight.get() + 1);
+        }
+
+        double getLatencyNanos() {
+            return Double.longBitsToDouble(ewmaNanos.get());
+        }
+
+        int getInFlight() {
+            return inFlight.get();
+        }
+    }
+
+    public static class Factory implements GatewaySelectionStrategy.Factory {
+        private final ConcurrentMap<Gateway, GatewayStats> stats = new ConcurrentHashMap<>();
+        private final double smoothing;
+        private final long failurePenaltyNanos;
+        private final long probeIntervalNanos;
+
+        /**
+         * Creates a factory with a smoothing factor of <code>0.3</code>, a failure penalty of 1 second, and a probe
+         * interval of 5 seconds.
+         */
+        public Factory() {
+            this(0.3, Duration.ofSeconds(1));
+        }
+
+        /**
+         * Creates a factory with a probe interval of 5 seconds.
+         *
+         * @param smoothing the weight, between <code>0</code> (exclusive) and <code>1</code> (inclusive),
+         *                  given to each new latency sample in the moving average
+         * @param failurePenalty the minimum latency recorded for failed requests
+         */
+        public Factory(double smoothing, Duration failurePenalty) {
+            this(smoothing, failurePenalty, Duration.ofSeconds(5));
+        }
+
+        /**
+         * @param smoothing the weight, between <code>0</code> (exclusive) and <code>1</code> (inclusive),
+         *                  given to each new latency sample in the moving average
+         * @param failurePenalty the minimum latency recorded for failed requests
+         * @param probeInterval the time after which a gateway that hasn't been selected is probed, when sampled
+         */
+        public Factory(double smoothing, Duration failurePenalty, Duration probeInterval) {
+            if (!(smoothing > 0 && smoothing <= 1)) {
+                throw new IllegalArgumentException("smoothing must be greater than 0, and not greater than 1");
+            }
+            orThrow(failurePenalty, "failurePenalty must not be null");
+            if (failurePenalty.isNegative()) {
+                throw new IllegalArgumentException("failurePenalty must not be negative");
+            }
+            this.smoothing = smoothing;
+            orThrow(probeInterval, "probeInterval must not be null");
+            if (probeInterval.isNegative() || probeInterval.isZero()) {
+                throw new IllegalArgumentException("probeInterval must be positive");
+            }
+            this.failurePenaltyNanos = failurePenalty.toNanos();
+            this.probeIntervalNanos = probeInterval.toNanos();
+        }
+
+        @Override
+        public GatewaySelectionStrategy create(List<Gateway> gateways) {
+            stats.keySet().retainAll(gateways);
+            return new LatencyAwareGatewaySelectionStrategy(gateways, stats, smoothing, failurePenaltyNanos,
+                    probeIntervalNanos);
+        }
+
+        GatewayStats getStats(Gateway gateway) {
+            return stats.get(gateway);
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package com.styra.run.discovery;
+
+import com.styra.run.ApiResponse;
+import com.styra.run.utils.TokenBucket;
+
+import java.time.DateTimeException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static com.styra.run.utils.Null.orThrow;
+
+/**
+ * A policy for spacing out, and limiting, retries of failed requests to the Styra Run API.
+ * <p>
+ * Retries are delayed by an exponential backoff with full jitter; a random delay between zero and a cap that doubles
+ * with every retry, up to a maximum delay. If the failed response carries a <code>Retry-After</code> header, the retry
+ * is delayed by at least that long; if the server asks for a longer delay than the maximum, the request isn't retried.
+ * <p>
+ * Retries are budgeted to a percentage of successful requests, so that retries can't amplify the load on the gateways
+ * during an outage by more than that percentage. A burst of retries is allowed before any request has succeeded.
+ * Only retries likely to add to the load of a struggling service are charged; those on the same gateway, and those
+ * after a response with a <code>Retry-After</code> header. The budget is tracked per {@link GatewaySelector}.
+ */
+public final class RetryPolicy {
+    private static final long NANOS_PER_SECOND = Duration.ofSeconds(1).toNanos();
+
+    private final long baseDelayNanos;
+    private final long maxDelayNanos;
+    private final double budgetRatio;
+    private final int maxBurst;
+
+    private RetryPolicy(Duration baseDelay, Duration maxDelay, double budgetPercent, int maxBurst) {
+        this.baseDelayNanos = baseDelay.toNanos();
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.budgetRatio = budgetPercent / 100;
+        this.maxBurst = maxBurst;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Creates a new, full, retry budget.
+     */
+    TokenBucket newBudget() {
+        return new TokenBucket(maxBurst, maxBurst);
+    }
+
+    /**
+     * The number of retry tokens earned by every successful request.
+     */
+    double getBudgetRatio() {
+        return budgetRatio;
+    }
+
+    /**
+     * Returns the delay before the given retry, taking the <code>Retry-After</code> header of <code>response</code>
+     * into account.
+     *
+     * @param retry the number of the retry; <code>1</code> for the first retry
+     * @param response the failed response, or <code>null</code> if the request failed without a response
+     * @return the delay in nanoseconds; or <code>-1</code> if the server asked for a longer delay than allowed
+     */
+    long getDelayNanos(int retry, ApiResponse response) {
+        long delay = getBackoffNanos(retry);
+        if (response != null) {
+            long retryAfter = parseRetryAfterNanos(response.getHeader("Retry-After"));
+            if (retryAfter > maxDelayNanos) {
+                return -1;
+            }
+            delay = Math.max(delay, retryAfter);
+        }
+        return delay;
+    }
+
+    long getBackoffNanos(int retry) {
+        if (baseDelayNanos <= 0 || maxDelayNanos <= 0) {
+            return 0;
+        }
+        long cap = baseDelayNanos;
+        for (int i = 1; i < retry && cap < maxDelayNanos; i++) {
+            cap = cap > Long.MAX_VALUE / 2 ? Long.MAX_VALUE : cap * 2;
+        }
+        cap = Math.min(cap, maxDelayNanos);
+        return ThreadLocalRandom.current().nextLong(cap + 1);
+    }
+
+    /**
+     * Parses the value of a <code>Retry-After</code> header; either a number of seconds, or an HTTP date.
+     *
+     * @return the delay in nanoseconds, or <code>0</code> if <code>value</code> is <code>null</code> or malformed
+     */
+    static long parseRetryAfterNanos(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return 0;
+        }
+
+        String trimmed = value.trim();
+        try {
+            long seconds = Long.parseLong(trimmed);
+            return seconds > 0 ? Math.min(seconds, Long.MAX_VALUE / NANOS_PER_SECOND) * NANOS_PER_SECOND : 0;
+        } catch (NumberFormatException e) {
+            // Not delay-seconds; try HTTP-date
+        }
+
+        try {
+            ZonedDateTime date = ZonedDateTime.parse(trimmed, DateTimeFormatter.RFC_1123_DATE_TIME);
+            return Math.max(0, Duration.between(ZonedDateTime.now(date.getZone()), date).toNanos());
+        } catch (DateTimeException | ArithmeticException e) {
+            return 0;
+        }
+    }
+
+    public static final class Builder {
+        private Duration baseDelay = Duration.ofMillis(50);
+        private Duration maxDelay = Duration.ofSeconds(2);
+        private double budgetPercent = 20;
+        private int maxBurst = 10;
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the cap of the delay before the first retry; the cap is doubled for every subsequent retry.
+         * Defaults to 50 milliseconds.
+         *
+         * @param delay the base delay
+         * @return this builder
+         */
+        public Builder baseDelay(Duration delay) {
+            this.baseDelay = requireNotNegative(delay);
+            return this;
+        }
+
+        /**
+         * Sets the maximum delay before a retry; also the longest <code>Retry-After</code> delay that is honored.
+         * Defaults to 2 seconds.
+         *
+         * @param delay the maximum delay
+         * @return this builder
+         */
+        public Builder maxDelay(Duration delay) {
+            this.maxDelay = requireNotNegative(delay);
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of retries, as a percentage of successful requests. Defaults to <code>20</code>.
+         *
+         * @param percent the retry budget, between <code>0</code> and <code>100</code>
+         * @return this builder
+         */
+        public Builder budget(double percent) {
+            if (percent < 0 || percent > 100) {
+                throw new IllegalArgumentException("percent must be between 0 and 100");
+            }
+            this.budgetPercent = percent;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of retries that can be made in a burst, such as before any request has succeeded.
+         * Defaults to <code>10</code>.
+         *
+         * @param retries the maximum number of retries in a burst
+         * @return this builder
+         */
+        public Builder maxBurst(int retries) {
+            if (retries <= 0) {
+                throw new IllegalArgumentException("retries must be positive");
+            }
+            this.maxBurst = retries;
+            return this;
+        }
+
+        public RetryPolicy build() {
+            return new RetryPolicy(baseDelay, maxDelay, budgetPercent, maxBurst);
+        }
+
+        private static Duration requireNotNegative(Duration duration) {
+            orThrow(duration, "duration must not be null");
+            if (duration.isNegative()) {
+                throw new IllegalArgumentException("duration must not be negative");
+            }
+            return duration;
+        }
+    }
+}
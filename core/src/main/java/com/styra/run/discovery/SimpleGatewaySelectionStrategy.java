@@ -21,6 +21,14 @@ public class SimpleGatewaySelectionStrategy implements GatewaySelectionStrategy
         return gateways.get(index.updateAndGet((i) -> (i + 1) % gateways.size()));
     }
 
+    @Override
+    public Gateway alternativeTo(Gateway gateway) {
+        if (gateways.size() < 2) {
+            return null;
+        }
+        return gateways.get((gateways.indexOf(gateway) + 1) % gateways.size());
+    }
+
     @Override
     public int size() {
         return gateways.size();
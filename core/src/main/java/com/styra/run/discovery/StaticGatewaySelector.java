@@ -6,7 +6,14 @@ public final class StaticGatewaySelector extends GatewaySelector {
     private final List<Gateway> gateways;
 
     public StaticGatewaySelector(GatewaySelectionStrategy.Factory gatewaySelectionStrategyFactory, int maxAttempts, List<Gateway> gateways) {
-        super(gatewaySelectionStrategyFactory, maxAttempts);
+        this(gatewaySelectionStrategyFactory, maxAttempts, Config.DEFAULT, gateways);
+    }
+
+    public StaticGatewaySelector(GatewaySelectionStrategy.Factory gatewaySelectionStrategyFactory,
+                                 int maxAttempts,
+                                 Config config,
+                                 List<Gateway> gateways) {
+        super(gatewaySelectionStrategyFactory, maxAttempts, config);
         this.gateways = gateways;
     }
 
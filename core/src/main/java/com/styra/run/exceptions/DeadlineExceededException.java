@@ -0,0 +1,10 @@
+package com.styra.run.exceptions;
+
+/**
+ * Thrown when a request to the Styra Run API didn't complete before its {@link com.styra.run.Deadline}.
+ */
+public class DeadlineExceededException extends StyraRunException {
+    public DeadlineExceededException() {
+        super("Deadline exceeded");
+    }
+}
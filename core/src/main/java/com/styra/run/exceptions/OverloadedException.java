@@ -0,0 +1,11 @@
+package com.styra.run.exceptions;
+
+/**
+ * Thrown when a request to the Styra Run API is rejected without being sent, because the client already has
+ * as many requests in flight, and waiting, as its concurrency limit allows.
+ */
+public class OverloadedException extends StyraRunException {
+    public OverloadedException(String message) {
+        super(message);
+    }
+}
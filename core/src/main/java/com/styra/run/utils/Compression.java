@@ -0,0 +1,106 @@
+package com.styra.run.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Encoding and decoding of HTTP bodies with the <code>gzip</code> and <code>deflate</code> content-codings.
+ */
+public final class Compression {
+    public static final String GZIP = "gzip";
+    public static final String DEFLATE = "deflate";
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private Compression() {
+    }
+
+    /**
+     * Normalizes a <code>Content-Encoding</code> header value to one of the supported content-codings.
+     *
+     * @param contentEncoding the header value; may be <code>null</code>
+     * @return {@link #GZIP}, {@link #DEFLATE}, or <code>null</code> if the coding isn't supported
+     */
+    public static String toSupportedEncoding(String contentEncoding) {
+        if (contentEncoding == null) {
+            return null;
+        }
+        String encoding = contentEncoding.trim().toLowerCase(Locale.ROOT);
+        if (GZIP.equals(encoding) || "x-gzip".equals(encoding)) {
+            return GZIP;
+        }
+        if (DEFLATE.equals(encoding)) {
+            return DEFLATE;
+        }
+        return null;
+    }
+
+    public static byte[] gzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, bytes.length / 4));
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out, BUFFER_SIZE)) {
+            gzip.write(bytes);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Returns a stream decoding <code>bytes</code> as it's read, without first decoding it in full. The stream must be
+     * closed, to release the native memory of its decoder.
+     *
+     * @param bytes the encoded bytes
+     * @param encoding {@link #GZIP} or {@link #DEFLATE}
+     * @return an {@link InputStream} of the decoded bytes
+     * @throws IOException if the encoded bytes are malformed
+     */
+    public static InputStream decodingStream(byte[] bytes, String encoding) throws IOException {
+        InputStream in = new ByteArrayInputStream(bytes);
+        if (GZIP.equals(encoding)) {
+            return new GZIPInputStream(in, BUFFER_SIZE);
+        }
+        if (DEFLATE.equals(encoding)) {
+            // "deflate" is meant to be zlib-wrapped, but some servers send raw deflate data
+            Inflater inflater = new Inflater(!isZlibWrapped(bytes));
+            return new InflaterInputStream(in, inflater, BUFFER_SIZE) {
+                @Override
+                public void close() throws IOException {
+                    // InflaterInputStream only ends inflaters it created itself; release the native memory now,
+                    // rather than when the inflater is garbage collected
+                    try {
+                        super.close();
+                    } finally {
+                        inflater.end();
+                    }
+                }
+            };
+        }
+        throw new IllegalArgumentException(String.format("Unsupported content-coding '%s'", encoding));
+    }
+
+    public static byte[] decode(byte[] bytes, String encoding) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length * 4);
+        try (InputStream in = decodingStream(bytes, encoding)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static boolean isZlibWrapped(byte[] bytes) {
+        if (bytes.length < 2) {
+            return false;
+        }
+        int cmf = bytes[0] & 0xFF;
+        int flg = bytes[1] & 0xFF;
+        return (cmf & 0x0F) == 8 && ((cmf << 8) | flg) % 31 == 0;
+    }
+}
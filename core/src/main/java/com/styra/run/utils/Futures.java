@@ -4,6 +4,7 @@ import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
@@ -102,6 +103,64 @@ public final class Futures {
         return future;
     }
 
+    /**
+     * Cancels <code>source</code> when <code>dependent</code> is cancelled; for propagating cancellation from a
+     * dependent stage, such as one returned by {@link CompletableFuture#thenApply(Function)}, back to the future that
+     * does the actual work.
+     *
+     * @param dependent the future handed to the caller
+     * @param source the future to cancel along with <code>dependent</code>
+     * @return <code>dependent</code>
+     */
+    public static <T> CompletableFuture<T> propagateCancellation(CompletableFuture<T> dependent, Future<?> source) {
+        dependent.whenComplete((v, e) -> {
+            if (dependent.isCancelled()) {
+                source.cancel(true);
+            }
+        });
+        return dependent;
+    }
+
+    /**
+     * Like {@link CompletableFuture#thenCompose(Function)}, except that cancelling the returned future also cancels
+     * the future returned by <code>fn</code>. <code>future</code> itself is never cancelled, as it might be shared.
+     *
+     * @param future the future to compose
+     * @param fn the function returning the composed future
+     * @return a cancellable {@link CompletableFuture} completed like the future returned by <code>fn</code>
+     */
+    public static <T, U> CompletableFuture<U> composeCancellable(CompletableFuture<T> future,
+                                                                 Function<? super T, CompletableFuture<U>> fn) {
+        CompletableFuture<U> result = new CompletableFuture<>();
+        future.whenComplete((value, e) -> {
+            if (e != null) {
+                result.completeExceptionally(e instanceof CompletionException ? e.getCause() : e);
+                return;
+            }
+            if (result.isDone()) {
+                return;
+            }
+
+            CompletableFuture<U> next;
+            try {
+                next = fn.apply(value);
+            } catch (Throwable t) {
+                result.completeExceptionally(t instanceof CompletionException ? t.getCause() : t);
+                return;
+            }
+            propagateCancellation(result, next);
+            next.whenComplete((nextValue, nextError) -> {
+                if (nextError != null) {
+                    result.completeExceptionally(
+                            nextError instanceof CompletionException ? nextError.getCause() : nextError);
+                } else {
+                    result.complete(nextValue);
+                }
+            });
+        });
+        return result;
+    }
+
     public static Throwable unwrapException(Throwable e) {
         if (e instanceof CompletionException || e instanceof ExecutionException) {
             return unwrapException(e.getCause());
@@ -0,0 +1,83 @@
+package com.styra.run.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executors for running blocking requests to the Styra Run API off the calling thread;
+ * e.g. by {@link com.styra.run.BlockingApiClient}.
+ */
+public final class RequestExecutors {
+    private static final Logger logger = LoggerFactory.getLogger(RequestExecutors.class);
+
+    private static final Method NEW_VIRTUAL_THREAD_EXECUTOR = findVirtualThreadExecutorFactory();
+
+    private RequestExecutors() {
+    }
+
+    /**
+     * @return <code>true</code> if the running JVM supports virtual threads (Java 21+); <code>false</code> otherwise
+     */
+    public static boolean isVirtualThreadsSupported() {
+        return NEW_VIRTUAL_THREAD_EXECUTOR != null;
+    }
+
+    /**
+     * Creates an executor that runs every task on a new virtual thread, if the running JVM supports virtual threads;
+     * otherwise an executor of at most <code>fallbackMaxThreads</code> platform threads.
+     *
+     * @param fallbackMaxThreads the maximum number of platform threads, if virtual threads aren't supported
+     * @return a new {@link ExecutorService}
+     * @see #platformThreads(int)
+     */
+    public static ExecutorService virtualThreadPerTask(int fallbackMaxThreads) {
+        if (NEW_VIRTUAL_THREAD_EXECUTOR != null) {
+            try {
+                return (ExecutorService) NEW_VIRTUAL_THREAD_EXECUTOR.invoke(null);
+            } catch (ReflectiveOperationException e) {
+                logger.debug("Failed to create virtual-thread executor; falling back to platform threads", e);
+            }
+        }
+        return platformThreads(fallbackMaxThreads);
+    }
+
+    /**
+     * Creates an executor of at most <code>maxThreads</code> daemon platform threads. Idle threads are let go after a
+     * minute. Tasks submitted while all threads are busy wait in an unbounded queue.
+     *
+     * @param maxThreads the maximum number of threads
+     * @return a new {@link ExecutorService}
+     */
+    public static ExecutorService platformThreads(int maxThreads) {
+        if (maxThreads <= 0) {
+            throw new IllegalArgumentException("maxThreads must be positive");
+        }
+
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(maxThreads, maxThreads,
+                1, TimeUnit.MINUTES,
+                new LinkedBlockingQueue<>(),
+                (runnable) -> {
+                    Thread thread = new Thread(runnable, "styra-run-request-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static Method findVirtualThreadExecutorFactory() {
+        try {
+            return java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
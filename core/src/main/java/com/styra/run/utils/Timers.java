@@ -0,0 +1,63 @@
+package com.styra.run.utils;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A shared timer for scheduling delayed tasks without blocking the calling thread.
+ * <p>
+ * Scheduled tasks are run on a single daemon thread, and must therefore be short-lived; tasks that aren't, such as
+ * ones making requests, are scheduled to be handed off to an {@link Executor} instead.
+ */
+public final class Timers {
+    private Timers() {
+    }
+
+    public static ScheduledFuture<?> schedule(Runnable task, Duration delay) {
+        return schedule(task, delay.toNanos());
+    }
+
+    public static ScheduledFuture<?> schedule(Runnable task, long delayNanos) {
+        return Holder.SCHEDULER.schedule(task, delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Schedules <code>task</code> to be run on <code>executor</code>, rather than on the timer thread, after the
+     * delay.
+     *
+     * @param task the task to run
+     * @param delayNanos the delay, in nanoseconds
+     * @param executor the {@link Executor} to run <code>task</code> on, or <code>null</code> for the default
+     *                 asynchronous executor of {@link CompletableFuture}
+     * @return a {@link ScheduledFuture} that can be cancelled before <code>task</code> has been handed off
+     */
+    public static ScheduledFuture<?> schedule(Runnable task, long delayNanos, Executor executor) {
+        return schedule(() -> execute(task, executor), delayNanos);
+    }
+
+    private static void execute(Runnable task, Executor executor) {
+        if (executor != null) {
+            try {
+                executor.execute(task);
+                return;
+            } catch (RejectedExecutionException e) {
+                // Such as when the executor has been shut down; the task must still run
+            }
+        }
+        CompletableFuture.runAsync(task);
+    }
+
+    private static final class Holder {
+        private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+            Thread thread = new Thread(runnable, "styra-run-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
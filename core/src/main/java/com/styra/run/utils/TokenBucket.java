@@ -0,0 +1,60 @@
+package com.styra.run.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lock-free token bucket, for budgeting optional extra work, such as retries or hedged requests,
+ * to a fraction of regular work.
+ * <p>
+ * Tokens are deposited as regular work is done, and withdrawn for extra work; the balance never exceeds the capacity
+ * of the bucket.
+ */
+public final class TokenBucket {
+    private static final long SCALE = 1000;
+
+    private final long capacity;
+    private final AtomicLong tokens;
+
+    /**
+     * @param capacity the maximum number of tokens the bucket can hold
+     * @param initial the number of tokens initially in the bucket
+     */
+    public TokenBucket(double capacity, double initial) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.capacity = scale(capacity);
+        this.tokens = new AtomicLong(Math.min(this.capacity, Math.max(0, scale(initial))));
+    }
+
+    public void deposit(double amount) {
+        long scaled = scale(amount);
+        tokens.getAndUpdate((current) -> Math.min(capacity, current + scaled));
+    }
+
+    /**
+     * Withdraws <code>amount</code> tokens, if available.
+     *
+     * @param amount the number of tokens to withdraw
+     * @return <code>true</code> if the tokens were withdrawn; <code>false</code> if there weren't enough tokens
+     */
+    public boolean tryWithdraw(double amount) {
+        long scaled = scale(amount);
+        long current;
+        do {
+            current = tokens.get();
+            if (current < scaled) {
+                return false;
+            }
+        } while (!tokens.compareAndSet(current, current - scaled));
+        return true;
+    }
+
+    public double getTokens() {
+        return (double) tokens.get() / SCALE;
+    }
+
+    private static long scale(double amount) {
+        return Math.round(amount * SCALE);
+    }
+}
@@ -130,6 +130,35 @@ abstract class AbstractApiClientSpec extends Specification {
         userAgent << ['', 'foobar']
     }
 
+    def "API-client exposes response headers"() {
+        given: 'a server mocking the Styra Run API'
+        def mockServer = new MockWebServer()
+        mockServer.enqueue(new MockResponse()
+                .setResponseCode(503)
+                .addHeader('Retry-After', '3')
+                .addHeader('X-Foo', 'bar')
+                .addHeader('X-Foo', 'baz'))
+
+        mockServer.start()
+        def uri = mockServer.url('/').uri()
+
+        and: 'an API client'
+        def client = createApiClient(new ApiClient.Config(SSLContext.getDefault(),
+                Duration.ofSeconds(2), Duration.ofSeconds(2), "test"))
+
+        when: 'a request is made'
+        def response = client.request(GET, uri, [:], null).get()
+
+        then: 'the response headers are available, by case-insensitive name'
+        response.getHeader('retry-after') == '3'
+        response.getHeader('Retry-After') == '3'
+        response.headers['x-foo'] as Set == ['bar', 'baz'] as Set
+        response.getHeader('X-Missing') == null
+
+        cleanup:
+        mockServer.shutdown()
+    }
+
 //    @Ignore("Flaky: Fails with TimeoutException on GitHub")
 //    @Retry(mode = SETUP_FEATURE_CLEANUP, exceptions = [TimeoutException.class])
 //    @Unroll
@@ -1,5 +1,15 @@
 package com.styra.run
 
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import spock.lang.Unroll
+
+import javax.net.ssl.SSLContext
+import java.time.Duration
+
+import static com.styra.run.ApiClient.Method.GET
+import static com.styra.run.ApiClient.Method.POST
+
 class BlockingApiClientSpec extends AbstractApiClientSpec {
     @Override
     ApiClient createApiClient(ApiClient.Config config) {
@@ -25,4 +35,42 @@ class BlockingApiClientSpec extends AbstractApiClientSpec {
     String getExpectedRequestTimeoutExceptionMessage() {
         return 'Read timed out'
     }
+
+    @Unroll
+    def "Connections are reused across requests (status: #status, chunked: #chunked)"() {
+        given: 'a server mocking the Styra Run API'
+        def mockServer = new MockWebServer()
+        3.times {
+            def response = new MockResponse().setResponseCode(status)
+            if (chunked) {
+                response.setChunkedBody('{"result": "some response"}', 4)
+            } else {
+                response.setBody('{"result": "some response"}')
+            }
+            mockServer.enqueue(response)
+        }
+        mockServer.start()
+        def uri = mockServer.url('/').uri()
+
+        and: 'an API client'
+        def client = createApiClient(new ApiClient.Config(SSLContext.getDefault(),
+                Duration.ofSeconds(2), Duration.ofSeconds(2), 'foo'))
+
+        when: 'requests are made'
+        def responses = (1..3).collect {
+            client.request(it == 2 ? POST : GET, uri, [:], it == 2 ? '{"input": 42}' : null).get()
+        }
+
+        then: 'all response bodies are read in full'
+        responses.every { it.statusCode == status && it.body == '{"result": "some response"}' }
+
+        and: 'all requests were sent over the same connection'
+        (0..2).collect { mockServer.takeRequest().sequenceNumber } == [0, 1, 2]
+
+        cleanup:
+        mockServer.shutdown()
+
+        where:
+        [status, chunked] << [[200, 404, 500], [false, true]].combinations()
+    }
 }
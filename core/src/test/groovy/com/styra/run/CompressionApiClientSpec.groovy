@@ -0,0 +1,129 @@
+package com.styra.run
+
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import okio.Buffer
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import javax.net.ssl.SSLContext
+import java.nio.charset.StandardCharsets
+import java.time.Duration
+import java.util.zip.Deflater
+import java.util.zip.DeflaterOutputStream
+import java.util.zip.GZIPInputStream
+import java.util.zip.GZIPOutputStream
+
+import static com.styra.run.ApiClient.Method.POST
+
+class CompressionApiClientSpec extends Specification {
+    def mockServer = new MockWebServer()
+
+    def setup() {
+        mockServer.start()
+    }
+
+    def cleanup() {
+        mockServer.shutdown()
+    }
+
+    @Unroll
+    def "Compressed responses are decompressed when read (encoding: #encoding)"() {
+        given: 'a server responding with a compressed body'
+        def body = '{"result": "some response"}'
+        mockServer.enqueue(new MockResponse()
+                .setHeader('Content-Encoding', encoding)
+                .setBody(new Buffer().write(compress(body.getBytes(StandardCharsets.UTF_8)))))
+
+        and: 'an API client accepting compressed responses'
+        def client = new CompressionApiClient(createApiClient(), true, 0)
+
+        when: 'a request is made'
+        def response = client.request(POST, mockServer.url('/').uri(), [:], '{}').get()
+
+        then: 'compressed responses were asked for'
+        mockServer.takeRequest().getHeader('Accept-Encoding') == 'gzip, deflate'
+
+        and: 'the body is only decompressed when read'
+        response.isBodyEncoded()
+        response.getBodyAsStream().getText(StandardCharsets.UTF_8.name()) == body
+        response.getBody() == body
+        !response.isBodyEncoded()
+
+        cleanup:
+        client.close()
+
+        where:
+        encoding  | compress
+        'gzip'    | { byte[] bytes -> gzip(bytes) }
+        'x-gzip'  | { byte[] bytes -> gzip(bytes) }
+        'deflate' | { byte[] bytes -> deflate(bytes, false) }
+        'deflate' | { byte[] bytes -> deflate(bytes, true) }
+    }
+
+    def "Uncompressed responses are passed through"() {
+        given:
+        mockServer.enqueue(new MockResponse().setBody('{"result": true}'))
+        def client = new CompressionApiClient(createApiClient(), true, 0)
+
+        when:
+        def response = client.request(POST, mockServer.url('/').uri(), [:], '{}').get()
+
+        then:
+        !response.isBodyEncoded()
+        response.getBody() == '{"result": true}'
+
+        cleanup:
+        client.close()
+    }
+
+    @Unroll
+    def "Request bodies are compressed when at least the threshold in size (threshold: #threshold)"() {
+        given:
+        mockServer.enqueue(new MockResponse().setBody('{}'))
+        def client = new CompressionApiClient(createApiClient(), false, threshold)
+        def body = '{"input": "' + ('x' * 100) + '"}'
+
+        when:
+        client.request(POST, mockServer.url('/').uri(), [:], body).get()
+
+        then:
+        def request = mockServer.takeRequest()
+        request.getHeader('Accept-Encoding') == null
+        request.getHeader('Content-Encoding') == (compressed ? 'gzip' : null)
+        def bytes = request.body.readByteArray()
+        (compressed ? gunzip(bytes) : new String(bytes, StandardCharsets.UTF_8)) == body
+
+        cleanup:
+        client.close()
+
+        where:
+        threshold | compressed
+        0         | false
+        64        | true
+        113       | true
+        114       | false
+    }
+
+    def createApiClient() {
+        return new BlockingApiClient(new ApiClient.Config(SSLContext.getDefault(),
+                Duration.ofSeconds(2), Duration.ofSeconds(2), 'foo'))
+    }
+
+    static byte[] gzip(byte[] bytes) {
+        def out = new ByteArrayOutputStream()
+        new GZIPOutputStream(out).withCloseable { it.write(bytes) }
+        return out.toByteArray()
+    }
+
+    static byte[] deflate(byte[] bytes, boolean zlibWrapped) {
+        def out = new ByteArrayOutputStream()
+        new DeflaterOutputStream(out, new Deflater(Deflater.DEFAULT_COMPRESSION, !zlibWrapped))
+                .withCloseable { it.write(bytes) }
+        return out.toByteArray()
+    }
+
+    static String gunzip(byte[] bytes) {
+        return new GZIPInputStream(new ByteArrayInputStream(bytes)).getText(StandardCharsets.UTF_8.name())
+    }
+}
@@ -0,0 +1,201 @@
+package com.styra.run
+
+import com.styra.run.test.CountingApiClient
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.time.Duration
+
+import static com.styra.run.test.apiClients.httpResult
+
+class DecisionCacheSpec extends Specification {
+    private static final List<String> DEFAULT_GATEWAYS = ['https://localhost:1234']
+
+    @Unroll
+    def "Equivalent inputs produce equal canonical forms (#first; #second)"() {
+        expect:
+        DecisionCache.canonicalize(first) == DecisionCache.canonicalize(second)
+        DecisionCache.canonicalize(first).toString() == DecisionCache.canonicalize(second).toString()
+
+        where:
+        first                              | second
+        null                               | null
+        42                                 | 42
+        [a: 1, b: 2]                       | [b: 2, a: 1]
+        [a: [c: 3, d: 4], b: [1, 2]]       | [b: [1, 2], a: [d: 4, c: 3]]
+        [1: 'one', 2: 'two']               | ['2': 'two', '1': 'one']
+        new InputContainer(new Input(42))  | [input: 42]
+    }
+
+    def "Cached decisions expire"() {
+        given: 'a cache with a short TTL'
+        def cache = DecisionCache.builder()
+                .ttl(Duration.ofMillis(50))
+                .build()
+        def key = new QueryKey('/foo', '{}'.bytes)
+
+        when: 'a decision is cached'
+        cache.put(key, new Result(true), 0)
+
+        then: 'it can be retrieved'
+        cache.get(key) == new Result(true)
+
+        when: 'the TTL has expired'
+        sleep(100)
+
+        then: 'it can no longer be retrieved'
+        cache.get(key) == null
+        cache.stats.hits == 1
+        cache.stats.misses == 1
+        cache.stats.evictions == 1
+        cache.stats.size == 0
+    }
+
+    def "Per-path TTL overrides are respected"() {
+        given: 'a cache where caching is disabled for one path'
+        def cache = DecisionCache.builder()
+                .ttl('/my/uncached/rule', Duration.ZERO)
+                .build()
+
+        expect:
+        cache.isEnabledFor('my/rule')
+        !cache.isEnabledFor('my/uncached/rule')
+        !cache.isEnabledFor('/my/uncached/rule/')
+
+        when: 'a decision for the disabled path is cached'
+        def key = new QueryKey('my/uncached/rule', '{}'.bytes)
+        cache.put(key, new Result(true), 0)
+
+        then: 'nothing was cached'
+        cache.get(key) == null
+        cache.stats.size == 0
+    }
+
+    def "Least recently used decisions are evicted when the cache is full"() {
+        given: 'a cache with room for two entries'
+        def cache = DecisionCache.builder()
+                .maxEntries(2)
+                .build()
+        def keys = (1..3).collect { new QueryKey("/$it", '{}'.bytes) }
+
+        when: 'three decisions are cached, and the first one is accessed before the third is added'
+        cache.put(keys[0], new Result(1), 0)
+        cache.put(keys[1], new Result(2), 0)
+        cache.get(keys[0])
+        cache.put(keys[2], new Result(3), 0)
+
+        then: 'the least recently used decision was evicted'
+        cache.get(keys[0]) == new Result(1)
+        cache.get(keys[1]) == null
+        cache.get(keys[2]) == new Result(3)
+        cache.stats.evictions == 1
+        cache.stats.size == 2
+    }
+
+    def "Decisions are evicted when the cache exceeds its byte limit"() {
+        given: 'a cache with a byte limit'
+        def cache = DecisionCache.builder()
+                .maxBytes(1000)
+                .build()
+
+        when: 'decisions are cached exceeding the limit'
+        (1..10).each { cache.put(new QueryKey("/$it", '{}'.bytes), new Result(it), 200) }
+
+        then: 'the cache is kept within its limit'
+        cache.stats.bytes <= 1000
+        cache.stats.size < 10
+        cache.stats.evictions == 10 - cache.stats.size
+    }
+
+    def "Cached decisions can't be modified by callers"() {
+        given: 'a cache, and a decision with a mutable value'
+        def cache = DecisionCache.builder().build()
+        def key = new QueryKey('/my/rule', '{}'.bytes)
+        def value = [roles: ['admin']]
+        cache.put(key, new Result(value, [foo: [bar: 1]]), 0)
+
+        when: 'the cached decision is modified'
+        cache.get(key).get().roles << 'root'
+
+        then: 'the modification is refused'
+        thrown(UnsupportedOperationException)
+
+        when: 'the original decision is modified'
+        value.roles << 'root'
+
+        then: 'the cached decision is unaffected'
+        cache.get(key) == new Result([roles: ['admin']], [foo: [bar: 1]])
+    }
+
+    def "Large caches are kept within their limits"() {
+        given: 'a cache large enough to be segmented'
+        def cache = DecisionCache.builder()
+                .maxEntries(1024)
+                .build()
+
+        when: 'more decisions are cached than fit'
+        (1..4096).each { cache.put(new QueryKey("/$it", '{}'.bytes), new Result(it), 0) }
+
+        then: 'the cache is kept within its limit'
+        cache.stats.size <= 1024
+        cache.stats.size > 512
+        cache.stats.evictions == 4096 - cache.stats.size
+    }
+
+    def "Queries and checks are served from the cache"() {
+        given: 'a mocked API client'
+        def client = new CountingApiClient(responseSupplier: httpResult(200, '{"result": true}'))
+
+        and: 'a client with a decision cache'
+        def styraRun = StyraRun.builder(DEFAULT_GATEWAYS, 'token')
+                .apiClientFactory({ _ -> client })
+                .decisionCache(DecisionCache.builder().build())
+                .build()
+
+        when: 'the same decision is requested several times, with equivalent inputs'
+        def first = styraRun.query('/my/rule', new Input([a: 1, b: 2])).get()
+        def second = styraRun.query('my/rule', new Input([b: 2, a: 1])).get()
+        def allowed = styraRun.check('/my/rule/', new Input([a: 1, b: 2])).get()
+
+        then: 'the API was only called once'
+        client.hitCount == 1
+        first == second
+        allowed
+
+        and: 'the cache stats reflect the lookups'
+        with(styraRun.decisionCache.get().stats) {
+            hits == 2
+            misses == 1
+            size == 1
+        }
+
+        when: 'a decision with a different input is requested'
+        styraRun.query('/my/rule', new Input([a: 2])).get()
+
+        then: 'the API was called again'
+        client.hitCount == 2
+    }
+
+    def "Failed queries are not cached"() {
+        given: 'a mocked API client that returns an error'
+        def client = new CountingApiClient(responseSupplier: httpResult(500, '{}'))
+
+        and: 'a client with a decision cache'
+        def styraRun = StyraRun.builder(DEFAULT_GATEWAYS, 'token')
+                .apiClientFactory({ _ -> client })
+                .decisionCache(DecisionCache.builder().build())
+                .build()
+
+        when: 'the same decision is requested twice'
+        2.times {
+            try {
+                styraRun.query('/my/rule').get()
+            } catch (ignored) {
+            }
+        }
+
+        then: 'the API was called both times'
+        client.hitCount == 2
+        styraRun.decisionCache.get().stats.size == 0
+    }
+}
@@ -0,0 +1,51 @@
+package com.styra.run
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.nio.charset.StandardCharsets
+
+import static com.styra.run.DecisionScanner.ALLOWED
+import static com.styra.run.DecisionScanner.DENIED
+import static com.styra.run.DecisionScanner.UNKNOWN
+
+class DecisionScannerSpec extends Specification {
+    @Unroll
+    def "The decision is read from the top-level result (body: #body)"() {
+        expect:
+        DecisionScanner.scan(body.getBytes(StandardCharsets.UTF_8)) == expected
+
+        and: 'it agrees with the decision of the parsed result'
+        def parsed = new DefaultJson().toOptionalMap(body).orElse([:])
+        expected == UNKNOWN || (expected == ALLOWED) == (parsed.result == true)
+
+        where:
+        body                                                           || expected
+        '{"result": true}'                                             || ALLOWED
+        ' {\n"result"\t:true } trailing'                               || ALLOWED
+        '{"foo": [1, -2.5e+3, "\\"}", {"bar": null}], "result": true}' || ALLOWED
+        '{"result": false}'                                            || DENIED
+        '{}'                                                           || DENIED
+        '{"foo": true}'                                                || DENIED
+        '{"result": "true"}'                                           || DENIED
+        '{"result": {"result": true}}'                                 || DENIED
+        '{"result": true, "result": null}'                             || DENIED
+        '{"result": false, "result": true}'                            || ALLOWED
+        '{"result": truex}'                                            || UNKNOWN
+        '{"result": true,}'                                            || UNKNOWN
+        '{"result": true'                                              || UNKNOWN
+        '{"foo": 01, "result": true}'                                  || UNKNOWN
+        '{"foo": "\\q", "result": true}'                               || UNKNOWN
+        '{"foo": [1 2], "result": true}'                               || UNKNOWN
+        '[true]'                                                       || UNKNOWN
+        ''                                                             || UNKNOWN
+    }
+
+    def "Deeply nested values are left to the parser"() {
+        given:
+        def body = '{"foo": ' + '[' * 300 + ']' * 300 + ', "result": true}'
+
+        expect:
+        DecisionScanner.scan(body.getBytes(StandardCharsets.UTF_8)) == UNKNOWN
+    }
+}
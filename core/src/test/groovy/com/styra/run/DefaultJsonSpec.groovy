@@ -0,0 +1,95 @@
+package com.styra.run
+
+import com.fasterxml.jackson.jr.ob.JSON
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.nio.charset.StandardCharsets
+
+class DefaultJsonSpec extends Specification {
+    private static final Json json = new DefaultJson()
+
+    @Unroll
+    def "Values are serialized like jackson-jr does (#value)"() {
+        expect: 'all serialization methods to produce the same output as jackson-jr'
+        def expected = JSON.std.asString(value)
+        json.from(value) == expected
+        new String(json.toBytes(value), StandardCharsets.UTF_8) == expected
+
+        def out = new ByteArrayOutputStream()
+        json.write(value, out)
+        out.toString(StandardCharsets.UTF_8) == expected
+
+        def writer = new StringWriter()
+        json.write(value, writer)
+        writer.toString() == expected
+
+        where:
+        value << [
+                null,
+                true,
+                0,
+                42,
+                -42L,
+                4.2,
+                4.2d,
+                new BigInteger('12345678901234567890'),
+                '',
+                'foo "bar" \n åäö',
+                [],
+                [1, 'two', [3]],
+                [:],
+                [foo: 'bar', 42: 1337, l: ['one', 'two'], n: null],
+                [nested: [deeper: [deepest: true]]],
+                ['a', 'b'] as String[]
+        ]
+    }
+
+    @Unroll
+    def "JSON objects are deserialized like jackson-jr does (#source)"() {
+        expect: 'all deserialization methods to produce the same output as jackson-jr'
+        def expected = JSON.std.mapFrom(source)
+        json.toMap(source) == expected
+        json.toMap(source.getBytes(StandardCharsets.UTF_8)) == expected
+        json.toMap(new ByteArrayInputStream(source.getBytes(StandardCharsets.UTF_8))) == expected
+
+        where:
+        source << [
+                '{}',
+                '{"result": true}',
+                '{"result": false, "foo": "bar"}',
+                '{"result": 42}',
+                '{"result": -4.2}',
+                '{"result": 12345678901234567890}',
+                '{"result": null}',
+                '{"result": [1, "two", [3], {"four": 4}]}',
+                '{"result": {"nested": {"deeper": ["deepest"]}}}',
+                '{"unicode": "åäö \\u00e5"}'
+        ]
+    }
+
+    @Unroll
+    def "Invalid JSON objects can't be deserialized (#source)"() {
+        when:
+        json.toMap(source)
+
+        then:
+        thrown(IOException)
+
+        where:
+        source << [
+                'foobar',
+                '[]',
+                '42',
+                '{"foo": ',
+                '{"foo": [1, 2'
+        ]
+    }
+
+    def "Empty JSON input is deserialized as null"() {
+        expect:
+        json.toMap('') == null
+        json.toMap(new byte[0]) == null
+        json.toOptionalMap('') == Optional.empty()
+    }
+}
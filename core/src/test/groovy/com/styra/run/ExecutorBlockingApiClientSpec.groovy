@@ -0,0 +1,64 @@
+package com.styra.run
+
+import com.styra.run.utils.RequestExecutors
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import spock.lang.Shared
+
+import javax.net.ssl.SSLContext
+import java.time.Duration
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.ThreadPoolExecutor
+
+import static com.styra.run.ApiClient.Method.GET
+import static java.util.concurrent.TimeUnit.MILLISECONDS
+
+class ExecutorBlockingApiClientSpec extends BlockingApiClientSpec {
+    @Shared
+    ExecutorService executor = RequestExecutors.virtualThreadPerTask(4)
+
+    def cleanupSpec() {
+        executor.shutdown()
+    }
+
+    @Override
+    ApiClient createApiClient(ApiClient.Config config) {
+        return new BlockingApiClient(config, executor)
+    }
+
+    def "Requests don't block the calling thread"() {
+        given: 'a server mocking the Styra Run API, with a slow response'
+        def mockServer = new MockWebServer()
+        mockServer.enqueue(new MockResponse()
+                .setBody('{}')
+                .setHeadersDelay(500, MILLISECONDS))
+        mockServer.start()
+
+        and: 'a client with an executor'
+        def config = new ApiClient.Config(SSLContext.getDefault(), Duration.ofSeconds(1), Duration.ofSeconds(2), 'foo')
+        def client = createApiClient(config)
+
+        when: 'a request is made'
+        def future = client.request(GET, mockServer.url('/').uri(), [:], null)
+
+        then: 'the call returns before the response has arrived'
+        !future.isDone()
+
+        and: 'the response eventually arrives'
+        future.get().statusCode == 200
+
+        cleanup:
+        mockServer.shutdown()
+    }
+
+    def "Virtual-thread executor falls back to platform threads on older JVMs"() {
+        when: 'a virtual-thread executor is requested'
+        def executor = RequestExecutors.virtualThreadPerTask(2)
+
+        then: 'a thread pool is used when virtual threads are not supported'
+        RequestExecutors.virtualThreadsSupported || executor instanceof ThreadPoolExecutor
+
+        cleanup:
+        executor.shutdown()
+    }
+}
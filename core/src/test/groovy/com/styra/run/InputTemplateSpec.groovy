@@ -0,0 +1,87 @@
+package com.styra.run
+
+import com.styra.run.test.CountingApiClient
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import static com.styra.run.InputTemplate.slot
+import static java.util.concurrent.CompletableFuture.completedFuture
+
+class InputTemplateSpec extends Specification {
+    def json = new DefaultJson()
+
+    @Unroll
+    def "A bound template serializes like an equivalent input (values: #values)"() {
+        given:
+        def template = InputTemplate.compile(json, [
+                action  : 'read',
+                resource: [type: 'doc', id: slot(0)],
+                subject : slot(1),
+                ids     : [slot(0), 'constant']])
+
+        when:
+        def input = template.bind(values as Object[])
+        def body = input.toRequestBody()
+
+        then: 'the request body is as if the input was serialized as a whole'
+        json.toMap(body) == json.toMap(json.toBytes(new InputContainer(new Input(expected)).toMap()))
+
+        and: 'the input value has the slots filled in'
+        input.getValue() == expected
+
+        where:
+        values                          || expected
+        ['some-id', 'alice']            || [action: 'read', resource: [type: 'doc', id: 'some-id'], subject: 'alice', ids: ['some-id', 'constant']]
+        [42, true]                      || [action: 'read', resource: [type: 'doc', id: 42], subject: true, ids: [42, 'constant']]
+        ['"quoted"\n', [name: 'ålice']] || [action: 'read', resource: [type: 'doc', id: '"quoted"\n'], subject: [name: 'ålice'], ids: ['"quoted"\n', 'constant']]
+        [1.5, null]                     || [action: 'read', resource: [type: 'doc', id: 1.5], ids: [1.5, 'constant']]
+    }
+
+    @Unroll
+    def "Templates with slot indexes out of sequence are rejected (shape: #shape)"() {
+        when:
+        InputTemplate.compile(json, shape)
+
+        then:
+        def e = thrown(IllegalArgumentException)
+        e.message == expectedMessage
+
+        where:
+        shape                                || expectedMessage
+        [a: slot(1)]                         || 'Slot index 1 is out of sequence'
+        [a: slot(0), b: slot(2), c: 'c']     || 'Slot index 2 is out of sequence'
+        [a: slot(0), b: slot(0), c: slot(2)] || 'Slot index 1 is missing'
+    }
+
+    def "The number of bound values must match the number of slots"() {
+        given:
+        def template = InputTemplate.compile(json, [a: slot(0), b: slot(1)])
+
+        when:
+        template.bind('only one')
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+
+    def "Queries with a bound template send the spliced request body"() {
+        given: 'a mocked API client'
+        def bodies = []
+        def client = new CountingApiClient(responseSupplier: { method, requestUri, headers, body ->
+            bodies << body
+            return completedFuture(new ApiResponse(200, '{"result": true}'))
+        })
+        def styraRun = StyraRun.builder(['https://localhost:1234'], 'token')
+                .apiClientFactory({ _ -> client })
+                .build()
+        def template = InputTemplate.compile(styraRun.getJson(), [action: 'read', subject: slot(0)])
+
+        when:
+        def allowed = styraRun.check('/my/path', template.bind('alice')).get()
+
+        then:
+        allowed
+        bodies.size() == 1
+        json.toMap(bodies[0] as String) == [input: [action: 'read', subject: 'alice']]
+    }
+}
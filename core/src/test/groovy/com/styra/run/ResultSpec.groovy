@@ -214,4 +214,63 @@ class ResultSpec extends Specification {
         [foo: 42]   | 'foo' | Integer || 42                     | null
         [foo: 42]   | 'foo' | Float   || null                   | "Result attribute 'foo' was expected to be of type java.lang.Float, but was java.lang.Integer"
     }
+
+    @Unroll
+    def "A lazy Result equals a Result built from the parsed response (#body)"() {
+        given: 'a Result backed by the response bytes, and one built from the parsed response'
+        def json = new DefaultJson()
+        def lazy = LazyResults.result(body.getBytes('UTF-8'))
+        def eager = Result.fromResponseMap(json.toMap(body).findAll { it.value != null })
+
+        expect:
+        lazy.hasValue() == eager.hasValue()
+        lazy.isBooleanValue() == eager.isBooleanValue()
+        lazy.isValueType(Map) == eager.isValueType(Map)
+        lazy.isValueType(List) == eager.isValueType(List)
+        lazy == eager
+        lazy.get() == eager.get()
+        lazy.getAttributes() == eager.getAttributes()
+
+        where:
+        body << [
+                '{}',
+                '{"result": true}',
+                '{"result": false, "foo": 1}',
+                '{"result": null, "foo": null}',
+                '{"result": 4.2}',
+                '{"result": "bar"}',
+                '{"result": {"foo": [1, {"bar": null}]}, "baz": "qux"}',
+                '{"foo": {"result": 1}, "result": [1, "two", 3.5]}'
+        ]
+    }
+
+    def "A lazy ListResult equals a ListResult built from the parsed response"() {
+        given:
+        def body = '{"result": [{"result": true}, {"result": {"foo": [1]}, "bar": 2}, {}], "baz": {"qux": 1}}'
+        def lazy = LazyResults.listResult(body.getBytes('UTF-8'))
+
+        expect:
+        lazy.size() == 3
+        lazy == ListResult.fromResponseMap(new DefaultJson().toMap(body))
+    }
+
+    @Unroll
+    def "Responses that can't be lazily parsed are left to be parsed as a whole (#body)"() {
+        expect:
+        LazyResults.result(body.getBytes('UTF-8')) == null
+        LazyResults.listResult(body.getBytes('UTF-8')) == null
+
+        where:
+        body << [
+                '',
+                '[1]',
+                '{"result": [1,'
+        ]
+    }
+
+    def "A lazy ListResult requires a list of objects as result"() {
+        expect:
+        LazyResults.listResult('{"result": [1]}'.getBytes('UTF-8')) == null
+        LazyResults.listResult('{"result": 42}'.getBytes('UTF-8')) == null
+    }
 }
@@ -1,12 +1,17 @@
 package com.styra.run
 
 import com.fasterxml.jackson.jr.ob.JSON
+import com.styra.run.exceptions.DeadlineExceededException
 import com.styra.run.exceptions.StyraRunHttpException
 import com.styra.run.test.CountingApiClient
 import spock.lang.Specification
 import spock.lang.Unroll
+import spock.util.concurrent.PollingConditions
 
+import java.time.Duration
+import java.util.concurrent.CompletableFuture
 import java.util.concurrent.ExecutionException
+import java.util.concurrent.TimeUnit
 
 import static com.styra.run.ApiClient.Method.DELETE
 import static com.styra.run.ApiClient.Method.GET
@@ -360,6 +365,145 @@ class StyraRunSpec extends Specification {
         client.hitCount == 1
     }
 
+    def "Duplicate batch query items are only sent once"() {
+        given: 'a mocked API client that echoes the effective input of each item'
+        def requestBodies = []
+        def client = new CountingApiClient(responseSupplier: { method, requestUri, headers, requestBody ->
+            def body = JSON.std.mapFrom(requestBody)
+            requestBodies << body
+            def responseBody = [result: body.items.collect { [result: "${it.path}:${it.input ?: body.input}" as String] }]
+            return completedFuture(new ApiResponse(200, JSON.std.asString(responseBody)))
+        })
+
+        when: 'a batch query with duplicate items is made'
+        def result = StyraRun.builder(DEFAULT_GATEWAYS, 'token')
+                .apiClientFactory({_ -> client })
+                .build()
+                .batchQuery([
+                        new Item('/one', new Input(1)),
+                        new Item('/two'),
+                        new Item('/one', new Input(1)),
+                        new Item('one', new Input(1)),
+                        new Item('/two', new Input(42)),
+                        new Item('/one', new Input(2)),
+                        new Item('/two', new Input(42))
+                ], new Input(42))
+                .get()
+
+        then: 'only unique items were sent, and items with the global input were sent without input'
+        client.hitCount == 1
+        requestBodies[0] == [
+                items: [
+                        [path: '/one', input: 1],
+                        [path: '/two'],
+                        [path: '/one', input: 2]
+                ],
+                input: 42
+        ]
+
+        and: 'the results were fanned out to every item, in order'
+        result.get().collect { it.get() } == [
+                '/one:1', '/two:42', '/one:1', '/one:1', '/two:42', '/one:2', '/two:42'
+        ]
+    }
+
+    def "The global input, and shared item inputs, are serialized once per batch query"() {
+        given: 'a mocked API client'
+        def requestBodies = []
+        def client = new CountingApiClient(responseSupplier: { method, requestUri, headers, requestBody ->
+            def body = JSON.std.mapFrom(requestBody)
+            requestBodies << body
+            def responseBody = [result: body.items.collect { [result: true] }]
+            return completedFuture(new ApiResponse(200, JSON.std.asString(responseBody)))
+        })
+
+        and: 'a JSON serializer counting the serializations of each value'
+        def serializations = [:].withDefault { 0 }
+        def json = new DefaultJson() {
+            @Override
+            byte[] toBytes(Object value) throws IOException {
+                serializations[value]++
+                return super.toBytes(value)
+            }
+        }
+
+        and: 'inputs shared across chunks'
+        def globalValue = [subject: 'alice', roles: ['admin', 'user']]
+        def sharedValue = [resource: 'doc']
+
+        when: 'a batch query, split into chunks, is made'
+        StyraRun.builder(DEFAULT_GATEWAYS, 'token')
+                .apiClientFactory({_ -> client })
+                .json(json)
+                .batchQueryItemsMax(2)
+                .build()
+                .batchQuery([
+                        new Item('/one', new Input(sharedValue)),
+                        new Item('/two', new Input(sharedValue)),
+                        new Item('/three'),
+                        new Item('/four', new Input(sharedValue)),
+                        new Item('/five', new Input(1))
+                ], new Input(globalValue))
+                .get()
+
+        then: 'every chunk carries the global input'
+        client.hitCount == 3
+        requestBodies == [
+                [items: [[path: '/one', input: sharedValue], [path: '/two', input: sharedValue]], input: globalValue],
+                [items: [[path: '/three'], [path: '/four', input: sharedValue]], input: globalValue],
+                [items: [[path: '/five', input: 1]], input: globalValue]
+        ]
+
+        and: 'the global input, and the shared item input, were only serialized once'
+        serializations[globalValue] == 1
+        serializations[sharedValue] == 1
+    }
+
+    def "Batch query results can be consumed per item, as chunks complete"() {
+        given: 'a mocked API client that responds when told to'
+        def pendingResponses = []
+        def client = new CountingApiClient(responseSupplier: { method, requestUri, headers, requestBody ->
+            def response = new CompletableFuture<ApiResponse>()
+            pendingResponses << [response: response, items: JSON.std.mapFrom(requestBody).items]
+            return response
+        })
+
+        and: 'a client with two items per batch request'
+        def styraRun = StyraRun.builder(DEFAULT_GATEWAYS, 'token')
+                .apiClientFactory({_ -> client })
+                .batchQueryItemsMax(2)
+                .build()
+
+        when: 'a batch query is made'
+        def results = styraRun.batchQueryEach((1..5).collect { new Item('/my/rule', new Input(it)) }, null)
+
+        then: 'one request per chunk was made'
+        client.hitCount == 3
+        results.size() == 5
+        results.every { !it.done }
+
+        when: 'the API responds to the second request'
+        def second = pendingResponses[1]
+        second.response.complete(new ApiResponse(200,
+                JSON.std.asString([result: second.items.collect { [result: it.input] }])))
+
+        then: 'only the results of the second request are available'
+        results.collect { it.done } == [false, false, true, true, false]
+        results[2].get().get() == 3
+        results[3].get().get() == 4
+
+        when: 'the first request fails, and the API responds to the last request'
+        pendingResponses[0].response.complete(new ApiResponse(500, '{}'))
+        def last = pendingResponses[2]
+        last.response.complete(new ApiResponse(200,
+                JSON.std.asString([result: last.items.collect { [result: it.input] }])))
+
+        then: 'the results of the first request are failed'
+        results[0].completedExceptionally
+        results[1].completedExceptionally
+        results[4].get().get() == 5
+    }
+
     @Unroll
     def "A boolean decision is returned for checks"() {
         given: 'a mocked API client'
@@ -382,11 +526,43 @@ class StyraRunSpec extends Specification {
         client.hitCount == 1
 
         where:
-        responseBody        || expectedDecision
-        '{}'                || false
-        '{"result": true}'  || true
-        '{"result": false}' || false
-        '{"result": 42}'    || false
+        responseBody                                    || expectedDecision
+        '{}'                                            || false
+        '{"result": true}'                              || true
+        '{"result": false}'                             || false
+        '{"result": 42}'                                || false
+        '{"result": "true"}'                            || false
+        '{"result": [true]}'                            || false
+        '{"foo": {"bar": [1, "}"]}, "result": true}'    || true
+        '{"result": true, "result": false}'             || false
+        '{"result": true'                               || false
+        '{"result": true, "foo": [1 2]}'                || false
+    }
+
+    def "Boolean decisions are returned for batch checks"() {
+        given: 'a mocked API client'
+        def client = new CountingApiClient(responseSupplier: { method, requestUri, headers, requestBody ->
+            def items = JSON.std.mapFrom(requestBody).items
+            return completedFuture(new ApiResponse(200,
+                    JSON.std.asString([result: items.collect { it.input == 'error' ? [error: [code: 'err']] : [result: it.input] }])))
+        })
+
+        and: 'a client with two items per batch request'
+        def styraRun = StyraRun.builder(DEFAULT_GATEWAYS, 'token')
+                .apiClientFactory({_ -> client })
+                .batchQueryItemsMax(2)
+                .build()
+
+        when: 'a batch check is made'
+        def decisions = styraRun.checkAll([true, false, 42, true, 'error', true]
+                .collect { new Item('/my/rule', new Input(it)) }, null)
+                .get()
+
+        then: 'the bits of the allowed items are set'
+        decisions == BitSet.valueOf([0b101001] as long[])
+
+        and: 'duplicate items were only sent once'
+        client.hitCount == 2
     }
 
     @Unroll
@@ -420,6 +596,278 @@ class StyraRunSpec extends Specification {
         '{"result": 42}'    | { result -> result.get() == 42 } || true
     }
 
+    @Unroll
+    def "Prepared queries reuse their request URI and headers (path: '#path')"() {
+        given: 'a mocked API client'
+        def uris = []
+        def headerSets = []
+        def client = new CountingApiClient(responseSupplier: { method, requestUri, headers, body ->
+            assert method == POST
+            uris << requestUri
+            headerSets << headers
+            return completedFuture(new ApiResponse(200, '{"result": true}'))
+        })
+
+        and: 'a prepared query'
+        def prepared = StyraRun.builder(DEFAULT_GATEWAYS, 'token')
+                .apiClientFactory({_ -> client })
+                .build()
+                .prepare(path)
+
+        when: 'the prepared query is used'
+        def result = prepared.query(new Input('foo')).get()
+        def decision = prepared.check(new Input('bar')).get()
+
+        then: 'the queries are made to the same URI, with the same headers'
+        result.get() == true
+        decision
+        client.hitCount == 2
+        uris == [URI.create(expectedUri)] * 2
+        uris[0].is(uris[1])
+        headerSets.every { it == ['Authorization': 'Bearer token', 'Content-Type': 'application/json'] }
+
+        where:
+        path        || expectedUri
+        ''          || "$DEFAULT_GATEWAY/data"
+        '/my/path/' || "$DEFAULT_GATEWAY/data/my/path"
+    }
+
+    def "Concurrent identical queries share a single request when coalescing is enabled"() {
+        given: 'a mocked API client that responds when told to'
+        def pendingResponse = new CompletableFuture<ApiResponse>()
+        def client = new CountingApiClient(responseSupplier: { method, requestUri, headers, body -> pendingResponse })
+
+        and: 'a client with request coalescing enabled'
+        def styraRun = StyraRun.builder(DEFAULT_GATEWAYS, 'token')
+                .apiClientFactory({_ -> client })
+                .requestCoalescing(true)
+                .build()
+
+        when: 'identical queries are made concurrently, together with a different query'
+        def identical = (1..5).collect { styraRun.check('/my/rule', new Input(42)) }
+        def different = styraRun.check('/my/other/rule', new Input(42))
+
+        and: 'the API responds'
+        pendingResponse.complete(new ApiResponse(200, '{"result": true}'))
+
+        then: 'all queries get the response'
+        identical.every { it.get() }
+        different.get()
+
+        and: 'the client was only called once per unique query'
+        client.hitCount == 2
+
+        when: 'the same query is made again, after the response has been received'
+        styraRun.check('/my/rule', new Input(42)).get()
+
+        then: 'the client is called again'
+        client.hitCount == 3
+    }
+
+    def "Single queries are sent as batch queries when automatic batching is enabled"() {
+        given: 'a mocked API client'
+        def requestBodies = []
+        def client = new CountingApiClient(responseSupplier: { method, requestUri, headers, requestBody ->
+            assert method == POST
+            assert requestUri == URI.create("$DEFAULT_GATEWAY/data_batch")
+            def body = JSON.std.mapFrom(requestBody)
+            requestBodies << body
+            def responseBody = [result: body.items.collect { [result: it.input] }]
+            return completedFuture(new ApiResponse(200, JSON.std.asString(responseBody)))
+        })
+
+        and: 'a client with automatic batching enabled'
+        def styraRun = StyraRun.builder(DEFAULT_GATEWAYS, 'token')
+                .apiClientFactory({_ -> client })
+                .autoBatching(Duration.ofMillis(50), 3)
+                .build()
+
+        when: 'enough queries to fill a batch are made'
+        def futures = (1..3).collect { styraRun.query('/my/rule', new Input(it)) }
+
+        then: 'each query gets its own result'
+        futures.collect { it.get().get() } == [1, 2, 3]
+
+        and: 'the client was called once'
+        client.hitCount == 1
+        requestBodies[0] == [items: [
+                [path: '/my/rule', input: 1],
+                [path: '/my/rule', input: 2],
+                [path: '/my/rule', input: 3]
+        ]]
+
+        when: 'a single query is made'
+        def single = styraRun.query('/my/other/rule', new Input(4))
+
+        then: 'it is sent once the linger time has passed'
+        single.get().get() == 4
+        client.hitCount == 2
+        requestBodies[1] == [items: [[path: '/my/other/rule', input: 4]]]
+    }
+
+    def "Lingering batches are sent off the timer thread, and awaited when the client is closed"() {
+        given: 'a mocked API client that responds after a while'
+        def requestThreads = []
+        def client = new CountingApiClient(responseSupplier: { method, requestUri, headers, requestBody ->
+            requestThreads << Thread.currentThread().name
+            def body = JSON.std.mapFrom(requestBody)
+            return CompletableFuture.supplyAsync({
+                Thread.sleep(200)
+                new ApiResponse(200, JSON.std.asString([result: body.items.collect { [result: it.input] }]))
+            })
+        })
+
+        and: 'a client with automatic batching enabled'
+        def styraRun = StyraRun.builder(DEFAULT_GATEWAYS, 'token')
+                .apiClientFactory({_ -> client })
+                .autoBatching(Duration.ofMillis(10), 10)
+                .build()
+
+        when: 'a query lingers until its batch is sent'
+        def first = styraRun.query('/my/rule', new Input(1))
+
+        then: 'the batch is not sent from the timer thread'
+        new PollingConditions(timeout: 5).eventually {
+            assert client.hitCount == 1
+        }
+        requestThreads[0] != 'styra-run-timer'
+
+        when: 'another query is made, and the client is closed right away'
+        def second = styraRun.query('/my/rule', new Input(2))
+        styraRun.close()
+
+        then: 'both queries completed before the client was closed'
+        first.done
+        second.done
+        second.get().get() == 2
+
+        and: 'queries made after closing fail'
+        styraRun.query('/my/rule', new Input(3)).completedExceptionally
+    }
+
+    def "Batch query chunks and single queries are fairly scheduled within the concurrency limit"() {
+        given: 'a mocked API client that responds when told to'
+        def requests = []
+        def pendingResponses = []
+        def maxInFlight = 0
+        def client = new CountingApiClient(responseSupplier: { method, requestUri, headers, body ->
+            requests << requestUri.path
+            def response = new CompletableFuture<ApiResponse>()
+            pendingResponses << response
+            maxInFlight = Math.max(maxInFlight, pendingResponses.count { !it.done } as int)
+            return response
+        })
+
+        and: 'a client with a concurrency limit, and one item per batch request'
+        def styraRun = StyraRun.builder(DEFAULT_GATEWAYS, 'token')
+                .apiClientFactory({_ -> client })
+                .batchQueryItemsMax(1)
+                .queryConcurrencyMax(2)
+                .build()
+
+        when: 'a batch query is made, followed by a single query'
+        def batch = styraRun.batchQuery((1..4).collect { new Item('/my/rule', new Input(it)) })
+        def single = styraRun.check('/my/other/rule')
+
+        then: 'only as many requests as allowed are in flight'
+        requests == ['/data_batch', '/data_batch']
+
+        when: 'the API responds to all requests'
+        while (pendingResponses.any { !it.done }) {
+            def response = pendingResponses.find { !it.done }
+            def body = requests[pendingResponses.indexOf(response)] == '/data_batch' ?
+                    '{"result": [{"result": true}]}' :
+                    '{"result": true}'
+            response.complete(new ApiResponse(200, body))
+        }
+
+        then: 'all queries get their response'
+        batch.get().size() == 4
+        single.get()
+
+        and: 'the single query was interleaved with the batch query chunks'
+        requests == ['/data_batch', '/data_batch', '/data_batch', '/data/my/other/rule', '/data_batch']
+
+        and: 'the concurrency limit was never exceeded'
+        client.hitCount == 5
+        maxInFlight == 2
+    }
+
+    def "Batch query chunks are limited by the per-batch concurrency limit"() {
+        given: 'a mocked API client that responds when told to'
+        def pendingResponses = []
+        def client = new CountingApiClient(responseSupplier: { method, requestUri, headers, body ->
+            def response = new CompletableFuture<ApiResponse>()
+            pendingResponses << response
+            return response
+        })
+
+        and: 'a client with a per-batch concurrency limit, and one item per batch request'
+        def styraRun = StyraRun.builder(DEFAULT_GATEWAYS, 'token')
+                .apiClientFactory({_ -> client })
+                .batchQueryItemsMax(1)
+                .batchQueryConcurrencyMax(1)
+                .build()
+
+        when: 'two batch queries are made'
+        def first = styraRun.batchQuery((1..3).collect { new Item('/my/rule', new Input(it)) })
+        def second = styraRun.batchQuery((1..3).collect { new Item('/my/rule', new Input(it)) })
+
+        then: 'each batch query has one request in flight'
+        client.hitCount == 2
+
+        when: 'the API responds to all requests'
+        while (pendingResponses.any { !it.done }) {
+            pendingResponses.find { !it.done }.complete(new ApiResponse(200, '{"result": [{"result": true}]}'))
+        }
+
+        then: 'all queries get their response'
+        first.get().size() == 3
+        second.get().size() == 3
+        client.hitCount == 6
+    }
+
+    def "Queries with a deadline fail, and abort their request, when the deadline passes"() {
+        given: 'a mocked API client that never responds'
+        def pendingResponse = new CompletableFuture<ApiResponse>()
+        def client = new CountingApiClient(responseSupplier: { method, requestUri, headers, body -> pendingResponse })
+
+        and: 'a client'
+        def styraRun = StyraRun.builder(DEFAULT_GATEWAYS, 'token')
+                .apiClientFactory({_ -> client })
+                .build()
+
+        when: 'a query with a deadline is made'
+        styraRun.query('/my/rule', new Input(42), Deadline.after(Duration.ofMillis(100))).get(5, TimeUnit.SECONDS)
+
+        then: 'the query fails'
+        def e = thrown(ExecutionException)
+        e.cause instanceof DeadlineExceededException
+
+        and: 'the request was aborted'
+        new PollingConditions(timeout: 1).eventually {
+            assert pendingResponse.isCancelled()
+        }
+    }
+
+    def "Cancelling a query aborts its request"() {
+        given: 'a mocked API client that never responds'
+        def pendingResponse = new CompletableFuture<ApiResponse>()
+        def client = new CountingApiClient(responseSupplier: { method, requestUri, headers, body -> pendingResponse })
+
+        and: 'a client'
+        def styraRun = StyraRun.builder(DEFAULT_GATEWAYS, 'token')
+                .apiClientFactory({_ -> client })
+                .build()
+
+        when: 'a check is made, and cancelled'
+        styraRun.check('/my/rule', new Input(42)).cancel(true)
+
+        then: 'the request was aborted'
+        client.hitCount == 1
+        pendingResponse.isCancelled()
+    }
+
     @Unroll
     def "Get data"() {
         given: 'a mocked API client'
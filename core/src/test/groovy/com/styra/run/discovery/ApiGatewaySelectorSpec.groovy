@@ -9,6 +9,7 @@ import com.styra.run.test.CountingApiClient
 import spock.lang.Specification
 import spock.lang.Unroll
 
+import java.time.Duration
 import java.util.concurrent.CompletableFuture
 
 import static com.styra.run.ApiClient.Method.GET
@@ -223,6 +224,112 @@ class ApiGatewaySelectorSpec extends Specification {
         ]
     }
 
+    def "Concurrent first requests share one gateway discovery"() {
+        given: 'a mocked API-client that responds to gateway discovery when told to'
+        def gatewaysResponse = new CompletableFuture<ApiResponse>()
+        def discoveryCount = 0
+        def client = new CountingApiClient(responseSupplier: { method, uri, headers, body ->
+            if (uri.path == '/gateways') {
+                discoveryCount++
+                return gatewaysResponse
+            }
+            return CompletableFuture.completedFuture(new ApiResponse(200, uri.toString()))
+        })
+
+        and: 'the gateway-selector to test'
+        def selector = new ApiGatewaySelector(new SimpleGatewaySelectionStrategy.Factory(), MAX_ATTEMPTS,
+                client, JSON, ENV_URI, HEADER_SUPPLIER)
+
+        when: 'concurrent requests are made before gateways have been discovered'
+        def responses = (1..3).collect { selector.retry(client.requestBuilder(GET), 'foo') }
+
+        then: 'no request has been made to a gateway, and gateways were only requested once'
+        responses.every { !it.done }
+        discoveryCount == 1
+
+        when: 'gateways are discovered'
+        gatewaysResponse.complete(new ApiResponse(200, JSON.from([result: [[gateway_url: 'https://foo']]])))
+
+        then: 'all requests are made to the discovered gateway'
+        responses.every { it.get().body == 'https://foo/foo' }
+        discoveryCount == 1
+    }
+
+    def "Gateways are refreshed when a gateway responds with 421"() {
+        given: 'a mocked API-client that returns a new gateway on every discovery, where the first responds with 421'
+        def discoveryCount = 0
+        def client = new CountingApiClient(responseSupplier: { method, uri, headers, body ->
+            if (uri.path == '/gateways') {
+                discoveryCount++
+                def gateways = [result: [[gateway_url: "https://gw${discoveryCount}" as String]]]
+                return CompletableFuture.completedFuture(new ApiResponse(200, JSON.from(gateways)))
+            }
+            def status = uri.host == 'gw1' ? 421 : 200
+            return CompletableFuture.completedFuture(new ApiResponse(status, uri.host))
+        })
+
+        and: 'the gateway-selector to test'
+        def selector = new ApiGatewaySelector(new SimpleGatewaySelectionStrategy.Factory(), MAX_ATTEMPTS,
+                client, JSON, ENV_URI, HEADER_SUPPLIER)
+
+        when: 'a request is made'
+        def response = selector.retry(client.requestBuilder(GET)).get()
+
+        then: 'the first gateway responded with 421, and gateways were just fetched, so not refreshed'
+        response.statusCode == 421
+        discoveryCount == 1
+
+        when: 'another request is made, once the minimum refresh interval has passed'
+        sleep(1100)
+        response = selector.retry(client.requestBuilder(GET)).get()
+
+        then: 'the 421 response triggered a refresh'
+        response.statusCode == 421
+        discoveryCount == 2
+
+        and: 'the new gateway is used for subsequent requests'
+        selector.retry(client.requestBuilder(GET)).get().body == 'gw2'
+    }
+
+    def "Gateways are refreshed periodically, until the selector is closed"() {
+        given: 'a mocked API-client that returns a new gateway on every discovery'
+        def discoveryCount = 0
+        def client = new CountingApiClient(responseSupplier: { method, uri, headers, body ->
+            if (uri.path == '/gateways') {
+                discoveryCount++
+                def gateways = [result: [[gateway_url: "https://gw${discoveryCount}" as String]]]
+                return CompletableFuture.completedFuture(new ApiResponse(200, JSON.from(gateways)))
+            }
+            return CompletableFuture.completedFuture(new ApiResponse(200, uri.host))
+        })
+
+        and: 'the gateway-selector to test, with a periodic refresh'
+        def selector = new ApiGatewaySelector(new SimpleGatewaySelectionStrategy.Factory(), MAX_ATTEMPTS,
+                GatewaySelector.Config.builder().refreshInterval(Duration.ofMillis(100)).build(),
+                client, JSON, ENV_URI, HEADER_SUPPLIER)
+
+        when: 'a request is made'
+        def response = selector.retry(client.requestBuilder(GET)).get()
+
+        then: 'the first gateway is used'
+        response.body == 'gw1'
+
+        when: 'the refresh interval has passed'
+        sleep(300)
+
+        then: 'gateways have been refreshed, and a new gateway is used'
+        discoveryCount > 1
+        selector.retry(client.requestBuilder(GET)).get().body != 'gw1'
+
+        when: 'the selector is closed'
+        selector.close()
+        def count = discoveryCount
+        sleep(300)
+
+        then: 'gateways are no longer refreshed'
+        discoveryCount == count
+    }
+
     private static Gateway gw(uri, attributes = [:]) {
         return new Gateway(URI.create(uri), attributes)
     }
@@ -1,17 +1,27 @@
 package com.styra.run.discovery
 
+import com.styra.run.ApiResponse
+import com.styra.run.Deadline
+import com.styra.run.exceptions.DeadlineExceededException
+import com.styra.run.exceptions.OverloadedException
 import com.styra.run.exceptions.RetryException
 import com.styra.run.exceptions.StyraRunException
 import com.styra.run.test.CountingApiClient
 import spock.lang.Specification
 import spock.lang.Unroll
+import spock.util.concurrent.PollingConditions
 
+import java.time.Duration
+import java.util.concurrent.CompletableFuture
 import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
 
 import static com.styra.run.ApiClient.Method.GET
 import static com.styra.run.test.apiClients.exceptionalResult
 import static com.styra.run.test.apiClients.httpResult
 import static com.styra.run.test.helpers.gatewaysFrom
+import static java.util.concurrent.CompletableFuture.completedFuture
 
 class GatewaySelectorSpec extends Specification {
     def "If gateway fetch fails, it will be performed again on subsequent requests"(
@@ -157,4 +167,563 @@ class GatewaySelectorSpec extends Specification {
         new Exception('bar')                             || false       | Exception         | 'bar'
         new RuntimeException('baz')                      || false       | RuntimeException  | 'baz'
     }
+
+    def "Slow requests are hedged to another gateway, and the first response wins"() {
+        given: 'two gateways, where the first never responds'
+        def gateways = gatewaysFrom(2)
+        def slowResponse = new CompletableFuture<ApiResponse>()
+        def client = new CountingApiClient(responseSupplier: { method, uri, headers, body ->
+            uri.toString().startsWith(gateways[0].uri.toString()) ? slowResponse : completedFuture(new ApiResponse(200, 'fast'))
+        })
+
+        and: 'a gateway-selector with a hedging policy'
+        def policy = HedgingPolicy.builder()
+                .delay(Duration.ofMillis(10))
+                .budget(100)
+                .build()
+        def selector = new StaticGatewaySelector(new SimpleGatewaySelectionStrategy.Factory(), 3,
+                GatewaySelector.Config.builder().hedgingPolicy(policy).build(), gateways)
+
+        when: 'a hedged request is made'
+        def response = selector.hedge(client.requestBuilder(GET)).get(1, TimeUnit.SECONDS)
+
+        then: 'the response from the second gateway is used'
+        response.body == 'fast'
+        client.hitCount == 2
+
+        and: 'the slow request was cancelled'
+        slowResponse.cancelled
+    }
+
+    def "Hedged requests are sent off the timer thread"() {
+        given: 'two gateways, where the first never responds'
+        def gateways = gatewaysFrom(2)
+        def requestThreads = []
+        def client = new CountingApiClient(responseSupplier: { method, uri, headers, body ->
+            requestThreads << Thread.currentThread().name
+            uri.toString().startsWith(gateways[0].uri.toString()) ?
+                    new CompletableFuture<ApiResponse>() :
+                    completedFuture(new ApiResponse(200, 'fast'))
+        })
+
+        and: 'a gateway-selector with a hedging policy'
+        def policy = HedgingPolicy.builder()
+                .delay(Duration.ofMillis(10))
+                .budget(100)
+                .build()
+        def selector = new StaticGatewaySelector(new SimpleGatewaySelectionStrategy.Factory(), 3,
+                GatewaySelector.Config.builder().hedgingPolicy(policy).build(), gateways)
+
+        when: 'a hedged request is made'
+        def response = selector.hedge(client.requestBuilder(GET)).get(1, TimeUnit.SECONDS)
+
+        then: 'the hedge was not sent from the timer thread'
+        response.body == 'fast'
+        requestThreads.size() == 2
+        requestThreads[1] != 'styra-run-timer'
+    }
+
+    def "Hedging budgets and latencies are tracked per gateway selector, for every primary request"() {
+        given: 'a hedging policy, shared by two selectors'
+        def policy = HedgingPolicy.builder()
+                .delay(Duration.ofMillis(10))
+                .percentile(50)
+                .budget(100)
+                .build()
+        def first = policy.newState()
+        def second = policy.newState()
+
+        when: 'the first has made a request'
+        first.onRequest()
+
+        then: 'only the first may hedge'
+        !second.tryHedge()
+        first.tryHedge()
+
+        when: 'the first records latencies'
+        (1..32).each { first.recordLatency(Duration.ofMillis(it).toNanos()) }
+
+        then: 'only its delay is affected'
+        first.delayNanos == Duration.ofMillis(16).toNanos()
+        second.delayNanos == Duration.ofMillis(10).toNanos()
+    }
+
+    def "Requests aren't hedged when the hedging budget is exhausted"() {
+        given: 'two gateways, where the first responds slowly'
+        def gateways = gatewaysFrom(2)
+        def client = new CountingApiClient(responseSupplier: { method, uri, headers, body ->
+            CompletableFuture.supplyAsync({ sleep(100); new ApiResponse(200, uri.toString()) })
+        })
+
+        and: 'a gateway-selector with a hedging policy without budget'
+        def policy = HedgingPolicy.builder()
+                .delay(Duration.ofMillis(10))
+                .budget(0)
+                .build()
+        def selector = new StaticGatewaySelector(new SimpleGatewaySelectionStrategy.Factory(), 3,
+                GatewaySelector.Config.builder().hedgingPolicy(policy).build(), gateways)
+
+        when: 'a hedged request is made'
+        def response = selector.hedge(client.requestBuilder(GET)).get()
+
+        then: 'the response from the first gateway is used, and the request was not hedged'
+        response.body.startsWith(gateways[0].uri.toString())
+        client.hitCount == 1
+    }
+
+    def "Fast requests aren't hedged"() {
+        given: 'a client that responds immediately'
+        def gateways = gatewaysFrom(2)
+        def client = new CountingApiClient(responseSupplier: httpResult(200, 'ok'))
+
+        and: 'a gateway-selector with a hedging policy'
+        def policy = HedgingPolicy.builder()
+                .delay(Duration.ofMillis(10))
+                .budget(100)
+                .build()
+        def selector = new StaticGatewaySelector(new SimpleGatewaySelectionStrategy.Factory(), 3,
+                GatewaySelector.Config.builder().hedgingPolicy(policy).build(), gateways)
+
+        when: 'a hedged request is made, and the hedging delay passes'
+        def response = selector.hedge(client.requestBuilder(GET)).get()
+        sleep(50)
+
+        then: 'only one request was made'
+        response.body == 'ok'
+        client.hitCount == 1
+    }
+
+    def "Gateways failing consecutive requests are avoided, until a probe request succeeds"() {
+        given: 'two gateways, where the first is preferred, and fails until told otherwise'
+        def gateways = gatewaysFrom(2)
+        def firstIsDown = true
+        def hits = [0, 0]
+        def client = new CountingApiClient(responseSupplier: { method, uri, headers, body ->
+            def index = uri.toString().startsWith(gateways[0].uri.toString()) ? 0 : 1
+            hits[index]++
+            if (index == 0 && firstIsDown) {
+                return CompletableFuture.<ApiResponse> failedFuture(new RetryException(new IOException('down')))
+            }
+            return completedFuture(new ApiResponse(200, "$index" as String))
+        })
+
+        and: 'a gateway-selector with a circuit breaker'
+        def policy = CircuitBreakerPolicy.builder()
+                .failureThreshold(2)
+                .openDuration(Duration.ofMillis(100))
+                .build()
+        def selector = new StaticGatewaySelector(preferFirst(gateways), 3,
+                GatewaySelector.Config.builder().circuitBreakerPolicy(policy).build(), gateways)
+
+        when: 'requests are made until the circuit of the first gateway opens'
+        2.times { assert selector.retry(client.requestBuilder(GET)).get().body == '1' }
+
+        then: 'both requests were attempted on the first gateway'
+        hits == [2, 2]
+
+        when: 'more requests are made'
+        3.times { assert selector.retry(client.requestBuilder(GET)).get().body == '1' }
+
+        then: 'the first gateway was avoided'
+        hits == [2, 5]
+
+        when: 'the first gateway recovers, and the circuit has been open long enough'
+        firstIsDown = false
+        sleep(150)
+        def responses = (1..3).collect { selector.retry(client.requestBuilder(GET)).get().body }
+
+        then: 'a probe request succeeds, and the first gateway is used again'
+        responses == ['0', '0', '0']
+        hits == [5, 5]
+    }
+
+    def "A half-open gateway is probed again, after a retry to it was dropped"() {
+        given: 'two gateways, where the first is preferred, and both fail until told otherwise'
+        def gateways = gatewaysFrom(2)
+        def down = [true, true]
+        def hits = [0, 0]
+        def client = new CountingApiClient(responseSupplier: { method, uri, headers, body ->
+            def index = uri.toString().startsWith(gateways[0].uri.toString()) ? 0 : 1
+            hits[index]++
+            if (down[index]) {
+                return CompletableFuture.<ApiResponse> failedFuture(new RetryException(new IOException('down')))
+            }
+            return completedFuture(new ApiResponse(200, "$index" as String))
+        })
+
+        and: 'a gateway-selector with a circuit breaker, that makes no retries'
+        def policy = CircuitBreakerPolicy.builder()
+                .failureThreshold(1)
+                .openDuration(Duration.ofMillis(100))
+                .build()
+        def selector = new StaticGatewaySelector(preferFirst(gateways), 1,
+                GatewaySelector.Config.builder().circuitBreakerPolicy(policy).build(), gateways)
+
+        when: 'requests are made until the circuits of both gateways open'
+        2.times {
+            try {
+                selector.retry(client.requestBuilder(GET)).get()
+            } catch (ExecutionException ignored) {
+            }
+        }
+
+        then: 'each gateway was tried'
+        hits == [1, 1]
+
+        when: 'both circuits are half-open, and the probe of the first gateway fails'
+        sleep(150)
+        try {
+            selector.retry(client.requestBuilder(GET)).get()
+        } catch (ExecutionException ignored) {
+        }
+
+        then: 'the retry to the second gateway was dropped, as no retries are made'
+        hits == [2, 1]
+
+        when: 'the second gateway recovers, and another request is made'
+        down[1] = false
+        def response = selector.retry(client.requestBuilder(GET)).get()
+
+        then: 'the second gateway is probed, rather than held by the dropped retry'
+        response.body == '1'
+        hits == [2, 2]
+    }
+
+    def "Requests are still made when all gateways are unavailable"() {
+        given: 'gateways that always fail'
+        def gateways = gatewaysFrom(2)
+        def client = new CountingApiClient(responseSupplier: exceptionalResult(new RetryException(new IOException('down'))))
+
+        and: 'a gateway-selector with a circuit breaker'
+        def policy = CircuitBreakerPolicy.builder()
+                .failureThreshold(1)
+                .build()
+        def selector = new StaticGatewaySelector(preferFirst(gateways), 3,
+                GatewaySelector.Config.builder().circuitBreakerPolicy(policy).build(), gateways)
+
+        when: 'requests are made, opening the circuits of all gateways'
+        3.times {
+            try {
+                selector.retry(client.requestBuilder(GET)).get()
+            } catch (ignored) {
+            }
+        }
+
+        then: 'every request was attempted on both gateways'
+        client.hitCount == 6
+    }
+
+    def "Retries are delayed by the Retry-After header of the failed response"() {
+        given: 'gateways, where the first asks to be retried after a second'
+        def gateways = gatewaysFrom(2)
+        def client = new CountingApiClient(responseSupplier: { method, uri, headers, body ->
+            if (uri.toString().endsWith('/1')) {
+                return completedFuture(new ApiResponse(503, '', ['Retry-After': ['1']]))
+            }
+            return completedFuture(new ApiResponse(200, 'ok'))
+        })
+
+        and: 'a gateway-selector with a retry policy'
+        def policy = RetryPolicy.builder()
+                .baseDelay(Duration.ZERO)
+                .maxDelay(Duration.ofSeconds(5))
+                .build()
+        def selector = new StaticGatewaySelector(new SimpleGatewaySelectionStrategy.Factory(), 3,
+                GatewaySelector.Config.builder().retryPolicy(policy).build(), gateways)
+
+        when: 'a request is made'
+        def start = System.nanoTime()
+        def response = selector.retry(client.requestBuilder(GET)).get(5, TimeUnit.SECONDS)
+        def elapsed = Duration.ofNanos(System.nanoTime() - start)
+
+        then: 'the request was retried on the second gateway, after the requested delay'
+        response.body == 'ok'
+        client.hitCount == 2
+        elapsed >= Duration.ofSeconds(1)
+    }
+
+    def "Delayed retries are made on the configured executor"() {
+        given: 'gateways, where the first always fails'
+        def gateways = gatewaysFrom(2)
+        def requestThreads = []
+        def client = new CountingApiClient(responseSupplier: { method, uri, headers, body ->
+            requestThreads << Thread.currentThread().name
+            uri.toString().startsWith(gateways[0].uri.toString()) ?
+                    CompletableFuture.<ApiResponse> failedFuture(new RetryException(new IOException('down'))) :
+                    completedFuture(new ApiResponse(200, 'ok'))
+        })
+
+        and: 'a gateway-selector with a retry policy, and an executor'
+        def policy = RetryPolicy.builder()
+                .baseDelay(Duration.ofMillis(50))
+                .build()
+        def executor = Executors.newSingleThreadExecutor({ runnable -> new Thread(runnable, 'request-executor') })
+        def selector = new StaticGatewaySelector(new SimpleGatewaySelectionStrategy.Factory(), 3,
+                GatewaySelector.Config.builder().retryPolicy(policy).executor(executor).build(), gateways)
+
+        when: 'a request is made'
+        def response = selector.retry(client.requestBuilder(GET)).get(5, TimeUnit.SECONDS)
+
+        then: 'the delayed retry was made on the executor'
+        response.body == 'ok'
+        requestThreads.size() == 2
+        requestThreads[1] == 'request-executor'
+
+        cleanup:
+        executor?.shutdown()
+    }
+
+    def "Requests aren't retried when Retry-After exceeds the maximum retry delay"() {
+        given: 'gateways that ask to be retried after a minute'
+        def gateways = gatewaysFrom(2)
+        def client = new CountingApiClient(responseSupplier: { method, uri, headers, body ->
+            completedFuture(new ApiResponse(503, 'busy', ['Retry-After': ['60']]))
+        })
+
+        and: 'a gateway-selector with a retry policy'
+        def policy = RetryPolicy.builder()
+                .maxDelay(Duration.ofSeconds(1))
+                .build()
+        def selector = new StaticGatewaySelector(new SimpleGatewaySelectionStrategy.Factory(), 3,
+                GatewaySelector.Config.builder().retryPolicy(policy).build(), gateways)
+
+        when: 'a request is made'
+        def response = selector.retry(client.requestBuilder(GET)).get(5, TimeUnit.SECONDS)
+
+        then: 'the failed response is returned without retrying'
+        response.statusCode == 503
+        response.body == 'busy'
+        client.hitCount == 1
+    }
+
+    def "Retries are limited by the retry budget"() {
+        given: 'gateways that always throttle requests'
+        def gateways = gatewaysFrom(3)
+        def throttled = { method, uri, headers, body ->
+            completedFuture(new ApiResponse(503, '', ['Retry-After': ['0']]))
+        }
+        def client = new CountingApiClient(responseSupplier: throttled)
+
+        and: 'a gateway-selector with a retry budget of two retries'
+        def policy = RetryPolicy.builder()
+                .baseDelay(Duration.ZERO)
+                .maxBurst(2)
+                .build()
+        def selector = new StaticGatewaySelector(new SimpleGatewaySelectionStrategy.Factory(), 3,
+                GatewaySelector.Config.builder().retryPolicy(policy).build(), gateways)
+
+        when: 'requests are made'
+        3.times { selector.retry(client.requestBuilder(GET)).get(5, TimeUnit.SECONDS) }
+
+        then: 'only the budgeted retries were made'
+        client.hitCount == 3 + 2
+
+        when: 'enough requests succeed to earn a retry'
+        client.responseSupplier = httpResult(200, 'ok')
+        5.times { selector.retry(client.requestBuilder(GET)).get() }
+        client.responseSupplier = throttled
+        client.hitCount = 0
+
+        and: 'another request is throttled'
+        selector.retry(client.requestBuilder(GET)).get(5, TimeUnit.SECONDS)
+
+        then: 'it was retried once'
+        client.hitCount == 2
+    }
+
+    def "Failing over to another gateway isn't charged to the retry budget"() {
+        given: 'gateways that always fail'
+        def gateways = gatewaysFrom(3)
+        def client = new CountingApiClient(responseSupplier: exceptionalResult(new RetryException(new IOException('down'))))
+
+        and: 'a gateway-selector with a retry budget of a single retry'
+        def policy = RetryPolicy.builder()
+                .baseDelay(Duration.ZERO)
+                .maxBurst(1)
+                .build()
+        def selector = new StaticGatewaySelector(new SimpleGatewaySelectionStrategy.Factory(), 3,
+                GatewaySelector.Config.builder().retryPolicy(policy).build(), gateways)
+
+        when: 'requests are made'
+        3.times {
+            try {
+                selector.retry(client.requestBuilder(GET)).get(5, TimeUnit.SECONDS)
+            } catch (ExecutionException ignored) {
+            }
+        }
+
+        then: 'every request failed over to every gateway'
+        client.hitCount == 3 * 3
+    }
+
+    def "Deadlines bound the total time across retries, and cancel the in-flight attempt"() {
+        given: 'gateways, where the first is unavailable, and the second never responds'
+        def gateways = gatewaysFrom(2)
+        def pending = new CompletableFuture<ApiResponse>()
+        def client = new CountingApiClient(responseSupplier: { method, uri, headers, body ->
+            uri.toString().endsWith('/1') ? completedFuture(new ApiResponse(503, '')) : pending
+        })
+
+        and: 'a gateway-selector'
+        def selector = new StaticGatewaySelector(new SimpleGatewaySelectionStrategy.Factory(), 3, gateways)
+
+        when: 'a request with a deadline is made'
+        selector.retry(client.requestBuilder(GET).deadline(Deadline.after(Duration.ofMillis(100))))
+                .get(5, TimeUnit.SECONDS)
+
+        then: 'the request fails when the deadline passes'
+        def e = thrown(ExecutionException)
+        e.cause instanceof DeadlineExceededException
+
+        and: 'the in-flight attempt on the second gateway was cancelled'
+        client.hitCount == 2
+        new PollingConditions(timeout: 1).eventually {
+            assert pending.isCancelled()
+        }
+    }
+
+    def "Retries aren't made when the deadline would pass before them"() {
+        given: 'gateways that ask to be retried after a second'
+        def gateways = gatewaysFrom(2)
+        def client = new CountingApiClient(responseSupplier: { method, uri, headers, body ->
+            completedFuture(new ApiResponse(503, 'busy', ['Retry-After': ['1']]))
+        })
+
+        and: 'a gateway-selector with a retry policy'
+        def selector = new StaticGatewaySelector(new SimpleGatewaySelectionStrategy.Factory(), 3,
+                GatewaySelector.Config.builder().retryPolicy(RetryPolicy.builder().build()).build(), gateways)
+
+        when: 'a request with a shorter deadline is made'
+        def response = selector.retry(client.requestBuilder(GET).deadline(Deadline.after(Duration.ofMillis(500))))
+                .get(5, TimeUnit.SECONDS)
+
+        then: 'the failed response is returned without retrying'
+        response.statusCode == 503
+        client.hitCount == 1
+    }
+
+    def "Cancelling a request cancels the in-flight attempt"() {
+        given: 'a gateway that never responds'
+        def pending = new CompletableFuture<ApiResponse>()
+        def client = new CountingApiClient(responseSupplier: { method, uri, headers, body -> pending })
+
+        and: 'a gateway-selector'
+        def selector = new StaticGatewaySelector(new SimpleGatewaySelectionStrategy.Factory(), 3, gatewaysFrom(2))
+
+        when: 'a request is made, and cancelled'
+        def response = selector.retry(client.requestBuilder(GET))
+        response.cancel(true)
+
+        then: 'the in-flight attempt was cancelled, and not retried'
+        pending.isCancelled()
+        client.hitCount == 1
+    }
+
+    def "Requests beyond the concurrency limit are queued, and rejected when the queue is full"() {
+        given: 'a gateway that responds when told to'
+        def pending = []
+        def client = new CountingApiClient(responseSupplier: { method, uri, headers, body ->
+            def response = new CompletableFuture<ApiResponse>()
+            pending << response
+            return response
+        })
+
+        and: 'a gateway-selector with a concurrency limit of 2, and a queue of 1'
+        def policy = ConcurrencyLimitPolicy.builder()
+                .initialLimit(2)
+                .maxQueueSize(1)
+                .build()
+        def selector = new StaticGatewaySelector(new SimpleGatewaySelectionStrategy.Factory(), 3,
+                GatewaySelector.Config.builder().concurrencyLimitPolicy(policy).build(), gatewaysFrom(1))
+
+        when: 'four requests are made'
+        def responses = (1..4).collect { selector.retry(client.requestBuilder(GET)) }
+
+        then: 'two requests are sent, one is queued, and one is rejected'
+        client.hitCount == 2
+        !responses[2].isDone()
+        responses[3].isCompletedExceptionally()
+
+        when: 'the rejected request is inspected'
+        responses[3].get()
+
+        then: 'it was rejected for overload'
+        def e = thrown(ExecutionException)
+        e.cause instanceof OverloadedException
+
+        when: 'a request completes'
+        pending[0].complete(new ApiResponse(200, 'ok'))
+
+        then: 'the queued request is sent'
+        client.hitCount == 3
+        responses[0].get().body == 'ok'
+    }
+
+    def "Queued requests that are cancelled don't take up room in the queue"() {
+        given: 'a gateway that never responds'
+        def client = new CountingApiClient(responseSupplier: { method, uri, headers, body ->
+            new CompletableFuture<ApiResponse>()
+        })
+
+        and: 'a gateway-selector with a concurrency limit of 1, and a queue of 1'
+        def policy = ConcurrencyLimitPolicy.builder()
+                .initialLimit(1)
+                .maxQueueSize(1)
+                .build()
+        def selector = new StaticGatewaySelector(new SimpleGatewaySelectionStrategy.Factory(), 3,
+                GatewaySelector.Config.builder().concurrencyLimitPolicy(policy).build(), gatewaysFrom(1))
+
+        when: 'one request is sent, and a queued one is cancelled'
+        selector.retry(client.requestBuilder(GET))
+        selector.retry(client.requestBuilder(GET)).cancel(true)
+
+        and: 'another request is made'
+        def response = selector.retry(client.requestBuilder(GET))
+
+        then: 'it is queued, rather than rejected'
+        !response.isDone()
+        client.hitCount == 1
+    }
+
+    def "The concurrency limit is cut back when requests fail"() {
+        given: 'an overloaded gateway'
+        def client = new CountingApiClient(responseSupplier: httpResult(503, ''))
+
+        and: 'a concurrency limiter'
+        def limiter = new ConcurrencyLimiter(ConcurrencyLimitPolicy.builder()
+                .initialLimit(10)
+                .backoffRatio(0.5)
+                .build())
+
+        when: 'a request fails'
+        limiter.execute({ -> client.requestBuilder(GET).request(URI.create('https://localhost:1234')) }).get()
+
+        then: 'the limit was cut back'
+        limiter.limit == 5
+        limiter.inFlight == 0
+
+        when: 'the gateway recovers, and batches of concurrent requests succeed'
+        3.times {
+            def pending = (1..5).collect { new CompletableFuture<ApiResponse>() }
+            pending.each { response -> limiter.execute({ -> response }) }
+            pending.each { it.complete(new ApiResponse(200, '')) }
+        }
+
+        then: 'the limit grows again'
+        limiter.limit > 5
+    }
+
+    private static GatewaySelectionStrategy.Factory preferFirst(List<Gateway> gateways) {
+        return { list ->
+            new GatewaySelectionStrategy() {
+                Gateway current() { gateways[0] }
+
+                Gateway next() { gateways[1] }
+
+                Gateway nextIfMatch(Gateway gateway) { gateway == gateways[0] ? gateways[1] : gateways[0] }
+
+                int size() { gateways.size() }
+            }
+        } as GatewaySelectionStrategy.Factory
+    }
 }
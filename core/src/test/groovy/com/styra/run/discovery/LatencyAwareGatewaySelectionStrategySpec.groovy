@@ -0,0 +1,153 @@
+package com.styra.run.discovery
+
+import com.styra.run.ApiResponse
+import com.styra.run.test.CountingApiClient
+import spock.lang.Specification
+
+import java.time.Duration
+import java.util.concurrent.CompletableFuture
+
+import static com.styra.run.ApiClient.Method.GET
+import static com.styra.run.test.helpers.gatewaysFrom
+
+class LatencyAwareGatewaySelectionStrategySpec extends Specification {
+    def "Requests are spread across gateways, preferring the fastest one"() {
+        given: 'two gateways, where the first is much slower than the second'
+        def gateways = gatewaysFrom(2)
+        def factory = new LatencyAwareGatewaySelectionStrategy.Factory()
+        def strategy = factory.create(gateways)
+        strategy.onRequestStart(gateways[0])
+        strategy.onRequestComplete(gateways[0], Duration.ofMillis(500).toNanos(), true)
+        strategy.onRequestStart(gateways[1])
+        strategy.onRequestComplete(gateways[1], Duration.ofMillis(5).toNanos(), true)
+
+        when: 'gateways are selected'
+        def selected = (1..100).collect { strategy.current() }
+
+        then: 'the fastest gateway is always selected, as both are sampled'
+        selected.every { it == gateways[1] }
+    }
+
+    def "Gateways with many in-flight requests are avoided"() {
+        given: 'two gateways with equal latency'
+        def gateways = gatewaysFrom(2)
+        def strategy = new LatencyAwareGatewaySelectionStrategy.Factory().create(gateways)
+        gateways.each {
+            strategy.onRequestStart(it)
+            strategy.onRequestComplete(it, Duration.ofMillis(10).toNanos(), true)
+        }
+
+        when: 'the first gateway has requests in flight'
+        3.times { strategy.onRequestStart(gateways[0]) }
+
+        then: 'the second gateway is selected'
+        strategy.current() == gateways[1]
+    }
+
+    def "The failed gateway is never selected on retry, unless it's the only one"() {
+        given: 'a set of gateways'
+        def gateways = gatewaysFrom(gatewayCount)
+        def strategy = new LatencyAwareGatewaySelectionStrategy.Factory().create(gateways)
+
+        expect:
+        (1..100).every {
+            def next = strategy.nextIfMatch(gateways[0])
+            gatewayCount == 1 ? next == gateways[0] : next != gateways[0]
+        }
+
+        where:
+        gatewayCount << [1, 2, 3, 10]
+    }
+
+    def "Gateway statistics survive the gateway list being refreshed"() {
+        given: 'a factory, and a strategy with recorded latencies'
+        def gateways = gatewaysFrom(3)
+        def factory = new LatencyAwareGatewaySelectionStrategy.Factory()
+        def strategy = factory.create(gateways)
+        strategy.onRequestStart(gateways[0])
+        strategy.onRequestComplete(gateways[0], 1000, true)
+        strategy.onRequestStart(gateways[2])
+        strategy.onRequestComplete(gateways[2], 1000, true)
+
+        when: 'a new strategy is created for a changed list of gateways'
+        factory.create(gateways.subList(0, 2))
+
+        then: 'statistics of remaining gateways are kept'
+        factory.getStats(gateways[0]).latencyNanos == 1000
+        factory.getStats(gateways[2]) == null
+    }
+
+    def "A failed gateway is probed, and recovers, once it hasn't been selected for a while"() {
+        given: 'two gateways, with a short probe interval'
+        def gateways = gatewaysFrom(2)
+        def factory = new LatencyAwareGatewaySelectionStrategy.Factory(0.3, Duration.ofSeconds(1), Duration.ofMillis(50))
+        def strategy = factory.create(gateways)
+        gateways.each {
+            strategy.onRequestStart(it)
+            strategy.onRequestComplete(it, Duration.ofMillis(5).toNanos(), true)
+        }
+
+        and: 'a request to the first gateway failed'
+        strategy.onRequestStart(gateways[0])
+        strategy.onRequestComplete(gateways[0], Duration.ofMillis(5).toNanos(), false)
+
+        when: 'requests keep being made for longer than the probe interval, all succeeding'
+        def selected = []
+        def end = System.nanoTime() + Duration.ofMillis(300).toNanos()
+        while (System.nanoTime() < end) {
+            def gateway = strategy.current()
+            selected << gateway
+            strategy.onRequestStart(gateway)
+            strategy.onRequestComplete(gateway, Duration.ofMillis(5).toNanos(), true)
+            Thread.sleep(1)
+        }
+
+        then: 'the failed gateway was probed'
+        selected.contains(gateways[0])
+
+        and: 'its penalty has been replaced by its probed latency'
+        factory.getStats(gateways[0]).latencyNanos < Duration.ofMillis(100).toNanos()
+    }
+
+    def "Gateways added by a refresh start out with the average latency of the other gateways"() {
+        given: 'a strategy with recorded latencies'
+        def gateways = gatewaysFrom(3)
+        def factory = new LatencyAwareGatewaySelectionStrategy.Factory()
+        def strategy = factory.create(gateways.subList(0, 2))
+        strategy.onRequestStart(gateways[0])
+        strategy.onRequestComplete(gateways[0], 1000, true)
+        strategy.onRequestStart(gateways[1])
+        strategy.onRequestComplete(gateways[1], 3000, true)
+
+        when: 'a gateway is added'
+        factory.create(gateways)
+
+        then: 'it is seeded with the average latency, rather than being preferred as unprobed'
+        factory.getStats(gateways[2]).latencyNanos == 2000
+    }
+
+    def "Latencies and in-flight requests are recorded by the gateway selector"() {
+        given: 'a gateway selector with a latency-aware strategy'
+        def gateways = gatewaysFrom(1)
+        def factory = new LatencyAwareGatewaySelectionStrategy.Factory()
+        def selector = new StaticGatewaySelector(factory, 3, gateways)
+
+        and: 'a client that responds when told to'
+        def pendingResponse = new CompletableFuture<ApiResponse>()
+        def client = new CountingApiClient(responseSupplier: { method, uri, headers, body -> pendingResponse })
+
+        when: 'a request is made'
+        def response = selector.retry(client.requestBuilder(GET))
+
+        then: 'the request is in flight'
+        factory.getStats(gateways[0]).inFlight == 1
+
+        when: 'the gateway responds'
+        pendingResponse.complete(new ApiResponse(200, '{}'))
+        response.get()
+
+        then: 'the latency was recorded'
+        factory.getStats(gateways[0]).inFlight == 0
+        factory.getStats(gateways[0]).latencyNanos > 0
+    }
+}
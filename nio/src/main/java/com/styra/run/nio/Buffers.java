@@ -0,0 +1,33 @@
+package com.styra.run.nio;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+
+/**
+ * {@link ByteBuffer} operations that link against their {@link Buffer} signatures, so that classes compiled by newer
+ * JDKs (where <code>ByteBuffer</code> overrides them) still run on Java 8.
+ */
+final class Buffers {
+    private Buffers() {
+    }
+
+    static ByteBuffer flip(ByteBuffer buffer) {
+        ((Buffer) buffer).flip();
+        return buffer;
+    }
+
+    static ByteBuffer clear(ByteBuffer buffer) {
+        ((Buffer) buffer).clear();
+        return buffer;
+    }
+
+    static ByteBuffer position(ByteBuffer buffer, int position) {
+        ((Buffer) buffer).position(position);
+        return buffer;
+    }
+
+    static ByteBuffer limit(ByteBuffer buffer, int limit) {
+        ((Buffer) buffer).limit(limit);
+        return buffer;
+    }
+}
@@ -0,0 +1,292 @@
+package com.styra.run.nio;
+
+import com.styra.run.utils.Timers;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ScheduledFuture;
+
+import static com.styra.run.nio.Buffers.clear;
+import static com.styra.run.nio.Buffers.flip;
+
+/**
+ * A keep-alive HTTP/1.1 connection to a gateway, carrying one {@link Exchange} at a time.
+ * <p>
+ * Requests are never pipelined; a connection only takes on the next exchange once the previous response has been
+ * read in full. All methods are called on the I/O thread of the {@link NioApiClient}.
+ */
+final class Connection {
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+
+    private enum State {
+        RESOLVING,
+        CONNECTING,
+        HANDSHAKING,
+        OPEN,
+        CLOSED
+    }
+
+    private final NioApiClient client;
+    private final ConnectionPool pool;
+    private final ByteBuffer in = ByteBuffer.allocate(READ_BUFFER_SIZE);
+    private State state = State.RESOLVING;
+    private SocketChannel channel;
+    private SelectionKey key;
+    private Transport transport;
+    private ScheduledFuture<?> connectTimer;
+    private boolean reused = false;
+    private long idleSinceNanos;
+
+    private Exchange exchange;
+    private ByteBuffer out;
+    private ResponseParser parser;
+
+    Connection(NioApiClient client, ConnectionPool pool, Exchange first) {
+        this.client = client;
+        this.pool = pool;
+        attach(first);
+    }
+
+    /**
+     * Resolves the address of the gateway, and connects to it; the first exchange is sent once connected.
+     */
+    void connect(long timeoutNanos) {
+        connectTimer = Timers.schedule(() -> client.execute(this::onConnectTimeout), timeoutNanos);
+        client.resolve(pool.endpoint).whenComplete((address, e) -> client.execute(() -> {
+            if (e != null) {
+                fail(NioApiClient.unwrap(e));
+            } else {
+                open(address);
+            }
+        }));
+    }
+
+    /**
+     * Sends the request of <code>exchange</code> over this, idle, connection.
+     */
+    void start(Exchange exchange) {
+        attach(exchange);
+        try {
+            pump();
+        } catch (Exception e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Called by the I/O thread when the channel is ready for the operations of interest.
+     */
+    void onReady() {
+        try {
+            if (state == State.CONNECTING) {
+                if (channel.finishConnect()) {
+                    onConnected();
+                }
+                return;
+            }
+            pump();
+        } catch (Exception e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Gives up on <code>exchange</code>, if this connection is carrying it. A connection with a request in flight is
+     * closed, as the response can't be told apart from that of the next exchange; a connection still being set up
+     * becomes idle once ready.
+     */
+    void abandon(Exchange exchange) {
+        if (this.exchange != exchange) {
+            return;
+        }
+        if (state == State.OPEN) {
+            close();
+        } else {
+            detach();
+        }
+    }
+
+    boolean isIdleLongerThan(long nanos, long now) {
+        return now - idleSinceNanos >= nanos;
+    }
+
+    void close() {
+        if (state == State.CLOSED) {
+            return;
+        }
+        detach();
+        closeChannel();
+        pool.onClosed(this, null, null, false);
+    }
+
+    void fail(Exception cause) {
+        if (state == State.CLOSED) {
+            return;
+        }
+        // A request on a reused connection that the server closed before responding, was likely never processed
+        boolean retryable = reused && cause instanceof IOException && (parser == null || !parser.isStarted());
+        Exchange orphan = detach();
+        closeChannel();
+        pool.onClosed(this, orphan, cause, retryable);
+    }
+
+    private void open(InetSocketAddress address) {
+        if (state != State.RESOLVING) {
+            return;
+        }
+        try {
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            key = client.register(channel, this);
+            state = State.CONNECTING;
+            if (channel.connect(address)) {
+                onConnected();
+            } else {
+                key.interestOps(SelectionKey.OP_CONNECT);
+            }
+        } catch (Exception e) {
+            fail(e);
+        }
+    }
+
+    private void onConnected() throws IOException {
+        connectTimer.cancel(false);
+        transport = pool.endpoint.isSecure() ?
+                new TlsTransport(channel, client.createSslEngine(pool.endpoint)) :
+                Transport.plain(channel);
+        state = State.HANDSHAKING;
+        pump();
+    }
+
+    private void onConnectTimeout() {
+        if (state == State.RESOLVING || state == State.CONNECTING) {
+            fail(new SocketTimeoutException("Connect timed out"));
+        }
+    }
+
+    private void pump() throws IOException {
+        if (state == State.HANDSHAKING) {
+            if (!transport.handshake()) {
+                updateInterest();
+                return;
+            }
+            state = State.OPEN;
+            if (exchange == null) {
+                becomeIdle();
+                return;
+            }
+        }
+        if (state != State.OPEN) {
+            return;
+        }
+
+        if (out != null && transport.write(out)) {
+            out = null;
+        }
+
+        int read;
+        while ((read = transport.read(in)) != 0) {
+            if (read < 0) {
+                onEndOfStream();
+                return;
+            }
+            flip(in);
+            if (parser == null) {
+                // Nothing was asked for
+                close();
+                return;
+            }
+            boolean done = parser.feed(in);
+            boolean excess = in.hasRemaining();
+            clear(in);
+            if (done) {
+                complete(excess);
+                return;
+            }
+        }
+        updateInterest();
+    }
+
+    private void onEndOfStream() throws IOException {
+        if (parser == null) {
+            // Closed by the server while idle
+            close();
+        } else if (parser.onEndOfStream()) {
+            complete(false);
+        }
+    }
+
+    private void complete(boolean excess) {
+        ResponseParser completed = parser;
+        boolean reusable = completed.isKeepAlive() && out == null && !excess;
+        Exchange done = detach();
+        reused = true;
+        client.complete(done, completed.getResponse());
+        if (reusable) {
+            becomeIdle();
+        } else {
+            close();
+        }
+    }
+
+    private void becomeIdle() {
+        idleSinceNanos = System.nanoTime();
+        updateInterest();
+        pool.onIdle(this);
+    }
+
+    private void updateInterest() {
+        if (state == State.CLOSED) {
+            return;
+        }
+        int ops = SelectionKey.OP_READ;
+        if (out != null || transport.hasPendingWrite()) {
+            ops |= SelectionKey.OP_WRITE;
+        }
+        key.interestOps(ops);
+    }
+
+    private void attach(Exchange exchange) {
+        this.exchange = exchange;
+        this.out = exchange.getMessage();
+        this.parser = new ResponseParser();
+        exchange.connection = this;
+    }
+
+    private Exchange detach() {
+        Exchange detached = exchange;
+        if (detached != null) {
+            detached.connection = null;
+        }
+        exchange = null;
+        out = null;
+        parser = null;
+        return detached;
+    }
+
+    private void closeChannel() {
+        state = State.CLOSED;
+        if (connectTimer != null) {
+            connectTimer.cancel(false);
+        }
+        if (key != null) {
+            key.cancel();
+        }
+        if (transport != null) {
+            transport.close();
+        }
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Ignored
+            }
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.styra.run.nio;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The connections to a single gateway {@link Endpoint}, and the exchanges waiting for one.
+ * <p>
+ * Exchanges are handed to idle connections, most recently used first; when none is idle, a new connection is opened,
+ * up to the maximum. Beyond that, exchanges wait in order. All methods are called on the I/O thread of the
+ * {@link NioApiClient}.
+ */
+final class ConnectionPool {
+    private static final Logger logger = LoggerFactory.getLogger(ConnectionPool.class);
+
+    final Endpoint endpoint;
+    private final NioApiClient client;
+    private final int maxConnections;
+    private final Set<Connection> connections = new HashSet<>();
+    private final Deque<Connection> idle = new ArrayDeque<>();
+    private final Deque<Exchange> pending = new ArrayDeque<>();
+    private boolean dispatching = false;
+    private boolean redispatch = false;
+    private boolean closing = false;
+
+    ConnectionPool(NioApiClient client, Endpoint endpoint, int maxConnections) {
+        this.client = client;
+        this.endpoint = endpoint;
+        this.maxConnections = maxConnections;
+    }
+
+    void enqueue(Exchange exchange) {
+        pending.addLast(exchange);
+        dispatch();
+    }
+
+    void abandon(Exchange exchange) {
+        // Waiting exchanges are skipped when dispatched
+        if (exchange.connection != null) {
+            exchange.connection.abandon(exchange);
+        }
+    }
+
+    void onIdle(Connection connection) {
+        idle.addFirst(connection);
+        dispatch();
+    }
+
+    void onClosed(Connection connection, Exchange orphan, Exception cause, boolean retryable) {
+        connections.remove(connection);
+        idle.remove(connection);
+
+        if (orphan != null && !orphan.isDone()) {
+            if (retryable && !orphan.retried && !closing) {
+                logger.debug("Connection to {} closed before responding; retrying on another connection", endpoint);
+                orphan.retried = true;
+                pending.addFirst(orphan);
+            } else {
+                client.fail(orphan, cause);
+            }
+        }
+        dispatch();
+    }
+
+    /**
+     * Closes connections that have been idle for longer than <code>idleTimeoutNanos</code>.
+     */
+    void evictIdle(long idleTimeoutNanos, long now) {
+        while (!idle.isEmpty() && idle.peekLast().isIdleLongerThan(idleTimeoutNanos, now)) {
+            idle.pollLast().close();
+        }
+    }
+
+    boolean isUnused() {
+        return connections.isEmpty() && pending.isEmpty();
+    }
+
+    void closeAll(Exception cause) {
+        closing = true;
+        for (Exchange exchange : pending) {
+            client.fail(exchange, cause);
+        }
+        pending.clear();
+        for (Connection connection : new ArrayList<>(connections)) {
+            connection.fail(cause);
+        }
+    }
+
+    private void dispatch() {
+        if (closing) {
+            return;
+        }
+        // Closing, or failing, a connection re-enters here; let the outermost call do another pass instead
+        if (dispatching) {
+            redispatch = true;
+            return;
+        }
+
+        dispatching = true;
+        try {
+            do {
+                redispatch = false;
+                while (!pending.isEmpty()) {
+                    Exchange exchange = pending.peekFirst();
+                    if (exchange.isDone()) {
+                        // Timed out, or cancelled, while waiting
+                        pending.pollFirst();
+                        continue;
+                    }
+
+                    Connection connection = idle.pollFirst();
+                    if (connection != null) {
+                        pending.pollFirst();
+                        connection.start(exchange);
+                    } else if (connections.size() < maxConnections) {
+                        pending.pollFirst();
+                        connection = new Connection(client, this, exchange);
+                        connections.add(connection);
+                        connection.connect(exchange.connectTimeoutNanos);
+                    } else {
+                        break;
+                    }
+                }
+            } while (redispatch);
+        } finally {
+            dispatching = false;
+        }
+    }
+}
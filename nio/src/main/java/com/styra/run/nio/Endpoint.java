@@ -0,0 +1,82 @@
+package com.styra.run.nio;
+
+import java.net.URI;
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * The scheme, host and port of a gateway; connections are pooled per endpoint.
+ */
+final class Endpoint {
+    private final boolean secure;
+    private final String host;
+    private final int port;
+
+    private Endpoint(boolean secure, String host, int port) {
+        this.secure = secure;
+        this.host = host;
+        this.port = port;
+    }
+
+    static Endpoint of(URI uri) {
+        String scheme = uri.getScheme();
+        boolean secure = "https".equalsIgnoreCase(scheme);
+        if (!secure && !"http".equalsIgnoreCase(scheme)) {
+            throw new IllegalArgumentException(String.format("Unsupported URI scheme '%s'", scheme));
+        }
+
+        String host = uri.getHost();
+        if (host == null || host.isEmpty()) {
+            throw new IllegalArgumentException(String.format("URI '%s' has no host", uri));
+        }
+
+        int port = uri.getPort() != -1 ? uri.getPort() : secure ? 443 : 80;
+        return new Endpoint(secure, host.toLowerCase(Locale.ROOT), port);
+    }
+
+    boolean isSecure() {
+        return secure;
+    }
+
+    /**
+     * @return the host name, or address, to connect to; IPv6 addresses without brackets
+     */
+    String getAddress() {
+        if (host.startsWith("[") && host.endsWith("]")) {
+            return host.substring(1, host.length() - 1);
+        }
+        return host;
+    }
+
+    int getPort() {
+        return port;
+    }
+
+    /**
+     * @return the value of the <code>Host</code> request header
+     */
+    String getHostHeader() {
+        if (port == (secure ? 443 : 80)) {
+            return host;
+        }
+        return host + ':' + port;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Endpoint endpoint = (Endpoint) o;
+        return secure == endpoint.secure && port == endpoint.port && host.equals(endpoint.host);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(secure, host, port);
+    }
+
+    @Override
+    public String toString() {
+        return (secure ? "https://" : "http://") + host + ':' + port;
+    }
+}
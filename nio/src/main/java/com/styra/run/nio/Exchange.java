@@ -0,0 +1,91 @@
+package com.styra.run.nio;
+
+import com.styra.run.ApiRequest;
+import com.styra.run.ApiResponse;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A request, and the future of its response, as it moves through a {@link ConnectionPool}.
+ * <p>
+ * Apart from {@link #future}, fields are only accessed on the I/O thread.
+ */
+final class Exchange {
+    final Endpoint endpoint;
+    final long connectTimeoutNanos;
+    final CompletableFuture<ApiResponse> future = new CompletableFuture<>();
+    private final ByteBuffer message;
+
+    Connection connection;
+    boolean retried = false;
+
+    Exchange(ApiRequest request, Endpoint endpoint, String userAgent, long connectTimeoutNanos) {
+        this.endpoint = endpoint;
+        this.connectTimeoutNanos = connectTimeoutNanos;
+        this.message = encode(request, endpoint, userAgent);
+    }
+
+    boolean isDone() {
+        return future.isDone();
+    }
+
+    /**
+     * @return the encoded request, ready to be written from the start
+     */
+    ByteBuffer getMessage() {
+        return message.duplicate();
+    }
+
+    private static ByteBuffer encode(ApiRequest request, Endpoint endpoint, String userAgent) {
+        StringBuilder head = new StringBuilder(256);
+        String path = request.getUri().getRawPath();
+        head.append(request.getMethod().name()).append(' ')
+                .append(path == null || path.isEmpty() ? "/" : path);
+        if (request.getUri().getRawQuery() != null) {
+            head.append('?').append(request.getUri().getRawQuery());
+        }
+        head.append(" HTTP/1.1\r\n");
+
+        appendHeader(head, "Host", endpoint.getHostHeader());
+        appendHeader(head, "User-Agent", userAgent);
+        for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+            String name = header.getKey();
+            // Framing headers are ours to set
+            if (!"Host".equalsIgnoreCase(name) && !"Content-Length".equalsIgnoreCase(name)
+                    && !"Transfer-Encoding".equalsIgnoreCase(name) && !"Connection".equalsIgnoreCase(name)) {
+                appendHeader(head, name, header.getValue());
+            }
+        }
+
+        byte[] body = null;
+        switch (request.getMethod()) {
+            case PUT:
+            case POST:
+                body = request.hasBody() ? request.getBody() : new byte[0];
+                appendHeader(head, "Content-Length", Integer.toString(body.length));
+                break;
+            default:
+                break;
+        }
+        head.append("\r\n");
+
+        byte[] headBytes = head.toString().getBytes(StandardCharsets.ISO_8859_1);
+        ByteBuffer message = ByteBuffer.allocate(headBytes.length + (body != null ? body.length : 0));
+        message.put(headBytes);
+        if (body != null) {
+            message.put(body);
+        }
+        return Buffers.flip(message).asReadOnlyBuffer();
+    }
+
+    private static void appendHeader(StringBuilder head, String name, String value) {
+        if (name.indexOf('\r') >= 0 || name.indexOf('\n') >= 0
+                || (value != null && (value.indexOf('\r') >= 0 || value.indexOf('\n') >= 0))) {
+            throw new IllegalArgumentException(String.format("Illegal line break in header '%s'", name));
+        }
+        head.append(name).append(": ").append(value != null ? value : "").append("\r\n");
+    }
+}
@@ -0,0 +1,289 @@
+package com.styra.run.nio;
+
+import com.styra.run.ApiClient;
+import com.styra.run.ApiRequest;
+import com.styra.run.ApiResponse;
+import com.styra.run.exceptions.RetryException;
+import com.styra.run.utils.Timers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLParameters;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.styra.run.utils.Futures.failedFuture;
+import static com.styra.run.utils.Null.orThrow;
+
+/**
+ * A non-blocking {@link ApiClient} for Java 8, built on <code>java.nio</code> channels.
+ * <p>
+ * All connections are served by a single selector thread per client. Connections are kept alive, and pooled per
+ * gateway, up to a maximum; requests beyond that wait for a connection to free up. Requests are not pipelined:
+ * a connection carries one request at a time. HTTPS is supported through {@link SSLEngine}, using the configured
+ * {@link SSLContext}.
+ * <p>
+ * Returned futures are completed on the {@link Config#getExecutor() configured executor}, or on the common
+ * {@link ForkJoinPool}; never on the selector thread.
+ */
+public class NioApiClient implements ApiClient {
+    private static final Logger logger = LoggerFactory.getLogger(NioApiClient.class);
+
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_GATEWAY = 16;
+    public static final Duration DEFAULT_IDLE_TIMEOUT = Duration.ofSeconds(30);
+
+    private static final String READ_TIMEOUT_MSG = "Read timed out";
+    private static final long SELECT_TIMEOUT_MILLIS = 1000;
+    private static final AtomicInteger threadCount = new AtomicInteger();
+
+    private final Config config;
+    private final int maxConnectionsPerGateway;
+    private final long idleTimeoutNanos;
+    private final Executor completionExecutor;
+    private final Selector selector;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    // Only accessed on the I/O thread
+    private final Map<Endpoint, ConnectionPool> pools = new HashMap<>();
+    private volatile boolean closed = false;
+
+    /**
+     * Creates a client with the {@link Config#getMaxConnectionsPerGateway() maximum connections per gateway} and
+     * {@link Config#getKeepAliveTimeout() keep-alive timeout} of <code>config</code>, where set. HTTP/2 isn't
+     * supported, and {@link Config#getHttpVersion()} is ignored.
+     *
+     * @param config the client {@link Config}
+     */
+    public NioApiClient(Config config) {
+        this(config,
+                config.getMaxConnectionsPerGateway() > 0 ?
+                        config.getMaxConnectionsPerGateway() : DEFAULT_MAX_CONNECTIONS_PER_GATEWAY,
+                config.getKeepAliveTimeout() != null ? config.getKeepAliveTimeout() : DEFAULT_IDLE_TIMEOUT);
+    }
+
+    /**
+     * @param config the client {@link Config}
+     * @param maxConnectionsPerGateway the maximum number of open connections to each gateway
+     * @param idleTimeout how long an unused connection is kept open
+     */
+    public NioApiClient(Config config, int maxConnectionsPerGateway, Duration idleTimeout) {
+        this.config = orThrow(config, "config must not be null");
+        if (maxConnectionsPerGateway <= 0) {
+            throw new IllegalArgumentException("maxConnectionsPerGateway must be positive");
+        }
+        orThrow(idleTimeout, "idleTimeout must not be null");
+        if (idleTimeout.isNegative()) {
+            throw new IllegalArgumentException("idleTimeout must not be negative");
+        }
+        this.maxConnectionsPerGateway = maxConnectionsPerGateway;
+        this.idleTimeoutNanos = idleTimeout.toNanos();
+        this.completionExecutor = config.getExecutor() != null ? config.getExecutor() : ForkJoinPool.commonPool();
+
+        try {
+            this.selector = Selector.open();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open selector", e);
+        }
+
+        Thread thread = new Thread(this::run, "styra-run-nio-" + threadCount.incrementAndGet());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public CompletableFuture<ApiResponse> request(Method method, URI uri, Map<String, String> headers, String body) {
+        return request(new ApiRequest(method, uri, headers,
+                body != null ? body.getBytes(StandardCharsets.UTF_8) : null));
+    }
+
+    @Override
+    public CompletableFuture<ApiResponse> request(ApiRequest request) {
+        if (closed) {
+            return failedFuture(new IllegalStateException("API client is closed"));
+        }
+
+        Exchange exchange;
+        try {
+            exchange = new Exchange(request, Endpoint.of(request.getUri()), config.getUserAgent(),
+                    request.getTimeout(config.getConnectionTimeout()).toNanos());
+        } catch (IllegalArgumentException e) {
+            return failedFuture(e);
+        }
+
+        CompletableFuture<ApiResponse> future = exchange.future;
+        ScheduledFuture<?> timer = Timers.schedule(
+                () -> future.completeExceptionally(new RetryException(new SocketTimeoutException(READ_TIMEOUT_MSG))),
+                request.getTimeout(config.getRequestTimeout()));
+        future.whenComplete((response, e) -> {
+            timer.cancel(false);
+            if (e != null) {
+                // Timed out, or cancelled; let go of any connection carrying the exchange
+                execute(() -> {
+                    ConnectionPool pool = pools.get(exchange.endpoint);
+                    if (pool != null) {
+                        pool.abandon(exchange);
+                    }
+                });
+            }
+        });
+
+        execute(() -> pools.computeIfAbsent(exchange.endpoint,
+                        (endpoint) -> new ConnectionPool(this, endpoint, maxConnectionsPerGateway))
+                .enqueue(exchange));
+        if (closed) {
+            // Closed concurrently; the I/O thread might not pick up the exchange
+            future.completeExceptionally(new IllegalStateException("API client is closed"));
+        }
+        return future;
+    }
+
+    /**
+     * Closes all connections, and fails outstanding requests.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        selector.wakeup();
+    }
+
+    void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    SelectionKey register(SocketChannel channel, Connection connection) throws ClosedChannelException {
+        return channel.register(selector, 0, connection);
+    }
+
+    CompletableFuture<InetSocketAddress> resolve(Endpoint endpoint) {
+        // Name resolution blocks; keep it off the I/O thread
+        return CompletableFuture.supplyAsync(() -> {
+            InetSocketAddress address = new InetSocketAddress(endpoint.getAddress(), endpoint.getPort());
+            if (address.isUnresolved()) {
+                throw new CompletionException(new UnknownHostException(endpoint.getAddress()));
+            }
+            return address;
+        }, completionExecutor);
+    }
+
+    SSLEngine createSslEngine(Endpoint endpoint) throws SSLException {
+        SSLContext sslContext = config.getSslContext();
+        if (sslContext == null) {
+            try {
+                sslContext = SSLContext.getDefault();
+            } catch (NoSuchAlgorithmException e) {
+                throw new SSLException("Failed to get default SSL Context", e);
+            }
+        }
+
+        SSLEngine engine = sslContext.createSSLEngine(endpoint.getAddress(), endpoint.getPort());
+        engine.setUseClientMode(true);
+        SSLParameters parameters = engine.getSSLParameters();
+        parameters.setEndpointIdentificationAlgorithm("HTTPS");
+        engine.setSSLParameters(parameters);
+        return engine;
+    }
+
+    void complete(Exchange exchange, ApiResponse response) {
+        onExecutor(() -> exchange.future.complete(response));
+    }
+
+    void fail(Exchange exchange, Exception cause) {
+        Exception e = cause instanceof ConnectException || cause instanceof SocketTimeoutException ?
+                new RetryException(cause) : cause;
+        onExecutor(() -> exchange.future.completeExceptionally(e));
+    }
+
+    static Exception unwrap(Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        return cause instanceof Exception ? (Exception) cause : new RuntimeException(cause);
+    }
+
+    private void onExecutor(Runnable task) {
+        try {
+            completionExecutor.execute(task);
+        } catch (RejectedExecutionException e) {
+            task.run();
+        }
+    }
+
+    private void run() {
+        while (!closed) {
+            try {
+                selector.select(SELECT_TIMEOUT_MILLIS);
+                runTasks();
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (key.isValid()) {
+                        ((Connection) key.attachment()).onReady();
+                    }
+                }
+
+                long now = System.nanoTime();
+                Iterator<ConnectionPool> pools = this.pools.values().iterator();
+                while (pools.hasNext()) {
+                    ConnectionPool pool = pools.next();
+                    pool.evictIdle(idleTimeoutNanos, now);
+                    if (pool.isUnused()) {
+                        pools.remove();
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                logger.warn("Unexpected error in I/O loop", e);
+            }
+        }
+
+        // Outstanding tasks are dropped; requests racing with close() fail themselves
+        tasks.clear();
+        IllegalStateException cause = new IllegalStateException("API client is closed");
+        for (ConnectionPool pool : pools.values()) {
+            pool.closeAll(cause);
+        }
+        pools.clear();
+        try {
+            selector.close();
+        } catch (IOException e) {
+            logger.debug("Failed to close selector", e);
+        }
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                logger.warn("Unexpected error in I/O task", e);
+            }
+        }
+    }
+}
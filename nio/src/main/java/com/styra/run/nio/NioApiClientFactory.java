@@ -0,0 +1,12 @@
+package com.styra.run.nio;
+
+import com.styra.run.ApiClient;
+import com.styra.run.ApiClient.Config;
+import com.styra.run.spi.ApiClientFactory;
+
+public class NioApiClientFactory implements ApiClientFactory {
+    @Override
+    public ApiClient create(Config config) {
+        return new NioApiClient(config);
+    }
+}
@@ -0,0 +1,289 @@
+package com.styra.run.nio;
+
+import com.styra.run.ApiResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An incremental parser of HTTP/1.1 responses; fed bytes as they arrive from the connection.
+ * <p>
+ * Bodies with a <code>Content-Length</code> are read straight into an array of that size; chunked bodies, and bodies
+ * delimited by the connection closing, are buffered.
+ */
+final class ResponseParser {
+    private static final int MAX_LINE_LENGTH = 8192;
+    private static final int MAX_HEADERS_SIZE = 65536;
+
+    private enum State {
+        STATUS_LINE,
+        HEADERS,
+        BODY,
+        CHUNK_SIZE,
+        CHUNK_DATA,
+        CHUNK_END,
+        TRAILERS,
+        UNTIL_CLOSE,
+        DONE
+    }
+
+    private final StringBuilder line = new StringBuilder();
+    private State state = State.STATUS_LINE;
+    private boolean started = false;
+    private int headersSize = 0;
+
+    private boolean http11;
+    private int statusCode;
+    private Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    private boolean keepAlive;
+
+    private byte[] body;
+    private int bodyOffset;
+    private ByteArrayOutputStream bufferedBody;
+    private long chunkRemaining;
+
+    /**
+     * Consumes bytes from <code>in</code>, up to the end of the response.
+     *
+     * @return <code>true</code> if the response is complete
+     */
+    boolean feed(ByteBuffer in) throws IOException {
+        if (in.hasRemaining()) {
+            started = true;
+        }
+
+        while (in.hasRemaining() && state != State.DONE) {
+            switch (state) {
+                case BODY: {
+                    int count = Math.min(in.remaining(), body.length - bodyOffset);
+                    in.get(body, bodyOffset, count);
+                    bodyOffset += count;
+                    if (bodyOffset == body.length) {
+                        state = State.DONE;
+                    }
+                    break;
+                }
+                case CHUNK_DATA: {
+                    int count = (int) Math.min(in.remaining(), chunkRemaining);
+                    copy(in, count);
+                    chunkRemaining -= count;
+                    if (chunkRemaining == 0) {
+                        state = State.CHUNK_END;
+                    }
+                    break;
+                }
+                case UNTIL_CLOSE:
+                    copy(in, in.remaining());
+                    break;
+                default:
+                    if (readLine(in)) {
+                        String value = line.toString();
+                        line.setLength(0);
+                        onLine(value);
+                    }
+            }
+        }
+        return state == State.DONE;
+    }
+
+    /**
+     * Signals that the connection was closed by the server.
+     *
+     * @return <code>true</code> if the response is complete
+     * @throws IOException if the response was cut short
+     */
+    boolean onEndOfStream() throws IOException {
+        if (state == State.UNTIL_CLOSE) {
+            state = State.DONE;
+        }
+        if (state == State.DONE) {
+            return true;
+        }
+        throw new EOFException(started ? "Unexpected end of response" : "Connection closed before response");
+    }
+
+    /**
+     * @return <code>true</code> if any part of the response has been received
+     */
+    boolean isStarted() {
+        return started;
+    }
+
+    /**
+     * @return <code>true</code> if the connection can be reused for another request after this response
+     */
+    boolean isKeepAlive() {
+        return state == State.DONE && keepAlive;
+    }
+
+    ApiResponse getResponse() {
+        byte[] bytes = body;
+        if (bufferedBody != null) {
+            bytes = bufferedBody.toByteArray();
+        }
+        return ApiResponse.fromBytes(statusCode, bytes, headers);
+    }
+
+    private boolean readLine(ByteBuffer in) throws ProtocolException {
+        while (in.hasRemaining()) {
+            char c = (char) (in.get() & 0xFF);
+            if (c == '\n') {
+                return true;
+            }
+            if (c != '\r') {
+                if (line.length() >= MAX_LINE_LENGTH) {
+                    throw new ProtocolException("Response line too long");
+                }
+                line.append(c);
+            }
+        }
+        return false;
+    }
+
+    private void onLine(String value) throws IOException {
+        switch (state) {
+            case STATUS_LINE:
+                parseStatusLine(value);
+                state = State.HEADERS;
+                break;
+            case HEADERS:
+                if (value.isEmpty()) {
+                    onHeadersEnd();
+                } else {
+                    parseHeader(value);
+                }
+                break;
+            case CHUNK_SIZE:
+                chunkRemaining = parseChunkSize(value);
+                state = chunkRemaining == 0 ? State.TRAILERS : State.CHUNK_DATA;
+                break;
+            case CHUNK_END:
+                if (!value.isEmpty()) {
+                    throw new ProtocolException("Malformed chunk");
+                }
+                state = State.CHUNK_SIZE;
+                break;
+            case TRAILERS:
+                if (value.isEmpty()) {
+                    state = State.DONE;
+                }
+                break;
+            default:
+                throw new IllegalStateException("Unexpected parser state " + state);
+        }
+    }
+
+    private void parseStatusLine(String value) throws ProtocolException {
+        // HTTP-version SP status-code SP [ reason-phrase ]
+        int versionEnd = value.indexOf(' ');
+        if (!value.startsWith("HTTP/1.") || versionEnd < 0) {
+            throw new ProtocolException("Malformed status line: " + value);
+        }
+        int statusEnd = value.indexOf(' ', versionEnd + 1);
+        try {
+            statusCode = Integer.parseInt(value.substring(versionEnd + 1, statusEnd < 0 ? value.length() : statusEnd));
+        } catch (NumberFormatException e) {
+            throw new ProtocolException("Malformed status line: " + value);
+        }
+        http11 = !value.startsWith("HTTP/1.0");
+    }
+
+    private void parseHeader(String value) throws ProtocolException {
+        headersSize += value.length();
+        if (headersSize > MAX_HEADERS_SIZE) {
+            throw new ProtocolException("Response headers too large");
+        }
+        int colon = value.indexOf(':');
+        if (colon <= 0) {
+            throw new ProtocolException("Malformed header: " + value);
+        }
+        headers.computeIfAbsent(value.substring(0, colon).trim(), (k) -> new ArrayList<>(1))
+                .add(value.substring(colon + 1).trim());
+    }
+
+    private void onHeadersEnd() throws ProtocolException {
+        if (statusCode >= 100 && statusCode < 200) {
+            // Informational; the actual response follows
+            headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            headersSize = 0;
+            state = State.STATUS_LINE;
+            return;
+        }
+
+        keepAlive = http11 ? !hasToken("Connection", "close") : hasToken("Connection", "keep-alive");
+
+        if (statusCode == 204 || statusCode == 304) {
+            state = State.DONE;
+        } else if (hasToken("Transfer-Encoding", "chunked")) {
+            bufferedBody = new ByteArrayOutputStream();
+            state = State.CHUNK_SIZE;
+        } else if (headers.containsKey("Content-Length")) {
+            long length = parseContentLength(headers.get("Content-Length").get(0));
+            body = new byte[(int) length];
+            state = length == 0 ? State.DONE : State.BODY;
+        } else {
+            bufferedBody = new ByteArrayOutputStream();
+            keepAlive = false;
+            state = State.UNTIL_CLOSE;
+        }
+    }
+
+    private boolean hasToken(String header, String token) {
+        List<String> values = headers.get(header);
+        if (values == null) {
+            return false;
+        }
+        for (String value : values) {
+            for (String part : value.split(",")) {
+                if (part.trim().equalsIgnoreCase(token)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void copy(ByteBuffer in, int count) {
+        if (in.hasArray()) {
+            bufferedBody.write(in.array(), in.arrayOffset() + in.position(), count);
+            Buffers.position(in, in.position() + count);
+        } else {
+            for (int i = 0; i < count; i++) {
+                bufferedBody.write(in.get());
+            }
+        }
+    }
+
+    private static long parseContentLength(String value) throws ProtocolException {
+        try {
+            long length = Long.parseLong(value.trim());
+            if (length < 0 || length > Integer.MAX_VALUE - 8) {
+                throw new ProtocolException("Unsupported Content-Length: " + value);
+            }
+            return length;
+        } catch (NumberFormatException e) {
+            throw new ProtocolException("Malformed Content-Length: " + value);
+        }
+    }
+
+    private static long parseChunkSize(String value) throws ProtocolException {
+        int extension = value.indexOf(';');
+        String size = (extension >= 0 ? value.substring(0, extension) : value).trim();
+        try {
+            long length = Long.parseLong(size, 16);
+            if (length < 0) {
+                throw new ProtocolException("Malformed chunk size: " + value);
+            }
+            return length;
+        } catch (NumberFormatException e) {
+            throw new ProtocolException("Malformed chunk size: " + value);
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package com.styra.run.nio;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+import static com.styra.run.nio.Buffers.flip;
+import static com.styra.run.nio.Buffers.limit;
+import static com.styra.run.nio.Buffers.position;
+
+/**
+ * A {@link Transport} encrypting application data through an {@link SSLEngine}.
+ * <p>
+ * <code>netIn</code> is kept ready for writing (filled from the channel), while <code>netOut</code> and
+ * <code>appIn</code> are kept ready for reading (drained to the channel and to the caller, respectively).
+ */
+final class TlsTransport extends Transport {
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    private static final int PROGRESS = 1;
+    private static final int NEEDS_DATA = 0;
+    private static final int END_OF_STREAM = -1;
+
+    private final SSLEngine engine;
+    private ByteBuffer netIn;
+    private ByteBuffer netOut;
+    private ByteBuffer appIn;
+    private boolean inboundDone = false;
+
+    TlsTransport(SocketChannel channel, SSLEngine engine) throws SSLException {
+        super(channel);
+        this.engine = engine;
+        this.netIn = ByteBuffer.allocate(engine.getSession().getPacketBufferSize());
+        this.netOut = flip(ByteBuffer.allocate(engine.getSession().getPacketBufferSize()));
+        this.appIn = flip(ByteBuffer.allocate(engine.getSession().getApplicationBufferSize()));
+        engine.beginHandshake();
+    }
+
+    @Override
+    boolean handshake() throws IOException {
+        while (true) {
+            if (!flush()) {
+                return false;
+            }
+
+            switch (engine.getHandshakeStatus()) {
+                case NOT_HANDSHAKING:
+                case FINISHED:
+                    return true;
+                case NEED_TASK:
+                    runDelegatedTasks();
+                    break;
+                case NEED_WRAP:
+                    wrap(EMPTY);
+                    break;
+                default:
+                    // NEED_UNWRAP, or NEED_UNWRAP_AGAIN on newer JDKs
+                    int status = unwrap();
+                    if (status == NEEDS_DATA) {
+                        return false;
+                    }
+                    if (status == END_OF_STREAM) {
+                        throw new EOFException("Connection closed during TLS handshake");
+                    }
+            }
+        }
+    }
+
+    @Override
+    int read(ByteBuffer dst) throws IOException {
+        while (!appIn.hasRemaining()) {
+            if (inboundDone) {
+                return -1;
+            }
+            int status = unwrap();
+            if (engine.getHandshakeStatus() != SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING) {
+                // Post-handshake messages, such as session tickets or key updates
+                handshake();
+            }
+            if (status == NEEDS_DATA) {
+                return 0;
+            }
+            if (status == END_OF_STREAM && !appIn.hasRemaining()) {
+                return -1;
+            }
+        }
+
+        int count = Math.min(appIn.remaining(), dst.remaining());
+        ByteBuffer slice = appIn.duplicate();
+        limit(slice, slice.position() + count);
+        dst.put(slice);
+        position(appIn, appIn.position() + count);
+        return count;
+    }
+
+    @Override
+    boolean write(ByteBuffer src) throws IOException {
+        if (!flush()) {
+            return false;
+        }
+        while (src.hasRemaining()) {
+            wrap(src);
+            if (!flush()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    boolean hasPendingWrite() {
+        return netOut.hasRemaining();
+    }
+
+    @Override
+    void close() {
+        engine.closeOutbound();
+        try {
+            // Best effort close_notify; the channel is closed right after
+            wrap(EMPTY);
+            flush();
+        } catch (IOException e) {
+            // Ignored
+        }
+    }
+
+    private boolean flush() throws IOException {
+        while (netOut.hasRemaining()) {
+            if (channel.write(netOut) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void wrap(ByteBuffer src) throws IOException {
+        netOut.compact();
+        try {
+            while (true) {
+                SSLEngineResult result = engine.wrap(src, netOut);
+                switch (result.getStatus()) {
+                    case BUFFER_OVERFLOW:
+                        netOut = enlarge(netOut, engine.getSession().getPacketBufferSize());
+                        break;
+                    case CLOSED:
+                        if (result.bytesProduced() == 0 && src.hasRemaining()) {
+                            throw new SSLException("TLS connection closed");
+                        }
+                        return;
+                    default:
+                        return;
+                }
+            }
+        } finally {
+            flip(netOut);
+        }
+    }
+
+    private int unwrap() throws IOException {
+        while (true) {
+            SSLEngineResult result;
+            flip(netIn);
+            appIn.compact();
+            try {
+                result = engine.unwrap(netIn, appIn);
+            } finally {
+                flip(appIn);
+                netIn.compact();
+            }
+
+            switch (result.getStatus()) {
+                case OK:
+                    if (result.bytesConsumed() > 0 || result.bytesProduced() > 0
+                            || result.getHandshakeStatus() != SSLEngineResult.HandshakeStatus.NEED_UNWRAP) {
+                        return PROGRESS;
+                    }
+                    break;
+                case BUFFER_UNDERFLOW:
+                    if (!netIn.hasRemaining()) {
+                        netIn = enlarge(netIn, engine.getSession().getPacketBufferSize());
+                    }
+                    break;
+                case BUFFER_OVERFLOW:
+                    appIn.compact();
+                    appIn = flip(enlarge(appIn, engine.getSession().getApplicationBufferSize()));
+                    continue;
+                case CLOSED:
+                    inboundDone = true;
+                    return END_OF_STREAM;
+            }
+
+            int read = channel.read(netIn);
+            if (read < 0) {
+                inboundDone = true;
+                return END_OF_STREAM;
+            }
+            if (read == 0) {
+                return NEEDS_DATA;
+            }
+        }
+    }
+
+    private void runDelegatedTasks() {
+        Runnable task;
+        while ((task = engine.getDelegatedTask()) != null) {
+            task.run();
+        }
+    }
+
+    /**
+     * @param buffer a buffer ready for writing
+     * @return a larger copy of <code>buffer</code>, ready for writing
+     */
+    private static ByteBuffer enlarge(ByteBuffer buffer, int minCapacity) {
+        ByteBuffer larger = ByteBuffer.allocate(Math.max(minCapacity, buffer.capacity() * 2));
+        larger.put(flip(buffer));
+        return larger;
+    }
+}
@@ -0,0 +1,77 @@
+package com.styra.run.nio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Moves bytes between a non-blocking {@link SocketChannel} and a {@link Connection}; in plain text, or over TLS.
+ * None of the methods block; they do as much as the channel allows, and report whether more is left to do.
+ */
+abstract class Transport {
+    protected final SocketChannel channel;
+
+    Transport(SocketChannel channel) {
+        this.channel = channel;
+    }
+
+    static Transport plain(SocketChannel channel) {
+        return new Transport(channel) {
+            @Override
+            boolean handshake() {
+                return true;
+            }
+
+            @Override
+            int read(ByteBuffer dst) throws IOException {
+                return this.channel.read(dst);
+            }
+
+            @Override
+            boolean write(ByteBuffer src) throws IOException {
+                this.channel.write(src);
+                return !src.hasRemaining();
+            }
+
+            @Override
+            boolean hasPendingWrite() {
+                return false;
+            }
+
+            @Override
+            void close() {
+            }
+        };
+    }
+
+    /**
+     * Progresses any handshake.
+     *
+     * @return <code>true</code> if the handshake is complete; <code>false</code> if it's waiting on the channel
+     */
+    abstract boolean handshake() throws IOException;
+
+    /**
+     * Reads application data into <code>dst</code>.
+     *
+     * @return the number of bytes read; <code>0</code> if none are available, or <code>-1</code> at end of stream
+     */
+    abstract int read(ByteBuffer dst) throws IOException;
+
+    /**
+     * Writes application data from <code>src</code>.
+     *
+     * @return <code>true</code> if all of <code>src</code> has been written to the channel
+     */
+    abstract boolean write(ByteBuffer src) throws IOException;
+
+    /**
+     * @return <code>true</code> if bytes are buffered, waiting for the channel to become writable
+     */
+    abstract boolean hasPendingWrite();
+
+    /**
+     * Releases the resources of this transport; the channel is closed separately.
+     */
+    abstract void close();
+}
@@ -0,0 +1,147 @@
+package com.styra.run.nio
+
+import com.styra.run.AbstractApiClientSpec
+import com.styra.run.ApiClient
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+
+import javax.net.ssl.SSLContext
+import java.time.Duration
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ExecutionException
+
+import static com.styra.run.ApiClient.Method.GET
+import static com.styra.run.ApiClient.Method.POST
+import static java.util.concurrent.TimeUnit.MILLISECONDS
+import static okhttp3.mockwebserver.SocketPolicy.DISCONNECT_AT_END
+
+class NioApiClientSpec extends AbstractApiClientSpec {
+    @Override
+    ApiClient createApiClient(ApiClient.Config config) {
+        return new NioApiClient(config)
+    }
+
+    @Override
+    Class<NioApiClient> getApiClientType() {
+        return NioApiClient
+    }
+
+    @Override
+    Class<SocketTimeoutException> getExpectedConnectionTimeoutException() {
+        return SocketTimeoutException
+    }
+
+    @Override
+    Class<SocketTimeoutException> getExpectedRequestTimeoutException() {
+        return SocketTimeoutException
+    }
+
+    @Override
+    String getExpectedRequestTimeoutExceptionMessage() {
+        return 'Read timed out'
+    }
+
+    def "Connections are kept alive, and reused"() {
+        given: 'a server mocking the Styra Run API'
+        def mockServer = new MockWebServer()
+        3.times {
+            mockServer.enqueue(new MockResponse().setBody('{"result": true}'))
+        }
+        mockServer.start()
+        def uri = mockServer.url('/').uri()
+
+        and: 'an API client'
+        def client = createApiClient(new ApiClient.Config(SSLContext.getDefault(),
+                Duration.ofSeconds(2), Duration.ofSeconds(2), 'test'))
+
+        when: 'requests are made, one after the other'
+        def responses = (1..3).collect {
+            client.request(POST, uri, [:], '{"input": 42}').get()
+        }
+
+        then: 'all requests were sent over the same connection'
+        responses.every { it.statusCode == 200 && it.body == '{"result": true}' }
+        (0..2).collect { mockServer.takeRequest().sequenceNumber } == [0, 1, 2]
+
+        cleanup:
+        client.close()
+        mockServer.shutdown()
+    }
+
+    def "Requests beyond the connection limit wait for a connection"() {
+        given: 'a server mocking the Styra Run API, with slow responses'
+        def mockServer = new MockWebServer()
+        3.times {
+            mockServer.enqueue(new MockResponse()
+                    .setBody('{"result": true}')
+                    .setHeadersDelay(100, MILLISECONDS))
+        }
+        mockServer.start()
+        def uri = mockServer.url('/').uri()
+
+        and: 'an API client allowing a single connection per gateway'
+        def client = new NioApiClient(new ApiClient.Config(SSLContext.getDefault(),
+                Duration.ofSeconds(2), Duration.ofSeconds(2), 'test'), 1, Duration.ofSeconds(30))
+
+        when: 'concurrent requests are made'
+        def futures = (1..3).collect {
+            client.request(GET, uri, [:], null)
+        }
+        CompletableFuture.allOf(futures as CompletableFuture[]).get()
+
+        then: 'all requests succeed'
+        futures.every { it.get().statusCode == 200 }
+
+        and: 'were sent, in turn, over the same connection'
+        (0..2).collect { mockServer.takeRequest().sequenceNumber } == [0, 1, 2]
+
+        cleanup:
+        client.close()
+        mockServer.shutdown()
+    }
+
+    def "Requests are retried on a new connection when the server has closed an idle connection"() {
+        given: 'a server mocking the Styra Run API, that closes the connection after the first response'
+        def mockServer = new MockWebServer()
+        mockServer.enqueue(new MockResponse()
+                .setBody('{"result": 1}')
+                .setSocketPolicy(DISCONNECT_AT_END))
+        mockServer.enqueue(new MockResponse()
+                .setBody('{"result": 2}'))
+        mockServer.start()
+        def uri = mockServer.url('/').uri()
+
+        and: 'an API client'
+        def client = createApiClient(new ApiClient.Config(SSLContext.getDefault(),
+                Duration.ofSeconds(2), Duration.ofSeconds(2), 'test'))
+
+        when: 'two requests are made, one after the other'
+        def first = client.request(GET, uri, [:], null).get()
+        def second = client.request(GET, uri, [:], null).get()
+
+        then: 'both succeed'
+        first.body == '{"result": 1}'
+        second.body == '{"result": 2}'
+
+        and: 'the second request was sent over a new connection'
+        (0..1).collect { mockServer.takeRequest().sequenceNumber } == [0, 0]
+
+        cleanup:
+        client.close()
+        mockServer.shutdown()
+    }
+
+    def "Requests fail once the client is closed"() {
+        given: 'a closed API client'
+        def client = createApiClient(new ApiClient.Config(SSLContext.getDefault(),
+                Duration.ofSeconds(2), Duration.ofSeconds(2), 'test'))
+        client.close()
+
+        when: 'a request is made'
+        client.request(GET, URI.create('http://localhost:1234'), [:], null).get()
+
+        then: 'it fails'
+        def e = thrown(ExecutionException)
+        e.cause instanceof IllegalStateException
+    }
+}
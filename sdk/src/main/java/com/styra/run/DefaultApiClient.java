@@ -9,57 +9,99 @@ import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 
+import static com.styra.run.utils.Futures.propagateCancellation;
 import static com.styra.run.utils.Futures.unwrapException;
 import static java.util.concurrent.CompletableFuture.failedFuture;
 
+/**
+ * An {@link ApiClient} built on the Java 11 {@link HttpClient}.
+ * <p>
+ * With {@link HttpVersion#HTTP_2}, concurrent requests to a gateway supporting it are multiplexed over a single
+ * connection. The {@link Config#getExecutor() configured executor}, if any, runs the client's asynchronous tasks and
+ * response handling. {@link Config#getMaxConnectionsPerGateway()} caps the number of concurrent requests to each
+ * gateway; requests beyond it wait for an earlier one to complete. <code>HttpClient</code> has no per-client
+ * keep-alive setting; idle connections are kept open for as long as the <code>jdk.httpclient.keepalive.timeout</code>
+ * system property allows, and {@link Config#getKeepAliveTimeout()} is not applied.
+ */
 public class DefaultApiClient implements ApiClient {
     public static final String REQ_TIMOUT_MSG = "request timed out";
     
     private final Config config;
     private final HttpClient client;
+    private final GatewayConnectionLimiter connectionLimiter;
 
     public DefaultApiClient(Config config) {
-        this(config, HttpClient.newBuilder()
-                .sslContext(config.getSslContext())
-                .connectTimeout(config.getConnectionTimeout())
-                .build());
+        this(config, newHttpClient(config));
     }
 
     public DefaultApiClient(Config config, HttpClient client) {
         this.config = config;
         this.client = client;
+        this.connectionLimiter = config.getMaxConnectionsPerGateway() > 0 ?
+                new GatewayConnectionLimiter(config.getMaxConnectionsPerGateway()) : null;
+    }
+
+    private static HttpClient newHttpClient(Config config) {
+        var builder = HttpClient.newBuilder()
+                .sslContext(config.getSslContext())
+                .connectTimeout(config.getConnectionTimeout());
+        if (config.getHttpVersion() != null) {
+            builder.version(config.getHttpVersion() == HttpVersion.HTTP_2 ?
+                    HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1);
+        }
+        if (config.getExecutor() != null) {
+            builder.executor(config.getExecutor());
+        }
+        return builder.build();
     }
 
     @Override
     public CompletableFuture<ApiResponse> request(Method method, URI uri, Map<String, String> headers, String body) {
-        var requestBuilder = HttpRequest.newBuilder(uri)
-                .timeout(config.getRequestTimeout())
+        return request(new ApiRequest(method, uri, headers,
+                body != null ? body.getBytes(StandardCharsets.UTF_8) : null));
+    }
+
+    @Override
+    public CompletableFuture<ApiResponse> request(ApiRequest request) {
+        if (connectionLimiter != null) {
+            return connectionLimiter.execute(request.getUri(), () -> send(request));
+        }
+        return send(request);
+    }
+
+    private CompletableFuture<ApiResponse> send(ApiRequest request) {
+        var requestBuilder = HttpRequest.newBuilder(request.getUri())
+                .timeout(request.getTimeout(config.getRequestTimeout()))
                 .setHeader("User-Agent", config.getUserAgent());
-        headers.forEach(requestBuilder::header);
+        request.getHeaders().forEach(requestBuilder::header);
 
-        switch (method) {
+        switch (request.getMethod()) {
             case GET:
                 requestBuilder.GET();
                 break;
             case PUT:
-                requestBuilder.PUT(publisherFor(body));
+                requestBuilder.PUT(publisherFor(request.getBody()));
                 break;
             case POST:
-                requestBuilder.POST(publisherFor(body));
+                requestBuilder.POST(publisherFor(request.getBody()));
                 break;
             case DELETE:
                 requestBuilder.DELETE();
                 break;
             default:
-                return failedFuture(new StyraRunException(String.format("Unsupported method %s", method)));
+                return failedFuture(new StyraRunException(String.format("Unsupported method %s", request.getMethod())));
         }
 
-        var request = requestBuilder.build();
-        return client.sendAsync(request, HttpResponse.BodyHandlers.ofString())
-                .thenApply((response) -> new ApiResponse(response.statusCode(), response.body()))
+        // Cancelling the returned future completes it, but only aborts the exchange, releasing its connection, on
+        // JDK 16 and later (JDK-8245462); earlier, the exchange runs to completion and its response is discarded
+        var exchange = client.sendAsync(requestBuilder.build(), HttpResponse.BodyHandlers.ofByteArray());
+        return propagateCancellation(exchange
+                .thenApply((response) -> ApiResponse.fromBytes(response.statusCode(), response.body(),
+                        response.headers().map()))
                 .exceptionallyCompose(e -> {
                     Throwable unwrapped = unwrapException(e);
                     if (unwrapped instanceof SocketException ||
@@ -67,16 +109,16 @@ public class DefaultApiClient implements ApiClient {
                         return failedFuture(new RetryException(unwrapped));
                     }
                     return failedFuture(e);
-                });
+                }), exchange);
     }
 
     @Override
     public void close() {
     }
 
-    private static HttpRequest.BodyPublisher publisherFor(String body) {
+    private static HttpRequest.BodyPublisher publisherFor(byte[] body) {
         if (body != null) {
-            return HttpRequest.BodyPublishers.ofString(body);
+            return HttpRequest.BodyPublishers.ofByteArray(body);
         } else {
             return HttpRequest.BodyPublishers.noBody();
         }
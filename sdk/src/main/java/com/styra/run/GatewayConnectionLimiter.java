@@ -0,0 +1,126 @@
+package com.styra.run;
+
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static com.styra.run.utils.Futures.propagateCancellation;
+import static com.styra.run.utils.Futures.unwrapException;
+
+/**
+ * Limits the number of concurrent requests to each gateway, and thereby the number of HTTP/1.1 connections the
+ * {@link java.net.http.HttpClient} opens to it. Requests beyond the limit wait, in order, for an earlier request to
+ * complete. Over HTTP/2, where requests are multiplexed over a single connection, this limits concurrent streams.
+ */
+final class GatewayConnectionLimiter {
+    private final int maxPerGateway;
+    private final Map<String, Gate> gates = new ConcurrentHashMap<>();
+
+    GatewayConnectionLimiter(int maxPerGateway) {
+        this.maxPerGateway = maxPerGateway;
+    }
+
+    CompletableFuture<ApiResponse> execute(URI uri, Supplier<CompletableFuture<ApiResponse>> call) {
+        var gate = gates.computeIfAbsent(uri.getScheme() + "://" + uri.getRawAuthority(), (k) -> new Gate());
+        var waiter = new Waiter(gate, call);
+        gate.acquire(waiter);
+        return waiter.result;
+    }
+
+    private final class Gate {
+        private final Deque<Waiter> waiting = new ArrayDeque<>();
+        private int inFlight = 0;
+
+        private final AtomicInteger dispatchRequests = new AtomicInteger();
+
+        void acquire(Waiter waiter) {
+            synchronized (this) {
+                if (!waiting.isEmpty() || inFlight >= maxPerGateway) {
+                    waiting.addLast(waiter);
+                    return;
+                }
+                inFlight++;
+            }
+            waiter.run();
+        }
+
+        void release() {
+            synchronized (this) {
+                inFlight--;
+            }
+            dispatch();
+        }
+
+        private void dispatch() {
+            // Only one thread dispatches at a time; concurrent, or re-entrant, calls make the dispatching thread do
+            // another pass, rather than recursing through calls completing synchronously
+            if (dispatchRequests.getAndIncrement() != 0) {
+                return;
+            }
+
+            int missed = 1;
+            do {
+                drain();
+                missed = dispatchRequests.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void drain() {
+            while (true) {
+                Waiter next;
+                synchronized (this) {
+                    if (inFlight >= maxPerGateway) {
+                        return;
+                    }
+                    do {
+                        next = waiting.pollFirst();
+                    } while (next != null && next.result.isDone());
+
+                    if (next == null) {
+                        return;
+                    }
+                    inFlight++;
+                }
+                next.run();
+            }
+        }
+    }
+
+    private static final class Waiter {
+        private final Gate gate;
+        private final Supplier<CompletableFuture<ApiResponse>> call;
+        private final CompletableFuture<ApiResponse> result = new CompletableFuture<>();
+
+        private Waiter(Gate gate, Supplier<CompletableFuture<ApiResponse>> call) {
+            this.gate = gate;
+            this.call = call;
+        }
+
+        private void run() {
+            CompletableFuture<ApiResponse> response;
+            try {
+                response = call.get();
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+                gate.release();
+                return;
+            }
+
+            propagateCancellation(result, response);
+            // The caller's result is completed before the next waiter is dispatched, so it isn't held up by it
+            response.whenComplete((value, e) -> {
+                if (e != null) {
+                    result.completeExceptionally(unwrapException(e));
+                } else {
+                    result.complete(value);
+                }
+                gate.release();
+            });
+        }
+    }
+}
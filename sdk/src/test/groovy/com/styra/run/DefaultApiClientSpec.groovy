@@ -1,6 +1,17 @@
 package com.styra.run
 
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import spock.lang.Unroll
+
+import javax.net.ssl.SSLContext
+import java.net.http.HttpClient
 import java.net.http.HttpTimeoutException
+import java.time.Duration
+import java.util.concurrent.CompletableFuture
+
+import static com.styra.run.ApiClient.Method.GET
+import static java.util.concurrent.TimeUnit.MILLISECONDS
 
 class DefaultApiClientSpec extends AbstractApiClientSpec {
     @Override
@@ -27,4 +38,51 @@ class DefaultApiClientSpec extends AbstractApiClientSpec {
     String getExpectedRequestTimeoutExceptionMessage() {
         return 'request timed out'
     }
+
+    @Unroll
+    def "Configured HTTP version is used (#version)"() {
+        when: 'an API client is created with an HTTP version'
+        def client = new DefaultApiClient(new ApiClient.Config(SSLContext.getDefault(),
+                Duration.ofSeconds(2), Duration.ofSeconds(2), 'test', null, version, 0, null))
+
+        then: 'the underlying HttpClient uses it'
+        client.client.version() == expectedVersion
+
+        where:
+        version                       | expectedVersion
+        null                          | HttpClient.Version.HTTP_2
+        ApiClient.HttpVersion.HTTP_1_1 | HttpClient.Version.HTTP_1_1
+        ApiClient.HttpVersion.HTTP_2   | HttpClient.Version.HTTP_2
+    }
+
+    def "Requests beyond the max connections per gateway wait for an earlier request to complete"() {
+        given: 'a server mocking the Styra Run API, with slow responses'
+        def mockServer = new MockWebServer()
+        3.times {
+            mockServer.enqueue(new MockResponse()
+                    .setBody('{"result": true}')
+                    .setHeadersDelay(100, MILLISECONDS))
+        }
+        mockServer.start()
+        def uri = mockServer.url('/').uri()
+
+        and: 'an HTTP/1.1 API client allowing a single connection per gateway'
+        def client = new DefaultApiClient(new ApiClient.Config(SSLContext.getDefault(),
+                Duration.ofSeconds(2), Duration.ofSeconds(2), 'test', null, ApiClient.HttpVersion.HTTP_1_1, 1, null))
+
+        when: 'concurrent requests are made'
+        def futures = (1..3).collect {
+            client.request(GET, uri, [:], null)
+        }
+        CompletableFuture.allOf(futures as CompletableFuture[]).get()
+
+        then: 'all requests succeed'
+        futures.every { it.get().statusCode == 200 }
+
+        and: 'were sent, in turn, over the same connection'
+        (0..2).collect { mockServer.takeRequest().sequenceNumber } == [0, 1, 2]
+
+        cleanup:
+        mockServer.shutdown()
+    }
 }
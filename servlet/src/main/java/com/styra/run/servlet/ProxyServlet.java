@@ -2,6 +2,7 @@ package com.styra.run.servlet;
 
 import com.styra.run.BatchQuery;
 import com.styra.run.Json;
+import com.styra.run.ListResult;
 import com.styra.run.Proxy;
 import com.styra.run.StyraRun;
 import com.styra.run.servlet.session.SessionManager;
@@ -12,6 +13,7 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * A servlet wrapping the functionality provided by {@link Proxy}.
@@ -58,9 +60,10 @@ public final class ProxyServlet<S extends Session> extends StyraRunServlet<S> {
         handleAsync(request, response, (body, out, async) -> {
             BatchQuery query = BatchQuery.fromMap(json.toMap(body));
 
-            proxy.proxy(query, sessionManager.getSession(request))
-                    .thenAccept((result) ->
-                            writeOkJsonResponse(result.withoutAttributes().toMap(), response, out, async))
+            CompletableFuture<ListResult> result = proxy.proxy(query, sessionManager.getSession(request));
+            cancelOnTimeout(async, result);
+            result.thenAccept((r) ->
+                            writeOkJsonResponse(r.withoutAttributes().toMap(), response, out, async))
                     .exceptionally((e) -> {
                         handleError("Batch query failed", e, async, response);
                         return null;
@@ -7,6 +7,8 @@ import com.styra.run.servlet.session.NoSessionManager;
 import com.styra.run.servlet.session.SessionManager;
 import com.styra.run.session.Session;
 import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
 import jakarta.servlet.ReadListener;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.ServletInputStream;
@@ -22,6 +24,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CompletionException;
+import java.util.concurrent.Future;
 
 import static com.styra.run.ApiError.BAD_REQUEST_CODE;
 import static com.styra.run.ApiError.INTERNAL_ERROR_CODE;
@@ -170,6 +173,35 @@ public abstract class StyraRunServlet<S extends Session> extends HttpServlet {
         }
     }
 
+    /**
+     * Cancels <code>future</code> if the asynchronous request times out, or fails, before <code>future</code> has
+     * completed; so that requests to the Styra Run API made on behalf of an abandoned request are aborted.
+     *
+     * @param context the {@link AsyncContext} of the request
+     * @param future the future to cancel
+     */
+    protected static void cancelOnTimeout(AsyncContext context, Future<?> future) {
+        context.addListener(new AsyncListener() {
+            @Override
+            public void onTimeout(AsyncEvent event) {
+                future.cancel(true);
+            }
+
+            @Override
+            public void onError(AsyncEvent event) {
+                future.cancel(true);
+            }
+
+            @Override
+            public void onComplete(AsyncEvent event) {
+            }
+
+            @Override
+            public void onStartAsync(AsyncEvent event) {
+            }
+        });
+    }
+
     protected void handleError(String message, Throwable t, AsyncContext context, HttpServletResponse response) {
         if (t instanceof CompletionException) {
             handleError(message, t.getCause(), context, response);